@@ -0,0 +1,387 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步文件写入：调用线程只把数据编码进预分配的环形缓冲区，专用的刷盘线程成批写入FileChannel
+ * 每条记录在锁内整体复制，多个线程写入的记录不会交错；刷盘线程写文件时不持有锁，生产者不会被磁盘IO阻塞。
+ * 缓冲区满时按OverflowPolicy阻塞等待或丢弃这条记录(并计数)。
+ * 积累的数据超过批量阈值时唤醒刷盘线程，否则最多等flushInterval后写出；flush()等待之前写入的数据进入文件，sync()再force到磁盘
+ */
+class AsyncFileWriter implements Closeable, Flushable {
+    enum OverflowPolicy {
+        BLOCK, DROP
+    }
+
+    private final FileChannel channel;
+    private final byte[] ring;
+    private final ByteBuffer ringBuffer;
+    private final int mask;
+    private final int batchBytes;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+    private final LongAdder droppedRecords = new LongAdder();
+    private final LongAdder droppedBytes = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    // 单调递增的字节位置，ring中的下标是位置 & mask；[tail, head)是待写入的数据
+    private long head;
+    private long tail;
+    private long flushRequested;
+    private long batches;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    public AsyncFileWriter(Path file) throws IOException {
+        this(file, true, 1 << 20, OverflowPolicy.BLOCK, 200);
+    }
+
+    /**
+     * @param capacity            环形缓冲区字节数，向上取2的幂；单条记录不能超过它
+     * @param policy              缓冲区满时阻塞还是丢弃
+     * @param flushIntervalMillis 数据不足一批时最多延迟这么久写出
+     */
+    public AsyncFileWriter(Path file, boolean append, int capacity, OverflowPolicy policy, long flushIntervalMillis) throws IOException {
+        int size = Integer.highestOneBit(Math.max(4096, capacity - 1)) << 1;
+        this.ring = new byte[size];
+        this.ringBuffer = ByteBuffer.wrap(ring);
+        this.mask = size - 1;
+        this.batchBytes = size / 4;
+        this.policy = policy;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.channel = append
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.flusher = new Thread(this::flushLoop, "async-writer-" + file.getFileName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 写入一条记录，按策略丢弃时返回false
+     */
+    public boolean write(byte[] bytes, int offset, int length) throws IOException {
+        int start = reserve(length);
+        if (start < 0) {
+            return false;
+        }
+        try {
+            int first = Math.min(length, ring.length - start);
+            System.arraycopy(bytes, offset, ring, start, first);
+            System.arraycopy(bytes, offset + first, ring, 0, length - first);
+        } finally {
+            commit(length);
+        }
+        return true;
+    }
+
+    public boolean write(byte[] bytes) throws IOException {
+        return write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 写入文本(UTF-8)；全是ASCII时字符直接写进环形缓冲区，不创建中间的byte[]
+     */
+    public boolean write(CharSequence text) throws IOException {
+        return write(text, false);
+    }
+
+    public boolean writeLine(CharSequence text) throws IOException {
+        return write(text, true);
+    }
+
+    private boolean write(CharSequence text, boolean newLine) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                byte[] bytes = (newLine ? text + "\n" : text.toString()).getBytes(StandardCharsets.UTF_8);
+                return write(bytes, 0, bytes.length);
+            }
+        }
+        int total = newLine ? length + 1 : length;
+        int start = reserve(total);
+        if (start < 0) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < length; i++) {
+                ring[(start + i) & mask] = (byte) text.charAt(i);
+            }
+            if (newLine) {
+                ring[(start + length) & mask] = '\n';
+            }
+        } finally {
+            commit(total);
+        }
+        return true;
+    }
+
+    // 持有锁并等到有足够空间，返回写入起点在ring中的下标；丢弃时释放锁并返回-1。调用方复制后必须调用commit
+    private int reserve(int length) throws IOException {
+        if (length > ring.length) {
+            throw new IllegalArgumentException("记录超过缓冲区容量: " + length + " > " + ring.length);
+        }
+        long begin = System.nanoTime();
+        lock.lock();
+        try {
+            while (true) {
+                checkState();
+                if (ring.length - (head - tail) >= length) {
+                    break;
+                }
+                if (policy == OverflowPolicy.DROP) {
+                    droppedRecords.increment();
+                    droppedBytes.add(length);
+                    lock.unlock();
+                    return -1;
+                }
+                notEmpty.signal();
+                long waitStart = System.nanoTime();
+                try {
+                    notFull.await();
+                } finally {
+                    stallNanos.add(System.nanoTime() - waitStart);
+                }
+            }
+        } catch (InterruptedException e) {
+            lock.unlock();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待缓冲区空间时被中断");
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+        writeLatency.record((System.nanoTime() - begin) / 1000);
+        return (int) (head & mask);
+    }
+
+    private void commit(int length) {
+        try {
+            long before = head - tail;
+            head += length;
+            // 越过批量阈值时才唤醒刷盘线程，少量数据由定时写出
+            if (before < batchBytes && head - tail >= batchBytes) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkState() throws IOException {
+        IOException error = failure;
+        if (error != null) {
+            throw new IOException("异步写入失败", error);
+        }
+        if (closed) {
+            throw new IOException("写入器已关闭");
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                long from;
+                long to;
+                lock.lock();
+                try {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                    while (head - tail < batchBytes && flushRequested <= tail && !closed) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            if (head != tail) {
+                                break;
+                            }
+                            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                            remaining = deadline - System.nanoTime();
+                        }
+                        notEmpty.awaitNanos(remaining);
+                    }
+                    if (closed && head == tail) {
+                        return;
+                    }
+                    from = tail;
+                    to = head;
+                } finally {
+                    lock.unlock();
+                }
+                writeRange(from, to);
+                lock.lock();
+                try {
+                    tail = to;
+                    batches++;
+                    notFull.signalAll();
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("刷盘线程被中断");
+        } catch (Throwable e) {
+            // 其他异常也要记下来，否则等待刷盘的线程永远等不到结果
+            failure = new IOException("刷盘线程异常退出", e);
+            throw e;
+        } finally {
+            // 唤醒所有等待者，让它们看到失败或关闭
+            lock.lock();
+            try {
+                notFull.signalAll();
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // [from, to)在ring中可能绕回开头，此时用两段聚集写入
+    private void writeRange(long from, long to) throws IOException {
+        int start = (int) (from & mask);
+        int length = (int) (to - from);
+        int first = Math.min(length, ring.length - start);
+        ByteBuffer[] parts = first == length
+                ? new ByteBuffer[]{sliceOf(start, length)}
+                : new ByteBuffer[]{sliceOf(start, first), sliceOf(0, length - first)};
+        long remaining = length;
+        while (remaining > 0) {
+            remaining -= channel.write(parts);
+        }
+    }
+
+    private ByteBuffer sliceOf(int offset, int length) {
+        ByteBuffer slice = ringBuffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice;
+    }
+
+    /**
+     * 等待调用前写入的数据全部写进文件(不保证落盘)
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            long target = head;
+            flushRequested = Math.max(flushRequested, target);
+            notEmpty.signal();
+            while (tail < target) {
+                IOException error = failure;
+                if (error != null) {
+                    throw new IOException("异步写入失败", error);
+                }
+                if (!flusher.isAlive()) {
+                    throw new IOException("刷盘线程已退出");
+                }
+                flushed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待刷盘时被中断");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * flush后再force到磁盘
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes.sum();
+    }
+
+    /**
+     * 生产者因缓冲区满而阻塞的总时间(毫秒)
+     */
+    public long getStallMillis() {
+        return stallNanos.sum() / 1_000_000;
+    }
+
+    /**
+     * 每次写入在调用线程中花费的时间(微秒)，包括等锁和等空间
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "AsyncFileWriter{written=" + tail + ", buffered=" + (head - tail) + ", batches=" + batches
+                    + ", dropped=" + getDroppedRecords() + ", stall=" + getStallMillis() + "ms}";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出缓冲区中剩余的数据并落盘后关闭
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (failure == null) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw new IOException("异步写入失败", failure);
+        }
+    }
+}
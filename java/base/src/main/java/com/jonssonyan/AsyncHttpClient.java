@@ -0,0 +1,483 @@
+package com.jonssonyan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Selector的非阻塞HTTP/1.1客户端
+ * 所有请求的连接、写请求、读响应都在同一个IO线程上以事件驱动的方式完成，
+ * 在途请求不占用线程，成千上万个并发请求可以共享一个IO线程
+ */
+class AsyncHttpClient implements Closeable {
+    private final Selector selector;
+    private final Thread ioThread;
+    private final long timeoutMillis;
+    private final DnsResolver resolver;
+    private final Queue<HttpExchange> newExchanges = new ConcurrentLinkedQueue<>();
+    // 只在IO线程中访问
+    private final Set<HttpExchange> active = new HashSet<>();
+    // active的大小，由IO线程维护，供其他线程读取
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    public AsyncHttpClient() throws IOException {
+        this(30_000);
+    }
+
+    public AsyncHttpClient(long timeoutMillis) throws IOException {
+        this(timeoutMillis, DnsResolver.DEFAULT);
+    }
+
+    /**
+     * @param timeoutMillis 单个请求从发起(含域名解析)到收完响应的超时时间
+     * @param resolver      域名解析器，解析异步完成，不占用IO线程
+     */
+    public AsyncHttpClient(long timeoutMillis, DnsResolver resolver) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        this.resolver = resolver;
+        this.selector = Selector.open();
+        this.ioThread = new Thread(this::ioLoop, "async-http-io");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    public CompletableFuture<AsyncHttpResponse> get(String url) {
+        return execute("GET", url, Collections.emptyMap(), null);
+    }
+
+    public CompletableFuture<AsyncHttpResponse> post(String url, String contentType, byte[] body) {
+        return execute("POST", url, Collections.singletonMap("Content-Type", contentType), body);
+    }
+
+    /**
+     * 发起请求，立即返回；future在IO线程中完成，耗时的后续处理应使用thenXxxAsync切换线程
+     */
+    public CompletableFuture<AsyncHttpResponse> execute(String method, String url, Map<String, String> headers, byte[] body) {
+        CompletableFuture<AsyncHttpResponse> future = new CompletableFuture<>();
+        try {
+            URL target = new URL(url);
+            if (!"http".equals(target.getProtocol())) {
+                throw new IllegalArgumentException("非阻塞客户端只支持http: " + url);
+            }
+            int port = target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+            ByteBuffer request = buildRequest(method, target, headers, body);
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            resolver.resolve(target.getHost(), port).whenComplete((address, ex) -> {
+                if (ex != null) {
+                    future.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                } else {
+                    submit(new HttpExchange(address, request, method, future, deadline));
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    void submit(HttpExchange exchange) {
+        if (closed) {
+            exchange.future.completeExceptionally(new IOException("客户端已关闭"));
+            return;
+        }
+        newExchanges.add(exchange);
+        // 与close()并发时IO线程可能已经做完最后一次清理，没被取走的请求在这里失败
+        if (closed && newExchanges.remove(exchange)) {
+            exchange.fail(new IOException("客户端已关闭"));
+            return;
+        }
+        selector.wakeup();
+    }
+
+    private static ByteBuffer buildRequest(String method, URL target, Map<String, String> headers, byte[] body) {
+        String path = target.getFile().isEmpty() ? "/" : target.getFile();
+        StringBuilder head = new StringBuilder(128);
+        head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(target.getPort() == -1 ? target.getHost() : target.getHost() + ":" + target.getPort()).append("\r\n");
+        head.append("Connection: close\r\n"); // 每个请求一条连接，响应结束即关闭
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer request = ByteBuffer.allocate(headBytes.length + (body == null ? 0 : body.length));
+        request.put(headBytes);
+        if (body != null) {
+            request.put(body);
+        }
+        request.flip();
+        return request;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get() + newExchanges.size();
+    }
+
+    private void ioLoop() {
+        try {
+            while (!closed) {
+                selector.select(nextTimeout());
+                registerNew();
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    HttpExchange exchange = (HttpExchange) key.attachment();
+                    try {
+                        exchange.handle(key);
+                    } catch (IOException | RuntimeException e) {
+                        exchange.fail(e);
+                    }
+                    if (exchange.isDone()) {
+                        removeActive(exchange);
+                    }
+                }
+                expireTimedOut();
+            }
+        } catch (ClosedSelectorException e) {
+            // 客户端关闭
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            IOException cause = new IOException("客户端已关闭");
+            for (HttpExchange exchange : active) {
+                exchange.fail(cause);
+            }
+            active.clear();
+            activeCount.set(0);
+            HttpExchange exchange;
+            while ((exchange = newExchanges.poll()) != null) {
+                exchange.fail(cause);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void registerNew() {
+        HttpExchange exchange;
+        while ((exchange = newExchanges.poll()) != null) {
+            try {
+                exchange.start(selector);
+                active.add(exchange);
+                activeCount.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                exchange.fail(e);
+            }
+        }
+    }
+
+    private void removeActive(HttpExchange exchange) {
+        if (active.remove(exchange)) {
+            activeCount.decrementAndGet();
+        }
+    }
+
+    // 距离最早超时的请求还有多久，select最多等待这么长时间
+    private long nextTimeout() {
+        long earliest = Long.MAX_VALUE;
+        for (HttpExchange exchange : active) {
+            earliest = Math.min(earliest, exchange.deadline);
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return 0; // 没有在途请求时一直阻塞到wakeup
+        }
+        return Math.max(1, earliest - System.currentTimeMillis());
+    }
+
+    private void expireTimedOut() {
+        long now = System.currentTimeMillis();
+        Iterator<HttpExchange> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            HttpExchange exchange = iterator.next();
+            if (exchange.deadline <= now) {
+                iterator.remove();
+                activeCount.decrementAndGet();
+                exchange.fail(new SocketTimeoutException("请求超时: " + exchange.address));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+}
+
+/**
+ * 一次HTTP请求/响应的状态机：连接 -> 写请求 -> 读响应头 -> 读响应体
+ */
+class HttpExchange {
+    private enum State {CONNECTING, WRITING, READING_HEAD, READING_BODY, DONE}
+
+    static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    final InetSocketAddress address;
+    final CompletableFuture<AsyncHttpResponse> future;
+    final long deadline;
+    private final ByteBuffer request;
+    private final String method;
+    private SocketChannel channel;
+    private State state = State.CONNECTING;
+    private ByteBuffer in = ByteBuffer.allocate(8192);
+
+    private int statusCode;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private long contentLength = -1; // -1表示读到连接关闭
+    private boolean chunked;
+    private long chunkRemaining;
+    private boolean chunkCrlfPending;
+    private boolean lastChunk;
+
+    HttpExchange(InetSocketAddress address, ByteBuffer request, String method,
+                 CompletableFuture<AsyncHttpResponse> future, long deadline) {
+        this.address = address;
+        this.request = request;
+        this.method = method;
+        this.future = future;
+        this.deadline = deadline;
+    }
+
+    void start(Selector selector) throws IOException {
+        if (address.isUnresolved()) {
+            throw new IOException("无法解析主机: " + address.getHostString());
+        }
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        if (channel.connect(address)) {
+            state = State.WRITING;
+            channel.register(selector, SelectionKey.OP_WRITE, this);
+        } else {
+            channel.register(selector, SelectionKey.OP_CONNECT, this);
+        }
+    }
+
+    void handle(SelectionKey key) throws IOException {
+        if (state == State.CONNECTING && key.isConnectable()) {
+            channel.finishConnect();
+            state = State.WRITING;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+        if (state == State.WRITING && key.isWritable()) {
+            channel.write(request);
+            if (!request.hasRemaining()) {
+                state = State.READING_HEAD;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            return;
+        }
+        if ((state == State.READING_HEAD || state == State.READING_BODY) && key.isReadable()) {
+            if (!in.hasRemaining()) {
+                // 缓冲区满说明还没凑齐一个完整的响应头(或chunk长度行)，对端一直不发结束符时不能无限扩容
+                if (in.capacity() >= MAX_HEAD_SIZE) {
+                    throw new IOException((state == State.READING_HEAD ? "响应头" : "chunk长度行") + "超过" + MAX_HEAD_SIZE + "字节");
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+            int n = channel.read(in);
+            in.flip();
+            if (state == State.READING_HEAD) {
+                parseHead();
+            }
+            if (state == State.READING_BODY) {
+                readBody(n < 0);
+            } else if (n < 0) {
+                throw new EOFException("服务器在响应头结束前关闭了连接");
+            }
+            in.compact();
+        }
+    }
+
+    // 1xx临时响应(如100 Continue)之后还有最终响应，跳过它们继续解析下一个响应头
+    private void parseHead() throws IOException {
+        do {
+            if (!parseOneHead()) {
+                return;
+            }
+        } while (statusCode / 100 == 1 && statusCode != 101);
+        if ("HEAD".equals(method) || statusCode == 204 || statusCode == 304) {
+            contentLength = 0;
+        } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            chunked = true;
+        } else if (headers.containsKey("content-length")) {
+            try {
+                contentLength = Long.parseLong(headers.get("content-length"));
+            } catch (NumberFormatException e) {
+                throw new IOException("非法的Content-Length: " + headers.get("content-length"));
+            }
+        }
+        state = State.READING_BODY;
+    }
+
+    // 解析一个完整的响应头，数据不足时返回false
+    private boolean parseOneHead() throws IOException {
+        int end = indexOf(in, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        if (end < 0) {
+            return false;
+        }
+        byte[] headBytes = new byte[end - in.position()];
+        in.get(headBytes);
+        in.position(in.position() + 4);
+        String[] lines = new String(headBytes, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] statusLine = lines[0].split(" ", 3);
+        if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+            throw new IOException("非法的状态行: " + lines[0]);
+        }
+        try {
+            statusCode = Integer.parseInt(statusLine[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("非法的状态行: " + lines[0]);
+        }
+        headers.clear();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+            }
+        }
+        return true;
+    }
+
+    private void readBody(boolean eof) throws IOException {
+        if (chunked) {
+            if (decodeChunks()) {
+                complete();
+            } else if (eof) {
+                throw new EOFException("chunked响应体不完整");
+            }
+            return;
+        }
+        int n = in.remaining();
+        if (contentLength >= 0) {
+            n = (int) Math.min(n, contentLength - body.size());
+        }
+        body.write(in.array(), in.arrayOffset() + in.position(), n);
+        in.position(in.position() + n);
+        if (contentLength >= 0 && body.size() >= contentLength) {
+            complete();
+        } else if (eof) {
+            if (contentLength >= 0) {
+                throw new EOFException("响应体不完整");
+            }
+            complete(); // 没有Content-Length，连接关闭即响应结束
+        }
+    }
+
+    // 增量解码chunked响应体，返回是否已经读到最后一个chunk
+    private boolean decodeChunks() throws IOException {
+        while (true) {
+            if (chunkRemaining > 0) {
+                int n = (int) Math.min(in.remaining(), chunkRemaining);
+                body.write(in.array(), in.arrayOffset() + in.position(), n);
+                in.position(in.position() + n);
+                chunkRemaining -= n;
+                if (chunkRemaining > 0) {
+                    return false;
+                }
+                chunkCrlfPending = true;
+            }
+            if (chunkCrlfPending) {
+                if (in.remaining() < 2) {
+                    return false;
+                }
+                in.position(in.position() + 2);
+                chunkCrlfPending = false;
+            }
+            int lineEnd = indexOf(in, new byte[]{'\r', '\n'});
+            if (lineEnd < 0) {
+                return false;
+            }
+            byte[] lineBytes = new byte[lineEnd - in.position()];
+            in.get(lineBytes);
+            in.position(in.position() + 2);
+            String line = new String(lineBytes, StandardCharsets.ISO_8859_1);
+            if (lastChunk) {
+                if (line.isEmpty()) {
+                    return true; // trailer结束
+                }
+                continue;
+            }
+            int semicolon = line.indexOf(';');
+            try {
+                chunkRemaining = Long.parseLong((semicolon >= 0 ? line.substring(0, semicolon) : line).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("非法的chunk长度: " + line);
+            }
+            if (chunkRemaining == 0) {
+                lastChunk = true;
+            }
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        int last = buffer.limit() - pattern.length;
+        outer:
+        for (int i = buffer.position(); i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer.get(i + j) != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void complete() {
+        closeChannel();
+        state = State.DONE;
+        future.complete(new AsyncHttpResponse(statusCode, headers, body.toByteArray()));
+    }
+
+    void fail(Throwable cause) {
+        closeChannel();
+        state = State.DONE;
+        future.completeExceptionally(cause);
+    }
+
+    boolean isDone() {
+        return state == State.DONE;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
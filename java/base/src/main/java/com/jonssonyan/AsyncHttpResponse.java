@@ -0,0 +1,36 @@
+package com.jonssonyan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 非阻塞客户端的响应，响应体已完整读入内存
+ */
+class AsyncHttpResponse {
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    AsyncHttpResponse(int statusCode, Map<String, String> headers, byte[] body) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public String header(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public byte[] body() {
+        return body;
+    }
+
+    public String bodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package com.jonssonyan;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多线程写日志：逐行flush的BufferedOutputStream与AsyncFileWriter对比吞吐和调用线程的写入延迟
+ */
+class AsyncWriterBenchmark {
+    static void run(Path dir, int threads, int linesPerThread) throws Exception {
+        Path syncFile = dir.resolve("sync_writer_bench.log");
+        Path asyncFile = dir.resolve("async_writer_bench.log");
+        try {
+            measure(syncFile, asyncFile, threads, linesPerThread);
+        } finally {
+            Files.deleteIfExists(syncFile);
+            Files.deleteIfExists(asyncFile);
+        }
+    }
+
+    private static void measure(Path syncFile, Path asyncFile, int threads, int linesPerThread) throws Exception {
+        String padding = "payload=0123456789abcdef0123456789abcdef0123456789abcdef";
+
+        LatencyHistogram syncLatency = new LatencyHistogram();
+        long start = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(syncFile), 8192)) {
+            runThreads(threads, id -> {
+                for (int i = 0; i < linesPerThread; i++) {
+                    byte[] line = ("thread-" + id + " line-" + i + " " + padding + "\n").getBytes(StandardCharsets.US_ASCII);
+                    long begin = System.nanoTime();
+                    synchronized (out) {
+                        out.write(line);
+                        out.flush(); // 日志通常逐行flush，保证进程崩溃前写出
+                    }
+                    syncLatency.record((System.nanoTime() - begin) / 1000);
+                }
+            });
+        }
+        report("BufferedOutputStream逐行flush", threads * (long) linesPerThread, start, syncLatency);
+
+        for (AsyncFileWriter.OverflowPolicy policy : AsyncFileWriter.OverflowPolicy.values()) {
+            start = System.nanoTime();
+            AsyncFileWriter writer = new AsyncFileWriter(asyncFile, false, 4 << 20, policy, 100);
+            try {
+                runThreads(threads, id -> {
+                    StringBuilder line = new StringBuilder(128);
+                    for (int i = 0; i < linesPerThread; i++) {
+                        line.setLength(0);
+                        line.append("thread-").append(id).append(" line-").append(i).append(' ').append(padding);
+                        writer.writeLine(line);
+                    }
+                });
+                writer.flush();
+                report("AsyncFileWriter(" + policy + ")", threads * (long) linesPerThread, start, writer.getWriteLatency());
+                System.out.println("  " + writer + ", 文件大小" + Files.size(asyncFile));
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private static void runThreads(int threads, ThreadBody body) throws Exception {
+        List<Thread> workers = new ArrayList<>();
+        IOException[] error = new IOException[1];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    body.run(id);
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    private static void report(String name, long lines, long start, LatencyHistogram latency) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d行, %.0fms, %.0f行/秒, 写入延迟p50=%dus p99=%dus max=%dus%n", name, lines, seconds * 1000,
+                lines / seconds, latency.getValueAtPercentile(50), latency.getValueAtPercentile(99), latency.getMax());
+    }
+
+    @FunctionalInterface
+    private interface ThreadBody {
+        void run(int id) throws IOException;
+    }
+}
@@ -0,0 +1,104 @@
+package com.jonssonyan;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 字节数组上的读取游标，数据不足时抛出EOFException
+ */
+class BinaryInput {
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    BinaryInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    private void require(int bytes) throws EOFException {
+        if (limit - position < bytes) {
+            throw new EOFException("数据被截断，需要" + bytes + "个字节，剩余" + (limit - position));
+        }
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer[position++];
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        int value = (buffer[position] & 0xFF) << 24 | (buffer[position + 1] & 0xFF) << 16
+                | (buffer[position + 2] & 0xFF) << 8 | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() throws IOException {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint超过5个字节");
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint超过10个字节");
+    }
+
+    public int readZigZagInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readZigZagLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        byte[] value = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return value;
+    }
+}
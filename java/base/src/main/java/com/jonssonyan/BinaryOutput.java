@@ -0,0 +1,141 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 可复用的可扩容输出缓冲区，reset()后重新写入不再分配内存
+ */
+class BinaryOutput {
+    private byte[] buffer;
+    private int position;
+
+    BinaryOutput(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensure(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * 无符号变长整数，每字节7位，最高位表示后面还有字节
+     */
+    public void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * zigzag编码把绝对值小的负数也映射成小的无符号数：0,-1,1,-2 -> 0,1,2,3
+     */
+    public void writeZigZagInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeZigZagLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * 长度+1的变长整数加UTF-8字节，长度0表示null；纯ASCII字符串直接逐字符写入，不经过getBytes
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        int length = value.length();
+        int i = 0;
+        while (i < length && value.charAt(i) < 0x80) {
+            i++;
+        }
+        if (i == length) {
+            writeVarInt(length + 1);
+            ensure(length);
+            for (int j = 0; j < length; j++) {
+                buffer[position++] = (byte) value.charAt(j);
+            }
+        } else {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public void writeBytes(byte[] value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(value.length + 1);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * 原样写入，不带长度前缀
+     */
+    public void write(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public void reset() {
+        position = 0;
+    }
+
+    /**
+     * 内部数组，有效数据是[0, size())
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+}
@@ -0,0 +1,499 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于字段表的二进制序列化
+ * 每个类第一次使用时通过反射生成字段表并缓存MethodHandle形式的读写器，之后编码只按字段顺序写值，
+ * 不像ObjectOutputStream那样在每个流里写类描述；整数用zigzag变长编码，小数值只占1个字节。
+ * 支持的字段类型：基本类型及其包装类、String、byte[]、枚举以及同样可以序列化的嵌套对象；
+ * 类必须有无参构造方法(可以是private)，static和transient字段不参与序列化；
+ * 不写运行时类型，所以不支持多态字段：声明为Object、接口或抽象类的字段在创建序列化器时拒绝，
+ * 嵌套对象的运行时类型与字段声明类型不一致时编码抛出异常，而不是只写出声明类型的字段
+ */
+class BinarySerializer<T> {
+    private static final ConcurrentMap<Class<?>, BinarySerializer<?>> CACHE = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final FieldCodec[] fields;
+    private final int schemaHash;
+
+    @SuppressWarnings("unchecked")
+    static <T> BinarySerializer<T> of(Class<T> type) {
+        // 嵌套类型的序列化器在第一次编解码时才创建，构造过程不会递归调用of()
+        return (BinarySerializer<T>) CACHE.computeIfAbsent(type, BinarySerializer::new);
+    }
+
+    private BinarySerializer(Class<T> type) {
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<T> noArg = type.getDeclaredConstructor();
+            noArg.setAccessible(true);
+            this.constructor = lookup.unreflectConstructor(noArg).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + "没有无参构造方法", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("无法访问" + type.getName() + "的构造方法", e);
+        }
+        List<Field> declared = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                    declared.add(field);
+                }
+            }
+        }
+        // 字段按名称排序，顺序与声明顺序和JVM返回顺序无关
+        declared.sort(Comparator.comparing(Field::getName).thenComparing(f -> f.getDeclaringClass().getName()));
+        this.fields = new FieldCodec[declared.size()];
+        int hash = type.getName().hashCode();
+        for (int i = 0; i < fields.length; i++) {
+            Field field = declared.get(i);
+            fields[i] = FieldCodec.create(field, lookup);
+            hash = hash * 31 + field.getName().hashCode();
+            hash = hash * 31 + field.getType().getName().hashCode();
+        }
+        this.schemaHash = hash;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * 字段名和类型的摘要，批量编码时写在开头，解码时据此发现类结构已经变化
+     */
+    public int getSchemaHash() {
+        return schemaHash;
+    }
+
+    public void encode(T value, BinaryOutput out) {
+        for (FieldCodec field : fields) {
+            field.write(value, out);
+        }
+    }
+
+    public T decode(BinaryInput in) throws IOException {
+        T value = newInstance();
+        for (FieldCodec field : fields) {
+            field.read(value, in);
+        }
+        return value;
+    }
+
+    /**
+     * 单个对象编码成独立的字节数组
+     */
+    public byte[] toBytes(T value) {
+        BinaryOutput out = new BinaryOutput(64);
+        encode(value, out);
+        return out.toByteArray();
+    }
+
+    public T fromBytes(byte[] bytes) throws IOException {
+        BinaryInput in = new BinaryInput(bytes, 0, bytes.length);
+        T value = decode(in);
+        if (in.remaining() != 0) {
+            throw new IOException("记录后有多余的" + in.remaining() + "个字节");
+        }
+        return value;
+    }
+
+    /**
+     * 批量编码到同一个可复用的缓冲区：字段表摘要和记录数各写一次，之后是逐条记录
+     */
+    public void encodeAll(List<? extends T> values, BinaryOutput out) {
+        out.writeInt(schemaHash);
+        out.writeVarInt(values.size());
+        for (T value : values) {
+            encode(value, out);
+        }
+    }
+
+    public List<T> decodeAll(BinaryInput in) throws IOException {
+        int hash = in.readInt();
+        if (hash != schemaHash) {
+            throw new IOException("字段表不匹配: " + type.getName());
+        }
+        int count = in.readVarInt();
+        // 有字段的记录至少占1个字节，记录数超过剩余字节数说明数据已损坏，避免按它预分配列表
+        if (count < 0 || (fields.length > 0 && count > in.remaining())) {
+            throw new IOException("记录数无效: " + count);
+        }
+        List<T> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(decode(in));
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T newInstance() throws IOException {
+        try {
+            return (T) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException("创建" + type.getName() + "失败", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BinarySerializer{" + type.getName() + ", fields=" + Arrays.toString(fields) + "}";
+    }
+
+    /**
+     * 单个字段的读写器，getter/setter在创建时适配成精确类型，调用时用invokeExact避免装箱
+     */
+    private abstract static class FieldCodec {
+        final String name;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        FieldCodec(Field field, MethodHandles.Lookup lookup, Class<?> valueType) throws IllegalAccessException {
+            this.name = field.getName();
+            field.setAccessible(true);
+            this.getter = lookup.unreflectGetter(field).asType(MethodType.methodType(valueType, Object.class));
+            // short/char/byte字段按int读写，setter需要窄化转换，asType不允许
+            this.setter = MethodHandles.explicitCastArguments(lookup.unreflectSetter(field),
+                    MethodType.methodType(void.class, Object.class, valueType));
+        }
+
+        abstract void write(Object target, BinaryOutput out);
+
+        abstract void read(Object target, BinaryInput in) throws IOException;
+
+        static FieldCodec create(Field field, MethodHandles.Lookup lookup) {
+            Class<?> t = field.getType();
+            try {
+                if (t == int.class || t == short.class || t == char.class || t == byte.class) {
+                    return new IntCodec(field, lookup);
+                } else if (t == long.class) {
+                    return new LongCodec(field, lookup);
+                } else if (t == boolean.class) {
+                    return new BooleanCodec(field, lookup);
+                } else if (t == double.class) {
+                    return new DoubleCodec(field, lookup);
+                } else if (t == float.class) {
+                    return new FloatCodec(field, lookup);
+                } else if (t == String.class) {
+                    return new StringCodec(field, lookup);
+                } else if (t == byte[].class) {
+                    return new BytesCodec(field, lookup);
+                } else if (t == Object.class || t.isArray() || t.isInterface() || Modifier.isAbstract(t.getModifiers())) {
+                    // 这些类型的值只能按运行时类型编码，而字节流里不记录类型
+                    throw new IllegalArgumentException("不支持的字段类型: " + field);
+                } else {
+                    // 包装类、枚举、嵌套对象：先写一个存在标记
+                    return new ObjectCodec(field, lookup);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("无法访问字段: " + field, e);
+            }
+        }
+
+        // Throwable统一转换，MethodHandle调用本身不会抛出受检异常
+        static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException) {
+                return (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return new IllegalStateException(e);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // int/short/char/byte都按int读写，zigzag变长编码
+    private static class IntCodec extends FieldCodec {
+        IntCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, int.class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeZigZagInt((int) getter.invokeExact(target));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            int value = in.readZigZagInt();
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static class LongCodec extends FieldCodec {
+        LongCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, long.class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeZigZagLong((long) getter.invokeExact(target));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            long value = in.readZigZagLong();
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static class BooleanCodec extends FieldCodec {
+        BooleanCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, boolean.class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeByte((boolean) getter.invokeExact(target) ? 1 : 0);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            boolean value = in.readByte() != 0;
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static class DoubleCodec extends FieldCodec {
+        DoubleCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, double.class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeLong(Double.doubleToRawLongBits((double) getter.invokeExact(target)));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            double value = Double.longBitsToDouble(in.readLong());
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static class FloatCodec extends FieldCodec {
+        FloatCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, float.class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeInt(Float.floatToRawIntBits((float) getter.invokeExact(target)));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            float value = Float.intBitsToFloat(in.readInt());
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static class StringCodec extends FieldCodec {
+        StringCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, String.class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeString((String) getter.invokeExact(target));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            String value = in.readString();
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static class BytesCodec extends FieldCodec {
+        BytesCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, byte[].class);
+        }
+
+        @Override
+        void write(Object target, BinaryOutput out) {
+            try {
+                out.writeBytes((byte[]) getter.invokeExact(target));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            byte[] value = in.readBytes();
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    // 可以为null的字段：0表示null，1后面跟值
+    private static class ObjectCodec extends FieldCodec {
+        private final Class<?> type;
+        private volatile BinarySerializer<?> nested; // 嵌套类型延迟创建，允许类引用自身
+
+        ObjectCodec(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            super(field, lookup, Object.class);
+            this.type = field.getType();
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void write(Object target, BinaryOutput out) {
+            Object value;
+            try {
+                value = getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            out.writeByte(1);
+            if (type == Integer.class || type == Short.class || type == Byte.class) {
+                out.writeZigZagInt(((Number) value).intValue());
+            } else if (type == Character.class) {
+                out.writeVarInt((Character) value);
+            } else if (type == Long.class) {
+                out.writeZigZagLong((Long) value);
+            } else if (type == Boolean.class) {
+                out.writeByte((Boolean) value ? 1 : 0);
+            } else if (type == Double.class) {
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+            } else if (type == Float.class) {
+                out.writeInt(Float.floatToRawIntBits((Float) value));
+            } else if (type.isEnum()) {
+                out.writeVarInt(((Enum<?>) value).ordinal());
+            } else {
+                if (value.getClass() != type) {
+                    // 按声明类型编码会丢掉子类的字段，解码后也得不到原来的类型
+                    throw new IllegalArgumentException("字段" + name + "声明为" + type.getName()
+                            + "，实际值的类型是" + value.getClass().getName() + "，不支持多态字段");
+                }
+                ((BinarySerializer) nested()).encode(value, out);
+            }
+        }
+
+        @Override
+        void read(Object target, BinaryInput in) throws IOException {
+            Object value = null;
+            if (in.readByte() != 0) {
+                if (type == Integer.class) {
+                    value = in.readZigZagInt();
+                } else if (type == Short.class) {
+                    value = (short) in.readZigZagInt();
+                } else if (type == Byte.class) {
+                    value = (byte) in.readZigZagInt();
+                } else if (type == Character.class) {
+                    value = (char) in.readVarInt();
+                } else if (type == Long.class) {
+                    value = in.readZigZagLong();
+                } else if (type == Boolean.class) {
+                    value = in.readByte() != 0;
+                } else if (type == Double.class) {
+                    value = Double.longBitsToDouble(in.readLong());
+                } else if (type == Float.class) {
+                    value = Float.intBitsToFloat(in.readInt());
+                } else if (type.isEnum()) {
+                    Object[] constants = type.getEnumConstants();
+                    int ordinal = in.readVarInt();
+                    if (ordinal < 0 || ordinal >= constants.length) {
+                        throw new IOException("枚举序号越界: " + type.getName() + "#" + ordinal);
+                    }
+                    value = constants[ordinal];
+                } else {
+                    value = nested().decode(in);
+                }
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        private BinarySerializer<?> nested() {
+            BinarySerializer<?> serializer = nested;
+            if (serializer == null) {
+                serializer = BinarySerializer.of(type);
+                nested = serializer;
+            }
+            return serializer;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每个连接一个线程的阻塞式服务器
+ * 运行在有虚拟线程的JDK(21+)上时每个连接一个虚拟线程，阻塞读写只挂起虚拟线程、不占用平台线程；
+ * 在Java 8等旧版本上退回到有界的平台线程池，超出线程数的连接排队，队列也满时直接关闭
+ */
+class BlockingServer implements Closeable {
+    private static final Method VIRTUAL_EXECUTOR_FACTORY = probeVirtualThreadExecutor();
+
+    private final int port;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final ConnectionHandler handler;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean running;
+
+    public BlockingServer(int port, ConnectionHandler handler) {
+        this(port, 256, handler);
+    }
+
+    /**
+     * @param maxPlatformThreads 没有虚拟线程时平台线程池的大小
+     */
+    public BlockingServer(int port, int maxPlatformThreads, ConnectionHandler handler) {
+        this.port = port;
+        this.handler = handler;
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPlatformThreadPool(maxPlatformThreads);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor()从Java 21开始才有，通过反射获取以保持Java 8编译目标；
+    // JDK 19/20上方法存在但未开启预览特性时调用会抛异常，所以实际调用一次，能创建出来才算支持
+    private static Method probeVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (VIRTUAL_EXECUTOR_FACTORY == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) VIRTUAL_EXECUTOR_FACTORY.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadPool(int maxThreads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+            Thread thread = new Thread(r, "blocking-server-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true); // 空闲时线程数回落
+        return pool;
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_EXECUTOR_FACTORY != null;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "blocking-server-accept");
+        acceptThread.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                if (!running) {
+                    break; // 服务器关闭
+                }
+                e.printStackTrace();
+                continue;
+            }
+            try {
+                executor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                // 线程和队列都已用完，宁可拒绝也不无限排队
+                rejected.increment();
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        connectionCount.incrementAndGet();
+        try {
+            handler.handle(socket);
+        } catch (IOException e) {
+            // 对端重置等错误只影响当前连接
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            connectionCount.decrementAndGet();
+            closeQuietly(socket);
+        }
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        executor.shutdownNow(); // 中断阻塞在读写上的处理线程
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
+
+/**
+ * 阻塞式连接处理逻辑，方法返回后连接会被关闭
+ */
+@FunctionalInterface
+interface ConnectionHandler {
+    void handle(Socket socket) throws IOException;
+}
@@ -0,0 +1,197 @@
+package com.jonssonyan;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按大小分级的直接内存缓冲池
+ * 容量向上取整到2的幂(512B ~ 64KB)，每个线程先从自己的本地缓存取，再从全局池取，都没有才新分配
+ * 超过最大级别的请求直接分配、不入池
+ * 泄漏检测按采样进行：默认每128次申请跟踪一次，避免每次申请都创建PhantomReference、写一次并发集合
+ */
+class BufferPool {
+    static final int DEFAULT_LEAK_SAMPLE_INTERVAL = 128;
+    static final BufferPool DEFAULT = new BufferPool(false);
+
+    private static final int MIN_SHIFT = 9;  // 512B
+    private static final int MAX_SHIFT = 16; // 64KB
+    private static final int CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+    static final int MAX_POOLED_CAPACITY = 1 << MAX_SHIFT; // 能入池的最大容量，超过的申请直接分配
+    private static final int THREAD_CACHE_SIZE = 16;  // 每个线程每个级别最多缓存的缓冲区数
+    private static final int SHARED_CACHE_SIZE = 1024; // 全局每个级别最多缓存的缓冲区数
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<ByteBuffer>[] shared = (ConcurrentLinkedQueue<ByteBuffer>[]) new ConcurrentLinkedQueue<?>[CLASS_COUNT];
+    private final AtomicInteger[] sharedSizes = new AtomicInteger[CLASS_COUNT];
+    private final ThreadLocal<ArrayDeque<ByteBuffer>[]> threadCaches = ThreadLocal.withInitial(BufferPool::newThreadCache);
+
+    // 泄漏检测 - 句柄被GC回收但从未release的缓冲区会出现在引用队列中
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<>();
+    private final Set<LeakTracker> trackers = ConcurrentHashMap.newKeySet();
+    private final int leakSampleInterval;
+    private final boolean recordStackTrace;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    BufferPool(boolean recordStackTrace) {
+        this(DEFAULT_LEAK_SAMPLE_INTERVAL, recordStackTrace);
+    }
+
+    /**
+     * @param leakSampleInterval 平均每多少次申请跟踪一次泄漏，1为全部跟踪，0为关闭；未被跟踪的缓冲区泄漏时不会报告，也不会从outstanding中扣除
+     * @param recordStackTrace   是否记录分配位置，开启后泄漏报告会带上调用栈，但分配开销更大
+     */
+    BufferPool(int leakSampleInterval, boolean recordStackTrace) {
+        if (leakSampleInterval < 0) {
+            throw new IllegalArgumentException("采样间隔不能为负数: " + leakSampleInterval);
+        }
+        this.leakSampleInterval = leakSampleInterval;
+        this.recordStackTrace = recordStackTrace;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            shared[i] = new ConcurrentLinkedQueue<>();
+            sharedSizes[i] = new AtomicInteger();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ByteBuffer>[] newThreadCache() {
+        ArrayDeque<ByteBuffer>[] cache = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            cache[i] = new ArrayDeque<>(THREAD_CACHE_SIZE);
+        }
+        return cache;
+    }
+
+    /**
+     * 申请一个至少有capacity字节的缓冲区，使用完毕必须调用release()
+     */
+    public PooledBuffer acquire(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("容量不能为负数: " + capacity);
+        }
+        reportLeaks();
+        int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = threadCaches.get()[sizeClass].pollLast();
+            if (buffer == null) {
+                buffer = shared[sizeClass].poll();
+                if (buffer != null) {
+                    sharedSizes[sizeClass].decrementAndGet();
+                }
+            }
+        }
+        if (buffer != null) {
+            hits.increment();
+            buffer.clear();
+        } else {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect(sizeClass >= 0 ? 1 << (sizeClass + MIN_SHIFT) : capacity);
+        }
+        outstanding.incrementAndGet();
+        PooledBuffer pooled = new PooledBuffer(this, buffer, sizeClass);
+        if (sampled()) {
+            LeakTracker tracker = new LeakTracker(pooled, leakQueue, recordStackTrace ? new Throwable("缓冲区分配位置") : null);
+            trackers.add(tracker);
+            pooled.tracker = tracker;
+        }
+        return pooled;
+    }
+
+    // 用线程本地的随机数决定是否跟踪，不引入共享计数器
+    private boolean sampled() {
+        return leakSampleInterval == 1
+                || leakSampleInterval > 1 && ThreadLocalRandom.current().nextInt(leakSampleInterval) == 0;
+    }
+
+    void release(PooledBuffer pooled) {
+        if (pooled.tracker != null) {
+            trackers.remove(pooled.tracker);
+            pooled.tracker.clear();
+        }
+        outstanding.decrementAndGet();
+        int sizeClass = pooled.sizeClass;
+        if (sizeClass < 0) {
+            return; // 超大缓冲区不入池，交给GC回收
+        }
+        ByteBuffer buffer = pooled.buffer;
+        // 只有申请线程自己归还时才放回线程本地缓存，跨线程归还(如收包线程申请、处理线程归还)放回全局池，
+        // 否则缓冲区会堆积在只归还不申请的线程里
+        ArrayDeque<ByteBuffer> local = pooled.owner == Thread.currentThread() ? threadCaches.get()[sizeClass] : null;
+        if (local != null && local.size() < THREAD_CACHE_SIZE) {
+            local.addLast(buffer);
+        } else if (sharedSizes[sizeClass].incrementAndGet() <= SHARED_CACHE_SIZE) {
+            shared[sizeClass].offer(buffer);
+        } else {
+            sharedSizes[sizeClass].decrementAndGet();
+        }
+    }
+
+    private void reportLeaks() {
+        LeakTracker tracker;
+        while ((tracker = (LeakTracker) leakQueue.poll()) != null) {
+            if (trackers.remove(tracker)) {
+                leaks.incrementAndGet();
+                outstanding.decrementAndGet();
+                System.err.println("BufferPool检测到缓冲区泄漏: 未调用release()就被GC回收");
+                if (tracker.allocationSite != null) {
+                    tracker.allocationSite.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // 容量对应的级别下标，超过最大级别返回-1
+    private static int sizeClass(int capacity) {
+        if (capacity > MAX_POOLED_CAPACITY) {
+            return -1;
+        }
+        int shift = capacity <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getOutstanding() {
+        reportLeaks();
+        return outstanding.get();
+    }
+
+    public long getLeaks() {
+        reportLeaks();
+        return leaks.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{hits=" + getHits() + ", misses=" + getMisses()
+                + ", outstanding=" + getOutstanding() + ", leaks=" + getLeaks() + "}";
+    }
+
+    private static class LeakTracker extends PhantomReference<PooledBuffer> {
+        final Throwable allocationSite;
+
+        LeakTracker(PooledBuffer referent, ReferenceQueue<PooledBuffer> queue, Throwable allocationSite) {
+            super(referent, queue);
+            this.allocationSite = allocationSite;
+        }
+    }
+}
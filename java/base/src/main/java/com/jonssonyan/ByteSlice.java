@@ -0,0 +1,152 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节数组片段的零拷贝视图
+ * 只按字节操作：length()是字节数，查找和比较都针对字节，适合ASCII日志的匹配和解析；
+ * 不实现CharSequence，因为多字节字符下字节下标和字符下标对不上。需要文本时用toString()按UTF-8解码
+ */
+class ByteSlice {
+    private byte[] array;
+    private int offset;
+    private int length;
+
+    ByteSlice() {
+    }
+
+    ByteSlice(byte[] array, int offset, int length) {
+        set(array, offset, length);
+    }
+
+    void set(byte[] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 字节数
+     */
+    public int length() {
+        return length;
+    }
+
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return array[offset + index];
+    }
+
+    /**
+     * 返回共享同一数组的子视图，下标按字节计
+     */
+    public ByteSlice slice(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new ByteSlice(array, offset + start, end - start);
+    }
+
+    public int indexOf(byte value, int from) {
+        int index = LineScanner.indexOf(array, value, offset + Math.max(0, from), offset + length);
+        return index < 0 ? -1 : index - offset;
+    }
+
+    public int indexOf(byte[] target, int from) {
+        if (target.length == 0) {
+            return Math.max(0, Math.min(from, length));
+        }
+        byte first = target[0];
+        int last = offset + length - target.length;
+        // 先用简单循环找首字节，命中后再比较其余字节
+        for (int i = offset + Math.max(0, from); i <= last; i++) {
+            if (array[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < target.length && array[i + j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(byte[] target) {
+        return indexOf(target, 0) >= 0;
+    }
+
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (array[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按十进制解析整个片段
+     */
+    public long parseLong() {
+        if (length == 0) {
+            throw new NumberFormatException("空字符串");
+        }
+        int i = 0;
+        boolean negative = array[offset] == '-';
+        if (negative || array[offset] == '+') {
+            i++;
+        }
+        if (i == length) {
+            throw new NumberFormatException(toString());
+        }
+        // 和FastScanner.parseLong一样按负数累加并检查溢出，Long.MIN_VALUE也能表示
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = array[offset + i] - '0';
+            if (digit < 0 || digit > 9 || value < multiplyMin) {
+                throw new NumberFormatException(toString());
+            }
+            value *= 10;
+            if (value < limit + digit) {
+                throw new NumberFormatException(toString());
+            }
+            value -= digit;
+        }
+        return negative ? value : -value;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(array, offset, length);
+    }
+
+    /**
+     * 复制出一个独立的片段，不再依赖扫描器的缓冲区
+     */
+    public ByteSlice copy() {
+        byte[] bytes = new byte[length];
+        System.arraycopy(array, offset, bytes, 0, length);
+        return new ByteSlice(bytes, 0, length);
+    }
+
+    public String toString(Charset charset) {
+        return new String(array, offset, length, charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(StandardCharsets.UTF_8);
+    }
+}
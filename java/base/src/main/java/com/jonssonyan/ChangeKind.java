@@ -0,0 +1,5 @@
+package com.jonssonyan;
+
+enum ChangeKind {
+    CREATED, MODIFIED, DELETED
+}
@@ -0,0 +1,94 @@
+package com.jonssonyan;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * chunked传输编码的响应体输入流
+ */
+class ChunkedInputStream extends FilterInputStream {
+    private long chunkRemaining;
+    private boolean eof;
+
+    ChunkedInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        if (chunkRemaining == 0) {
+            chunkRemaining = readChunkSize();
+            if (chunkRemaining == 0) {
+                // 跳过trailer直到空行
+                while (!readAsciiLine().isEmpty()) {
+                    // 丢弃
+                }
+                eof = true;
+                return -1;
+            }
+        }
+        int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (n == -1) {
+            throw new EOFException("chunk不完整");
+        }
+        chunkRemaining -= n;
+        if (chunkRemaining == 0) {
+            readAsciiLine(); // chunk结尾的\r\n
+        }
+        return n;
+    }
+
+    private long readChunkSize() throws IOException {
+        String line = readAsciiLine();
+        int semicolon = line.indexOf(';'); // 忽略chunk扩展
+        String size = (semicolon >= 0 ? line.substring(0, semicolon) : line).trim();
+        long length;
+        try {
+            length = Long.parseLong(size, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("非法的chunk长度: " + line);
+        }
+        if (length < 0) {
+            throw new IOException("非法的chunk长度: " + line);
+        }
+        return length;
+    }
+
+    private String readAsciiLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (line.length() > HttpResponse.MAX_LINE_LENGTH) {
+                throw new IOException("chunk长度行或trailer超过" + HttpResponse.MAX_LINE_LENGTH + "字节");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        if (c == -1) {
+            throw new EOFException("chunked响应体不完整");
+        }
+        return line.toString();
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : (int) Math.min(in.available(), chunkRemaining);
+    }
+
+    @Override
+    public void close() {
+        // 不关闭底层连接
+    }
+}
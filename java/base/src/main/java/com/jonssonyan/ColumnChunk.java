@@ -0,0 +1,18 @@
+package com.jonssonyan;
+
+/**
+ * 一个列块的偏移、长度和统计信息；DOUBLE列的min/max是doubleToLongBits的结果
+ */
+class ColumnChunk {
+    final long offset;
+    final int length;
+    final long min;
+    final long max;
+
+    ColumnChunk(long offset, int length, long min, long max) {
+        this.offset = offset;
+        this.length = length;
+        this.min = min;
+        this.max = max;
+    }
+}
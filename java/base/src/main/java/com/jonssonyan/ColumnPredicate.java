@@ -0,0 +1,71 @@
+package com.jonssonyan;
+
+/**
+ * 行过滤条件：mightMatch根据列块统计信息判断整组是否可能命中，返回false的行组整组跳过；
+ * test对单行求值
+ */
+interface ColumnPredicate {
+    boolean mightMatch(ColumnarReader reader, RowGroup group);
+
+    boolean test(RowView row);
+
+    default ColumnPredicate and(ColumnPredicate other) {
+        ColumnPredicate self = this;
+        return new ColumnPredicate() {
+            @Override
+            public boolean mightMatch(ColumnarReader reader, RowGroup group) {
+                return self.mightMatch(reader, group) && other.mightMatch(reader, group);
+            }
+
+            @Override
+            public boolean test(RowView row) {
+                return self.test(row) && other.test(row);
+            }
+        };
+    }
+
+    /**
+     * INT/LONG/BOOLEAN列的值在[low, high]之间
+     */
+    static ColumnPredicate between(int column, long low, long high) {
+        return new ColumnPredicate() {
+            @Override
+            public boolean mightMatch(ColumnarReader reader, RowGroup group) {
+                ColumnChunk chunk = group.chunks[column];
+                return chunk.max >= low && chunk.min <= high;
+            }
+
+            @Override
+            public boolean test(RowView row) {
+                long value = row.getAsLong(column);
+                return value >= low && value <= high;
+            }
+        };
+    }
+
+    /**
+     * DOUBLE列的值在[low, high]之间
+     */
+    static ColumnPredicate between(int column, double low, double high) {
+        return new ColumnPredicate() {
+            @Override
+            public boolean mightMatch(ColumnarReader reader, RowGroup group) {
+                ColumnChunk chunk = group.chunks[column];
+                // NaN不满足任何比较，含NaN的列块统计信息不可靠时不跳过
+                double min = Double.longBitsToDouble(chunk.min);
+                double max = Double.longBitsToDouble(chunk.max);
+                return Double.isNaN(min) || Double.isNaN(max) || (max >= low && min <= high);
+            }
+
+            @Override
+            public boolean test(RowView row) {
+                double value = row.getDouble(column);
+                return value >= low && value <= high;
+            }
+        };
+    }
+
+    static ColumnPredicate isTrue(int column) {
+        return between(column, 1L, 1L);
+    }
+}
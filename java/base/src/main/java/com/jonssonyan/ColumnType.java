@@ -0,0 +1,14 @@
+package com.jonssonyan;
+
+/**
+ * 列类型，与DataOutputStream的基本类型对应
+ */
+enum ColumnType {
+    INT(4), LONG(8), DOUBLE(8), BOOLEAN(1);
+
+    final int width;
+
+    ColumnType(int width) {
+        this.width = width;
+    }
+}
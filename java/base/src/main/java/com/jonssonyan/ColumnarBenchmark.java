@@ -0,0 +1,88 @@
+package com.jonssonyan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 按行写入的DataOutputStream文件与列式文件的对比：按时间范围过滤后对一列求和
+ */
+class ColumnarBenchmark {
+    static void run(Path dir, int rows) throws IOException {
+        Path rowFile = dir.resolve("rows.bin");
+        Path columnFile = dir.resolve("rows.col");
+        Random random = new Random(5);
+        long time = 1_700_000_000_000L;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(rowFile), 64 * 1024));
+             ColumnarWriter writer = ColumnarFile.create(columnFile,
+                     Arrays.asList("time", "userId", "amount", "refund"),
+                     Arrays.asList(ColumnType.LONG, ColumnType.INT, ColumnType.DOUBLE, ColumnType.BOOLEAN), 8192)) {
+            for (int i = 0; i < rows; i++) {
+                time += random.nextInt(100); // 按时间递增写入，时间列的统计信息区分度高
+                int userId = random.nextInt(100_000);
+                double amount = random.nextInt(100_000) / 100.0;
+                boolean refund = random.nextInt(50) == 0;
+                out.writeLong(time);
+                out.writeInt(userId);
+                out.writeDouble(amount);
+                out.writeBoolean(refund);
+                writer.setLong(0, time);
+                writer.setInt(1, userId);
+                writer.setDouble(2, amount);
+                writer.setBoolean(3, refund);
+                writer.endRow();
+            }
+        }
+        long first = 1_700_000_000_000L;
+        long low = first + (time - first) / 2;
+        long high = low + (time - first) / 100; // 约1%的行
+        try {
+            for (int round = 0; round < 3; round++) { // 前两轮预热
+                boolean print = round == 2;
+                long start = System.nanoTime();
+                double sum = 0;
+                long matched = 0;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(rowFile), 64 * 1024))) {
+                    for (int i = 0; i < rows; i++) {
+                        long t = in.readLong();
+                        in.readInt();
+                        double amount = in.readDouble();
+                        in.readBoolean();
+                        if (t >= low && t <= high) {
+                            sum += amount;
+                            matched++;
+                        }
+                    }
+                }
+                if (print) {
+                    System.out.printf("DataInputStream逐行扫描: %dms, 命中%d行, 合计%.2f%n",
+                            (System.nanoTime() - start) / 1_000_000, matched, sum);
+                }
+
+                start = System.nanoTime();
+                double[] total = new double[1];
+                try (ColumnarReader reader = ColumnarFile.open(columnFile)) {
+                    int timeColumn = reader.columnIndex("time");
+                    int amountColumn = reader.columnIndex("amount");
+                    matched = reader.scan(ColumnPredicate.between(timeColumn, low, high),
+                            row -> total[0] += row.getDouble(amountColumn));
+                    if (print) {
+                        System.out.printf("ColumnarReader按统计信息跳过: %dms, 命中%d行, 合计%.2f, 读取%d组/跳过%d组%n",
+                                (System.nanoTime() - start) / 1_000_000, matched, total[0],
+                                reader.getLastScannedGroups(), reader.getLastSkippedGroups());
+                    }
+                }
+            }
+            System.out.printf("文件大小: 按行%d字节, 列式%d字节%n", Files.size(rowFile), Files.size(columnFile));
+        } finally {
+            Files.deleteIfExists(rowFile);
+            Files.deleteIfExists(columnFile);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 列式数据文件
+ * 行按固定行数分组，每组内每一列的值连续存放成一个列块，并记录该块的最小值和最大值；
+ * 文件末尾的索引描述列定义和每个列块的位置与统计信息。读取时只需要映射文件、读索引，
+ * 查询只访问用到的列，统计信息表明不可能命中的行组整组跳过。
+ * 文件结构：[魔数][列块...][索引][索引长度4字节][魔数]
+ */
+final class ColumnarFile {
+    static final int MAGIC = 0x434F4C31; // "COL1"
+
+    private ColumnarFile() {
+    }
+
+    static ColumnarWriter create(Path path, List<String> names, List<ColumnType> types, int rowsPerGroup) throws IOException {
+        return new ColumnarWriter(path, names, types, rowsPerGroup);
+    }
+
+    static ColumnarReader open(Path path) throws IOException {
+        return new ColumnarReader(path);
+    }
+}
@@ -0,0 +1,150 @@
+package com.jonssonyan;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 映射整个文件读取，值直接从映射内存中取出，不经过Java堆上的缓冲区
+ */
+class ColumnarReader implements Closeable {
+    private final MappedFile file;
+    private final List<String> names = new ArrayList<>();
+    private final List<ColumnType> types = new ArrayList<>();
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final List<RowGroup> groups = new ArrayList<>();
+    private long rowCount;
+    private volatile long lastScannedGroups;
+    private volatile long lastSkippedGroups;
+
+    ColumnarReader(Path path) throws IOException {
+        this.file = MappedFile.openRead(path);
+        try {
+            readFooter();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void readFooter() throws IOException {
+        long size = file.size();
+        if (size < 12 || file.getInt(0) != ColumnarFile.MAGIC || file.getInt(size - 4) != ColumnarFile.MAGIC) {
+            throw new IOException("不是列式数据文件: " + file.getPath());
+        }
+        int footerLength = file.getInt(size - 8);
+        if (footerLength < 0 || footerLength > size - 12) {
+            throw new IOException("索引长度无效: " + footerLength);
+        }
+        byte[] footerBytes = new byte[footerLength];
+        file.get(size - 8 - footerLength, footerBytes, 0, footerLength);
+        DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBytes));
+        int columns = footer.readInt();
+        ColumnType[] allTypes = ColumnType.values();
+        for (int c = 0; c < columns; c++) {
+            String name = footer.readUTF();
+            int type = footer.readUnsignedByte();
+            if (type >= allTypes.length) {
+                throw new IOException("未知的列类型: " + type);
+            }
+            names.add(name);
+            types.add(allTypes[type]);
+            columnIndex.put(name, c);
+        }
+        int groupCount = footer.readInt();
+        for (int g = 0; g < groupCount; g++) {
+            long firstRow = footer.readLong();
+            int rows = footer.readInt();
+            ColumnChunk[] chunks = new ColumnChunk[columns];
+            for (int c = 0; c < columns; c++) {
+                chunks[c] = new ColumnChunk(footer.readLong(), footer.readInt(), footer.readLong(), footer.readLong());
+                if (chunks[c].offset < 4 || chunks[c].offset + chunks[c].length > size - 8 - footerLength
+                        || chunks[c].length != rows * types.get(c).width) {
+                    throw new IOException("列块位置无效: 行组" + g + "列" + names.get(c));
+                }
+            }
+            groups.add(new RowGroup(firstRow, rows, chunks));
+            rowCount += rows;
+        }
+    }
+
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    public ColumnType getColumnType(int column) {
+        return types.get(column);
+    }
+
+    public int columnIndex(String name) {
+        Integer index = columnIndex.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("没有这一列: " + name);
+        }
+        return index;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public List<RowGroup> getRowGroups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * 遍历满足predicate的行；先用列块统计信息跳过整组，再对剩下的行逐行判断。
+     * RowView只在回调内有效，只应读取谓词和查询用到的列，其他列的数据不会被访问
+     */
+    public long scan(ColumnPredicate predicate, RowHandler handler) throws IOException {
+        RowView row = new RowView(this);
+        long matched = 0;
+        long scanned = 0;
+        long skipped = 0;
+        for (RowGroup group : groups) {
+            if (predicate != null && !predicate.mightMatch(this, group)) {
+                skipped++;
+                continue;
+            }
+            scanned++;
+            row.group = group;
+            for (int i = 0; i < group.rowCount; i++) {
+                row.index = i;
+                if (predicate == null || predicate.test(row)) {
+                    handler.onRow(row);
+                    matched++;
+                }
+            }
+        }
+        lastScannedGroups = scanned;
+        lastSkippedGroups = skipped;
+        return matched;
+    }
+
+    /**
+     * 上一次scan读取和跳过的行组数
+     */
+    public long getLastScannedGroups() {
+        return lastScannedGroups;
+    }
+
+    public long getLastSkippedGroups() {
+        return lastSkippedGroups;
+    }
+
+    MappedFile file() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        file.close();
+    }
+}
@@ -0,0 +1,184 @@
+package com.jonssonyan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按行写入，行数凑满一组后把每列写成一个列块
+ */
+class ColumnarWriter implements Closeable {
+    private final FileChannel channel;
+    private final List<String> names;
+    private final List<ColumnType> types;
+    private final int rowsPerGroup;
+    private final long[][] longColumns; // INT/LONG/BOOLEAN列
+    private final double[][] doubleColumns; // DOUBLE列
+    private final List<RowGroup> groups = new ArrayList<>();
+    private final ByteBuffer buffer;
+    private long position;
+    private long rowCount;
+    private int groupRows;
+    private boolean closed;
+
+    ColumnarWriter(Path path, List<String> names, List<ColumnType> types, int rowsPerGroup) throws IOException {
+        if (names.size() != types.size() || names.isEmpty()) {
+            throw new IllegalArgumentException("列名和类型数量不一致或为空");
+        }
+        this.names = new ArrayList<>(names);
+        this.types = new ArrayList<>(types);
+        this.rowsPerGroup = rowsPerGroup;
+        this.longColumns = new long[types.size()][];
+        this.doubleColumns = new double[types.size()][];
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i) == ColumnType.DOUBLE) {
+                doubleColumns[i] = new double[rowsPerGroup];
+            } else {
+                longColumns[i] = new long[rowsPerGroup];
+            }
+        }
+        this.buffer = ByteBuffer.allocate(rowsPerGroup * 8);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer magic = ByteBuffer.allocate(4).putInt(ColumnarFile.MAGIC);
+        magic.flip();
+        write(magic);
+    }
+
+    public void setInt(int column, int value) {
+        check(column, ColumnType.INT);
+        longColumns[column][groupRows] = value;
+    }
+
+    public void setLong(int column, long value) {
+        check(column, ColumnType.LONG);
+        longColumns[column][groupRows] = value;
+    }
+
+    public void setDouble(int column, double value) {
+        check(column, ColumnType.DOUBLE);
+        doubleColumns[column][groupRows] = value;
+    }
+
+    public void setBoolean(int column, boolean value) {
+        check(column, ColumnType.BOOLEAN);
+        longColumns[column][groupRows] = value ? 1 : 0;
+    }
+
+    private void check(int column, ColumnType type) {
+        if (types.get(column) != type) {
+            throw new IllegalArgumentException("列" + names.get(column) + "的类型是" + types.get(column) + "，不是" + type);
+        }
+    }
+
+    /**
+     * 结束当前行，没有设置的列沿用该位置上一组的值，调用方应设置所有列
+     */
+    public void endRow() throws IOException {
+        groupRows++;
+        rowCount++;
+        if (groupRows == rowsPerGroup) {
+            flushGroup();
+        }
+    }
+
+    private void flushGroup() throws IOException {
+        ColumnChunk[] chunks = new ColumnChunk[types.size()];
+        for (int c = 0; c < types.size(); c++) {
+            ColumnType type = types.get(c);
+            buffer.clear();
+            long min;
+            long max;
+            if (type == ColumnType.DOUBLE) {
+                double[] values = doubleColumns[c];
+                double dmin = Double.POSITIVE_INFINITY;
+                double dmax = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < groupRows; i++) {
+                    buffer.putDouble(values[i]);
+                    dmin = Math.min(dmin, values[i]);
+                    dmax = Math.max(dmax, values[i]);
+                }
+                min = Double.doubleToLongBits(dmin);
+                max = Double.doubleToLongBits(dmax);
+            } else {
+                long[] values = longColumns[c];
+                min = Long.MAX_VALUE;
+                max = Long.MIN_VALUE;
+                for (int i = 0; i < groupRows; i++) {
+                    long value = values[i];
+                    if (type == ColumnType.INT) {
+                        buffer.putInt((int) value);
+                    } else if (type == ColumnType.LONG) {
+                        buffer.putLong(value);
+                    } else {
+                        buffer.put((byte) value);
+                    }
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+            buffer.flip();
+            chunks[c] = new ColumnChunk(position, buffer.remaining(), min, max);
+            write(buffer);
+        }
+        groups.add(new RowGroup(rowCount - groupRows, groupRows, chunks));
+        groupRows = 0;
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data);
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 写出最后一组和索引
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (groupRows > 0) {
+                flushGroup();
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(bytes);
+            footer.writeInt(names.size());
+            for (int c = 0; c < names.size(); c++) {
+                footer.writeUTF(names.get(c));
+                footer.writeByte(types.get(c).ordinal());
+            }
+            footer.writeInt(groups.size());
+            for (RowGroup group : groups) {
+                footer.writeLong(group.firstRow);
+                footer.writeInt(group.rowCount);
+                for (ColumnChunk chunk : group.chunks) {
+                    footer.writeLong(chunk.offset);
+                    footer.writeInt(chunk.length);
+                    footer.writeLong(chunk.min);
+                    footer.writeLong(chunk.max);
+                }
+            }
+            footer.writeInt(bytes.size());
+            footer.writeInt(ColumnarFile.MAGIC);
+            write(ByteBuffer.wrap(bytes.toByteArray()));
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
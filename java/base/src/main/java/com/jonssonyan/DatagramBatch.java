@@ -0,0 +1,58 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * 一批数据包
+ */
+class DatagramBatch {
+    private final DatagramChannel channel;
+    private final PooledBuffer[] buffers;
+    private final SocketAddress[] senders;
+    private int size;
+
+    DatagramBatch(DatagramChannel channel, int capacity) {
+        this.channel = channel;
+        this.buffers = new PooledBuffer[capacity];
+        this.senders = new SocketAddress[capacity];
+    }
+
+    void add(PooledBuffer buffer, SocketAddress sender) {
+        buffers[size] = buffer;
+        senders[size] = sender;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 第i个数据包的内容(已flip)
+     */
+    public ByteBuffer data(int i) {
+        return buffers[i].buffer();
+    }
+
+    public SocketAddress sender(int i) {
+        return senders[i];
+    }
+
+    /**
+     * 向第i个数据包的发送方回复
+     */
+    public void reply(int i, ByteBuffer response) throws IOException {
+        channel.send(response, senders[i]);
+    }
+
+    void release() {
+        for (int i = 0; i < size; i++) {
+            buffers[i].release();
+            buffers[i] = null;
+        }
+        size = 0;
+    }
+}
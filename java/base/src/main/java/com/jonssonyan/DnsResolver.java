@@ -0,0 +1,230 @@
+package com.jonssonyan;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带缓存的异步DNS解析器
+ * 解析在独立线程池中执行，调用方拿到future不会被阻塞；
+ * 成功和失败的结果分别按TTL缓存，同一主机的并发解析只会真正查询一次；
+ * 过期条目在查到时移除，缓存条目数超过上限时先清理所有过期条目，仍然超出再任意淘汰一部分
+ */
+class DnsResolver {
+    static final int DEFAULT_MAX_ENTRIES = 10_000;
+    static final DnsResolver DEFAULT = new DnsResolver(HostLookup.SYSTEM, 30_000, 5_000);
+
+    private final HostLookup lookup;
+    private final Executor executor;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final int maxEntries;
+    private final AtomicInteger nextAddress = new AtomicInteger();
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<InetAddress[]>> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DnsResolver(HostLookup lookup, long positiveTtlMillis, long negativeTtlMillis) {
+        this(lookup, defaultExecutor(), positiveTtlMillis, negativeTtlMillis);
+    }
+
+    /**
+     * @param lookup            实际的查询方式，测试时可以换成本地hosts表
+     * @param executor          执行阻塞查询的线程池
+     * @param positiveTtlMillis 解析成功的缓存时间
+     * @param negativeTtlMillis 解析失败的缓存时间，避免对不存在的主机反复查询
+     */
+    public DnsResolver(HostLookup lookup, Executor executor, long positiveTtlMillis, long negativeTtlMillis) {
+        this(lookup, executor, positiveTtlMillis, negativeTtlMillis, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries 缓存的最大主机数
+     */
+    public DnsResolver(HostLookup lookup, Executor executor, long positiveTtlMillis, long negativeTtlMillis, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("缓存上限必须大于0: " + maxEntries);
+        }
+        this.lookup = lookup;
+        this.executor = executor;
+        this.positiveTtlMillis = positiveTtlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    private static Executor defaultExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "dns-resolver-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 异步解析主机名的所有地址
+     */
+    public CompletableFuture<InetAddress[]> resolveAll(String host) {
+        CacheEntry entry = cache.get(host);
+        if (entry != null) {
+            if (entry.expiresAt > System.currentTimeMillis()) {
+                hits.increment();
+                return entry.toFuture();
+            }
+            cache.remove(host, entry); // 只移除这个过期条目，不影响并发写入的新结果
+        }
+        CompletableFuture<InetAddress[]> created = new CompletableFuture<>();
+        CompletableFuture<InetAddress[]> existing = inflight.putIfAbsent(host, created);
+        if (existing != null) {
+            merged.increment(); // 已有相同主机的查询在进行，共享它的结果
+            return existing;
+        }
+        misses.increment();
+        try {
+            executor.execute(() -> lookupInto(host, created));
+        } catch (RejectedExecutionException e) {
+            // 查询没有开始，移除在途记录，否则之后对这个主机的解析都会等一个永远不会完成的future
+            inflight.remove(host, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private void lookupInto(String host, CompletableFuture<InetAddress[]> created) {
+        CacheEntry result;
+        try {
+            result = new CacheEntry(lookup.lookup(host), null, System.currentTimeMillis() + positiveTtlMillis);
+        } catch (UnknownHostException e) {
+            result = new CacheEntry(null, e, System.currentTimeMillis() + negativeTtlMillis);
+        } catch (RuntimeException e) {
+            inflight.remove(host);
+            created.completeExceptionally(e);
+            return;
+        }
+        // 先写缓存再移除在途记录，保证之后的调用一定能命中其中之一
+        cache.put(host, result);
+        if (cache.size() > maxEntries) {
+            evict();
+        }
+        inflight.remove(host);
+        result.complete(created);
+    }
+
+    // 先清理过期条目，仍超过上限时按迭代顺序淘汰到上限的3/4，避免每次写入都触发淘汰
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cache.entrySet().removeIf(e -> e.getValue().expiresAt <= now);
+        if (cache.size() <= maxEntries) {
+            return;
+        }
+        int excess = cache.size() - maxEntries * 3 / 4;
+        Iterator<String> iterator = cache.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 异步解析主机名，有多个地址时依次轮换返回，把连接分散到各个地址上(所有主机共用一个轮换计数)
+     */
+    public CompletableFuture<InetAddress> resolve(String host) {
+        return resolveAll(host).thenApply(addresses -> addresses[Math.floorMod(nextAddress.getAndIncrement(), addresses.length)]);
+    }
+
+    /**
+     * 异步解析为可直接用于connect的套接字地址
+     */
+    public CompletableFuture<InetSocketAddress> resolve(String host, int port) {
+        return resolve(host).thenApply(address -> new InetSocketAddress(address, port));
+    }
+
+    /**
+     * 阻塞式解析，供阻塞的Socket客户端使用
+     */
+    public InetSocketAddress resolveNow(String host, int port) throws UnknownHostException {
+        try {
+            return resolve(host, port).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException("解析被中断: " + host);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    public void invalidate(String host) {
+        cache.remove(host);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getMerged() {
+        return merged.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return "DnsResolver{hits=" + getHits() + ", misses=" + getMisses() + ", merged=" + getMerged()
+                + ", evictions=" + getEvictions() + ", cached=" + cache.size() + "}";
+    }
+
+    private static class CacheEntry {
+        final InetAddress[] addresses;
+        final UnknownHostException error;
+        final long expiresAt;
+
+        CacheEntry(InetAddress[] addresses, UnknownHostException error, long expiresAt) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+
+        CompletableFuture<InetAddress[]> toFuture() {
+            CompletableFuture<InetAddress[]> future = new CompletableFuture<>();
+            complete(future);
+            return future;
+        }
+
+        void complete(CompletableFuture<InetAddress[]> future) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(addresses.clone()); // 调用方拿到副本，不会改坏缓存
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.jonssonyan;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 共享队列的固定线程池与工作窃取池的对比：外部提交大量小任务，以及任务在池内递归派生子任务
+ */
+class ExecutorBenchmark {
+    // 递归派生的任务在池内线程上提交，BLOCK会让所有工作线程互相等待，这里用CALLER_RUNS
+    static void run(int tasks, int threads) throws Exception {
+        ManagedThreadPool fixed = ManagedExecutors.fixed("bench-fixed", threads, 1 << 16, RejectionPolicy.CALLER_RUNS);
+        ManagedWorkStealingPool stealing = ManagedExecutors.workStealing("bench-stealing", threads, 1 << 16, RejectionPolicy.CALLER_RUNS);
+        try {
+            for (ManagedExecutor executor : new ManagedExecutor[]{fixed, stealing}) {
+                long start = System.nanoTime();
+                CountDownLatch done = new CountDownLatch(tasks);
+                for (int i = 0; i < tasks; i++) {
+                    executor.execute(() -> {
+                        work(200);
+                        done.countDown();
+                    });
+                }
+                done.await();
+                report(executor.getName() + " 外部提交", tasks, start);
+
+                // 每个任务派生两个子任务，共tasks个叶子；子任务在池内线程上提交
+                int depth = 31 - Integer.numberOfLeadingZeros(Math.max(1, tasks));
+                CountDownLatch leaves = new CountDownLatch(1 << depth);
+                start = System.nanoTime();
+                executor.execute(() -> spawn(executor, depth, leaves));
+                leaves.await();
+                report(executor.getName() + " 递归派生", (2L << depth) - 1, start);
+                System.out.println("  " + executor.getMetrics());
+            }
+
+            // 运行时扩容：排队任务较多时加线程
+            fixed.resize(threads * 2);
+            stealing.resize(threads * 2);
+            System.out.println("扩容后: " + fixed.getMetrics().maxThreads + " / " + stealing.getMetrics().maxThreads + "线程");
+
+            // 有界队列和ABORT策略：超出容量的任务被拒绝并计数
+            ManagedThreadPool bounded = ManagedExecutors.fixed("bench-bounded", 1, 100, RejectionPolicy.ABORT);
+            int rejected = 0;
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    bounded.execute(() -> work(10_000));
+                } catch (RejectedExecutionException e) {
+                    rejected++;
+                }
+            }
+            System.out.println("有界队列拒绝" + rejected + "个任务: " + bounded.getMetrics());
+            bounded.shutdownNow();
+        } finally {
+            fixed.shutdown();
+            stealing.shutdown();
+        }
+    }
+
+    private static void spawn(ExecutorService executor, int depth, CountDownLatch leaves) {
+        work(200);
+        if (depth == 0) {
+            leaves.countDown();
+            return;
+        }
+        executor.execute(() -> spawn(executor, depth - 1, leaves));
+        executor.execute(() -> spawn(executor, depth - 1, leaves));
+    }
+
+    private static volatile long sink;
+
+    private static void work(int iterations) {
+        long x = iterations;
+        for (int i = 0; i < iterations; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        sink = x;
+    }
+
+    private static void report(String name, long tasks, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d个任务, %.0fms, %.0f任务/秒%n", name, tasks, seconds * 1000, tasks / seconds);
+    }
+}
@@ -0,0 +1,353 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * 字节级的分词器，代替java.util.Scanner读取大量数字
+ * Scanner每个记号都要做正则匹配并创建String；这里在可重复填充的缓冲区里直接按字节查找分隔符并解析数字，
+ * 记号完整落在缓冲区内时不复制，跨越缓冲区边界时才拷贝到一个复用的数组。
+ * 只处理单字节分隔符，适合ASCII数字和文本；格式错误抛出InputMismatchException，没有记号时抛出NoSuchElementException。
+ * 与Scanner不同，格式错误的记号已经被读走，异常消息里带着它的内容，之后的读取从下一个记号开始
+ */
+class FastScanner implements Closeable {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer channelBuffer;
+    private final boolean[] delimiters = new boolean[256];
+    private int position;
+    private int limit;
+    private boolean eof;
+    // 当前记号：[tokenStart, tokenEnd)，位于buffer或跨界时的token数组
+    private byte[] token = new byte[64];
+    private byte[] tokenArray;
+    private int tokenStart;
+    private int tokenEnd;
+
+    public FastScanner(InputStream in) {
+        this(in, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 从通道读取，FileChannel读入堆内数组时少一次从InputStream到缓冲区的拷贝
+     */
+    public FastScanner(ReadableByteChannel channel) {
+        this(null, channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    FastScanner(InputStream in, ReadableByteChannel channel, int bufferSize) {
+        this.in = in;
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.channelBuffer = channel != null ? ByteBuffer.wrap(buffer) : null;
+        for (int b = 0; b <= ' '; b++) {
+            delimiters[b] = true;
+        }
+    }
+
+    public static FastScanner open(Path file) throws IOException {
+        return new FastScanner(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /**
+     * 使用指定的单字节分隔符代替空白字符，例如",\n"
+     */
+    public FastScanner useDelimiters(String chars) {
+        Arrays.fill(delimiters, false);
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (c > 0xFF) {
+                throw new IllegalArgumentException("分隔符必须是单字节字符: " + c);
+            }
+            delimiters[c] = true;
+        }
+        return this;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int n;
+        if (channel != null) {
+            channelBuffer.clear();
+            n = channel.read(channelBuffer);
+        } else {
+            n = in.read(buffer, 0, buffer.length);
+        }
+        if (n <= 0) {
+            // 阻塞的流和通道不会返回0；读到0也按结束处理，避免空转
+            eof = true;
+            limit = position = 0;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * 跳过分隔符，还有记号时返回true
+     */
+    public boolean hasNext() throws IOException {
+        while (true) {
+            while (position < limit) {
+                if (!delimiters[buffer[position] & 0xFF]) {
+                    return true;
+                }
+                position++;
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    // 读取下一个记号到tokenArray[tokenStart, tokenEnd)
+    private void readToken() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int start = position;
+        while (position < limit) {
+            if (delimiters[buffer[position] & 0xFF]) {
+                tokenArray = buffer;
+                tokenStart = start;
+                tokenEnd = position;
+                return;
+            }
+            position++;
+        }
+        // 记号跨越缓冲区边界，拼到复用数组中
+        int length = 0;
+        while (true) {
+            int chunk = position - start;
+            if (length + chunk > token.length) {
+                token = Arrays.copyOf(token, Math.max(token.length * 2, length + chunk));
+            }
+            System.arraycopy(buffer, start, token, length, chunk);
+            length += chunk;
+            if (!fill()) {
+                break;
+            }
+            start = 0;
+            while (position < limit && !delimiters[buffer[position] & 0xFF]) {
+                position++;
+            }
+            if (position < limit) {
+                chunk = position;
+                if (length + chunk > token.length) {
+                    token = Arrays.copyOf(token, Math.max(token.length * 2, length + chunk));
+                }
+                System.arraycopy(buffer, 0, token, length, chunk);
+                length += chunk;
+                break;
+            }
+        }
+        tokenArray = token;
+        tokenStart = 0;
+        tokenEnd = length;
+    }
+
+    public String next() throws IOException {
+        readToken();
+        return new String(tokenArray, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8);
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new InputMismatchException("超出int范围: " + value);
+        }
+        return (int) value;
+    }
+
+    public long nextLong() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // 快速路径：不超过18位、完整落在缓冲区内的数字边查找分隔符边累加，不会溢出
+        int i = position;
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') {
+            i++;
+        }
+        int start = i;
+        int end = Math.min(limit, start + 18);
+        long result = 0;
+        while (i < end) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            result = result * 10 + digit;
+            i++;
+        }
+        if (i > start && i < limit && delimiters[buffer[i] & 0xFF]) {
+            position = i;
+            return negative ? -result : result;
+        }
+        readToken();
+        return parseLong(tokenArray, tokenStart, tokenEnd);
+    }
+
+    public double nextDouble() throws IOException {
+        readToken();
+        return parseDouble(tokenArray, tokenStart, tokenEnd);
+    }
+
+    /**
+     * 十进制整数，允许前导+/-；按负数累加，Long.MIN_VALUE也能表示
+     */
+    static long parseLong(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == to) {
+            throw mismatch(bytes, from, to);
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                throw mismatch(bytes, from, to);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw mismatch(bytes, from, to);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * 有效数字不超过15位、十进制指数在±22以内时，尾数和10的幂都能用double精确表示，一次乘除得到正确舍入的结果；
+     * 其余情况(更长的尾数、极端指数、NaN、Infinity、十六进制)交给Double.parseDouble
+     */
+    static double parseDouble(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0; // 有效数字位数，不含前导0
+        int exponent = 0;
+        boolean sawDigit = false;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            sawDigit = true;
+            if (digits < 19) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                digits++;
+            }
+        }
+        if (i < to && bytes[i] == '.') {
+            for (i++; i < to; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                sawDigit = true;
+                if (digits < 19) {
+                    mantissa = mantissa * 10 + digit;
+                    exponent--;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    digits++;
+                }
+            }
+        }
+        if (sawDigit && i < to && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < to && (bytes[j] == '-' || bytes[j] == '+')) {
+                negativeExponent = bytes[j] == '-';
+                j++;
+            }
+            int e = 0;
+            int start = j;
+            for (; j < to && bytes[j] >= '0' && bytes[j] <= '9'; j++) {
+                e = Math.min(e * 10 + (bytes[j] - '0'), 100_000);
+            }
+            if (j > start) {
+                exponent += negativeExponent ? -e : e;
+                i = j;
+            }
+        }
+        if (sawDigit && i == to && digits <= 15) {
+            double value = mantissa;
+            if (exponent == 0 || mantissa == 0) {
+                return negative ? -value : value;
+            }
+            if (exponent > 0 && exponent <= 22) {
+                value *= POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            if (exponent < 0 && exponent >= -22) {
+                value /= POWERS_OF_TEN[-exponent];
+                return negative ? -value : value;
+            }
+        }
+        // Double.parseDouble还接受首尾空白和d/f类型后缀(如1d、2.5f)，它们不是合法的数字记号
+        if (from == to) {
+            throw mismatch(bytes, from, to);
+        }
+        byte last = bytes[to - 1];
+        if (bytes[from] <= ' ' || last <= ' ' || last == 'd' || last == 'D' || last == 'f' || last == 'F') {
+            throw mismatch(bytes, from, to);
+        }
+        String text = new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException(text);
+        }
+    }
+
+    private static InputMismatchException mismatch(byte[] bytes, int from, int to) {
+        return new InputMismatchException(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        } else {
+            in.close();
+        }
+    }
+}
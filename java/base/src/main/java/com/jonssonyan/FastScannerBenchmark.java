@@ -0,0 +1,152 @@
+package com.jonssonyan;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * 对比Scanner、BufferedReader+split和FastScanner解析大量数字的吞吐
+ */
+class FastScannerBenchmark {
+    static void run(Path dir, int count) throws IOException {
+        Path ints = dir.resolve("scanner_ints.txt");
+        Path doubles = dir.resolve("scanner_doubles.txt");
+        try {
+            measure(ints, doubles, count);
+        } finally {
+            Files.deleteIfExists(ints);
+            Files.deleteIfExists(doubles);
+        }
+    }
+
+    private static void measure(Path ints, Path doubles, int count) throws IOException {
+        long expectedSum = generate(ints, count, false);
+        generate(doubles, count / 10, true);
+        System.out.printf("%d个整数, %.1fMB%n", count, Files.size(ints) / 1048576.0);
+
+        // Scanner太慢，只读取一部分估算速率
+        int scannerCount = Math.min(count, 5_000_000);
+        long start = System.nanoTime();
+        long sum = 0;
+        try (Scanner scanner = new Scanner(Files.newBufferedReader(ints, StandardCharsets.US_ASCII))) {
+            for (int i = 0; i < scannerCount && scanner.hasNextInt(); i++) {
+                sum += scanner.nextInt();
+            }
+        }
+        report("Scanner.nextInt(前" + scannerCount + "个)", scannerCount, start, sum);
+
+        start = System.nanoTime();
+        sum = 0;
+        long read = 0;
+        try (BufferedReader reader = Files.newBufferedReader(ints, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String part : line.split(" ")) {
+                    sum += Integer.parseInt(part);
+                    read++;
+                }
+            }
+        }
+        check(sum, expectedSum);
+        report("BufferedReader+split", read, start, sum);
+
+        start = System.nanoTime();
+        sum = 0;
+        read = 0;
+        try (FastScanner scanner = new FastScanner(Files.newInputStream(ints))) {
+            while (scanner.hasNext()) {
+                sum += scanner.nextInt();
+                read++;
+            }
+        }
+        check(sum, expectedSum);
+        report("FastScanner(InputStream)", read, start, sum);
+
+        start = System.nanoTime();
+        sum = 0;
+        read = 0;
+        try (FastScanner scanner = FastScanner.open(ints)) {
+            while (scanner.hasNext()) {
+                sum += scanner.nextInt();
+                read++;
+            }
+        }
+        check(sum, expectedSum);
+        report("FastScanner(FileChannel)", read, start, sum);
+
+        start = System.nanoTime();
+        double total = 0;
+        read = 0;
+        try (BufferedReader reader = Files.newBufferedReader(doubles, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String part : line.split(" ")) {
+                    total += Double.parseDouble(part);
+                    read++;
+                }
+            }
+        }
+        report("split+Double.parseDouble", read, start, (long) total);
+        double expectedTotal = total;
+        start = System.nanoTime();
+        total = 0;
+        read = 0;
+        try (FastScanner scanner = FastScanner.open(doubles)) {
+            while (scanner.hasNext()) {
+                total += scanner.nextDouble();
+                read++;
+            }
+        }
+        if (total != expectedTotal) {
+            throw new IllegalStateException("nextDouble结果不一致: " + total + " / " + expectedTotal);
+        }
+        report("FastScanner.nextDouble", read, start, (long) total);
+    }
+
+    // 每行10个数，以空格分隔；小数固定6位，模拟常见的测量数据
+    private static long generate(Path file, int count, boolean decimal) throws IOException {
+        Random random = new Random(23);
+        long sum = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20)) {
+            StringBuilder line = new StringBuilder(256);
+            for (int i = 0; i < count; i++) {
+                if (decimal) {
+                    line.append(String.format(Locale.ROOT, "%.6f", (random.nextDouble() - 0.5) * 2e6));
+                } else {
+                    int value = random.nextInt();
+                    sum += value;
+                    line.append(value);
+                }
+                if (i % 10 == 9 || i == count - 1) {
+                    line.append('\n');
+                    out.write(line.toString().getBytes(StandardCharsets.US_ASCII));
+                    line.setLength(0);
+                } else {
+                    line.append(' ');
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static void check(long sum, long expected) {
+        if (sum != expected) {
+            throw new IllegalStateException("求和结果不一致: " + sum + " / " + expected);
+        }
+    }
+
+    private static void report(String name, long numbers, long start, long checksum) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d个数, %.0fms, %.1f百万个/秒 (校验%d)%n", name, numbers, seconds * 1000,
+                numbers / seconds / 1e6, checksum);
+    }
+}
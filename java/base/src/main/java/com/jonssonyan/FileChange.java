@@ -0,0 +1,29 @@
+package com.jonssonyan;
+
+import java.nio.file.Path;
+
+/**
+ * 一个文件的合并后变化
+ */
+class FileChange {
+    private final Path path;
+    private final ChangeKind kind;
+
+    FileChange(Path path, ChangeKind kind) {
+        this.path = path;
+        this.kind = kind;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public ChangeKind getKind() {
+        return kind;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + path;
+    }
+}
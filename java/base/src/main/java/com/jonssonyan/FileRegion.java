@@ -0,0 +1,58 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 待发送的一段文件，position和剩余字节数随发送推进
+ */
+class FileRegion {
+    private final FileChannel file;
+    private final Closeable resource;
+    private long position;
+    private long remaining;
+    private boolean released;
+
+    /**
+     * @param resource 发送完成或连接关闭时关闭的资源，如缓存的文件句柄；为null时不做处理
+     */
+    FileRegion(FileChannel file, long position, long count, Closeable resource) {
+        this.file = file;
+        this.position = position;
+        this.remaining = count;
+        this.resource = resource;
+    }
+
+    long remaining() {
+        return remaining;
+    }
+
+    long transferTo(WritableByteChannel target) throws IOException {
+        // 目标是SocketChannel时走sendfile，其他通道(如TLS)由JDK读到临时缓冲区再写出
+        // transferTo按绝对位置读取，不改变文件通道自身的position，多个连接可以共享同一个FileChannel
+        long written = file.transferTo(position, remaining, target);
+        if (written == 0 && position >= file.size()) {
+            throw new EOFException("文件在发送过程中被截断");
+        }
+        position += written;
+        remaining -= written;
+        return written;
+    }
+
+    void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
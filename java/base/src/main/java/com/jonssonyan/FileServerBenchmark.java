@@ -0,0 +1,101 @@
+package com.jonssonyan;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件下载压测 - 对比零拷贝和拷贝两种发送方式的吞吐量
+ */
+class FileServerBenchmark {
+    /**
+     * 两种模式各启动一个服务器，clients个长连接客户端各下载rounds次文件
+     */
+    static void run(File file, int clients, int rounds) throws Exception {
+        Path root = file.getAbsoluteFile().getParentFile().toPath();
+        String path = "/" + file.getName();
+        for (boolean zeroCopy : new boolean[]{false, true}) {
+            NioServer server = new NioServer(0, new StaticFileHandler(root, zeroCopy));
+            server.start();
+            try {
+                download(server.getPort(), path, 1, 2); // 预热
+                long start = System.nanoTime();
+                long bytes = download(server.getPort(), path, clients, rounds);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %d个连接下载%dMB, %.0f MB/s%n", zeroCopy ? "零拷贝(transferTo)" : "拷贝(byte[])",
+                        clients, bytes >> 20, bytes / seconds / (1 << 20));
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    private static long download(int port, String path, int clients, int rounds) throws Exception {
+        AtomicLong total = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+                    byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                    for (int r = 0; r < rounds; r++) {
+                        channel.write(ByteBuffer.wrap(request));
+                        total.addAndGet(readResponse(channel, buffer));
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "file-download-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return total.get();
+    }
+
+    // 读取一个完整响应，返回响应体字节数
+    private static long readResponse(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int headerEnd = -1;
+        while (headerEnd < 0) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("连接意外关闭");
+            }
+            for (int i = 3; i < buffer.position(); i++) {
+                if (buffer.get(i - 3) == '\r' && buffer.get(i - 2) == '\n' && buffer.get(i - 1) == '\r' && buffer.get(i) == '\n') {
+                    headerEnd = i + 1;
+                    break;
+                }
+            }
+        }
+        byte[] head = new byte[headerEnd];
+        for (int i = 0; i < headerEnd; i++) {
+            head[i] = buffer.get(i);
+        }
+        long contentLength = 0;
+        for (String line : new String(head, StandardCharsets.ISO_8859_1).split("\r\n")) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Long.parseLong(line.substring(15).trim());
+            }
+        }
+        long received = buffer.position() - headerEnd;
+        while (received < contentLength) {
+            buffer.clear();
+            int n = channel.read(buffer);
+            if (n < 0) {
+                throw new IOException("连接意外关闭");
+            }
+            received += n;
+        }
+        return contentLength;
+    }
+}
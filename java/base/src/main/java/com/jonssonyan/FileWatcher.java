@@ -0,0 +1,357 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 递归监听目录树的文件变化，把事件风暴合并成去抖动的批次交给监听器
+ * WatchService只监听单个目录，这里为每个子目录注册，新建的目录自动注册并补报其中已有的文件；
+ * 同一路径在一批内的多个事件合并成一个(创建后又删除的直接抵消)。
+ * 另外保存一份路径到修改时间和长度的快照，事件队列溢出(OVERFLOW)丢失事件时重新扫描目录树，与快照比较得出变化
+ */
+class FileWatcher implements Closeable {
+    private final Path root;
+    private final long debounceMillis;
+    private final long maxDelayMillis;
+    private final FileChangeListener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final NavigableMap<Path, FileState> snapshot = new TreeMap<>();
+    private final Map<Path, ChangeKind> pending = new LinkedHashMap<>();
+    private final Thread thread;
+    private final LongAdder events = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private long firstPendingAt;
+    private long lastEventAt;
+    private volatile boolean closed;
+
+    public FileWatcher(Path root, FileChangeListener listener) throws IOException {
+        this(root, 200, 2000, listener);
+    }
+
+    /**
+     * @param debounceMillis 距最后一个事件这么久没有新事件时交付一批
+     * @param maxDelayMillis 事件持续不断时，一批最多攒这么久
+     */
+    public FileWatcher(Path root, long debounceMillis, long maxDelayMillis, FileChangeListener listener) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("不是目录: " + root);
+        }
+        this.root = root;
+        this.debounceMillis = debounceMillis;
+        this.maxDelayMillis = Math.max(debounceMillis, maxDelayMillis);
+        this.listener = listener;
+        this.watchService = root.getFileSystem().newWatchService();
+        try {
+            // 构造返回前完成注册，之后发生的变化都能收到；初始文件只进快照，不报告
+            registerTree(root, false);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        this.thread = new Thread(this::watchLoop, "file-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void watchLoop() {
+        try {
+            while (!closed) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long deadline = Math.min(lastEventAt + debounceMillis, firstPendingAt + maxDelayMillis);
+                    long wait = deadline - System.currentTimeMillis();
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : watchService.poll();
+                }
+                // 一次把已就绪的键都处理掉
+                while (key != null) {
+                    process(key);
+                    key = watchService.poll();
+                }
+                if (!pending.isEmpty()) {
+                    long now = System.currentTimeMillis();
+                    if (now - lastEventAt >= debounceMillis || now - firstPendingAt >= maxDelayMillis) {
+                        deliver();
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // 已关闭
+        }
+    }
+
+    private void process(WatchKey key) {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            events.increment();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflows.increment();
+                rescan();
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            try {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    created(path);
+                } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                    modified(path);
+                } else {
+                    deleted(path);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key); // 目录已删除
+        }
+    }
+
+    private void created(Path path) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return; // 创建后马上又被删除，删除事件随后到达
+        }
+        if (attrs.isDirectory()) {
+            // 注册之前目录里可能已经有文件，遍历时一并报告
+            registerTree(path, true);
+        } else {
+            snapshot.put(path, new FileState(attrs));
+            record(path, ChangeKind.CREATED);
+        }
+    }
+
+    private void modified(Path path) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (attrs.isDirectory()) {
+            return; // 目录的修改事件只表示其中的条目有变化，条目本身的事件会单独到达
+        }
+        FileState previous = snapshot.put(path, new FileState(attrs));
+        record(path, previous == null ? ChangeKind.CREATED : ChangeKind.MODIFIED);
+    }
+
+    // 目录被删除或移走时可能只有这一个事件，快照中它下面的所有条目都算删除
+    private void deleted(Path path) {
+        Iterator<Map.Entry<Path, FileState>> it = snapshot.tailMap(path, true).entrySet().iterator();
+        String prefix = path.toString();
+        while (it.hasNext()) {
+            Map.Entry<Path, FileState> entry = it.next();
+            Path p = entry.getKey();
+            if (!p.toString().startsWith(prefix)) {
+                break;
+            }
+            if (p.startsWith(path)) {
+                if (!entry.getValue().directory) {
+                    record(p, ChangeKind.DELETED);
+                }
+                it.remove();
+            }
+        }
+        keys.entrySet().removeIf(e -> {
+            if (e.getValue().startsWith(path)) {
+                e.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void registerTree(Path start, boolean report) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                keys.put(key, dir);
+                snapshot.put(dir, new FileState(attrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                FileState previous = snapshot.put(file, new FileState(attrs));
+                if (report && previous == null) {
+                    record(file, ChangeKind.CREATED);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE; // 遍历过程中被删除
+            }
+        });
+    }
+
+    // 事件溢出后重新扫描整棵树，与快照比较修改时间和长度；新目录重新注册，已注册的目录register返回同一个键
+    private void rescan() {
+        NavigableMap<Path, FileState> old = new TreeMap<>(snapshot);
+        snapshot.clear();
+        try {
+            registerTree(root, false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Map.Entry<Path, FileState> entry : snapshot.entrySet()) {
+            if (entry.getValue().directory) {
+                continue;
+            }
+            FileState previous = old.remove(entry.getKey());
+            if (previous == null) {
+                record(entry.getKey(), ChangeKind.CREATED);
+            } else if (!previous.equals(entry.getValue())) {
+                record(entry.getKey(), ChangeKind.MODIFIED);
+            }
+        }
+        for (Map.Entry<Path, FileState> entry : old.entrySet()) {
+            if (!entry.getValue().directory && !snapshot.containsKey(entry.getKey())) {
+                record(entry.getKey(), ChangeKind.DELETED);
+            }
+        }
+        keys.entrySet().removeIf(e -> !snapshot.containsKey(e.getValue()) && cancel(e.getKey()));
+    }
+
+    private static boolean cancel(WatchKey key) {
+        key.cancel();
+        return true;
+    }
+
+    // 同一路径的事件合并：创建后修改仍是创建，创建后删除互相抵消，删除后创建视为修改
+    private void record(Path path, ChangeKind kind) {
+        long now = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            firstPendingAt = now;
+        }
+        lastEventAt = now;
+        ChangeKind previous = pending.get(path);
+        if (previous == null) {
+            pending.put(path, kind);
+        } else if (previous == ChangeKind.CREATED) {
+            if (kind == ChangeKind.DELETED) {
+                pending.remove(path);
+            }
+        } else if (previous == ChangeKind.DELETED) {
+            if (kind != ChangeKind.DELETED) {
+                pending.put(path, ChangeKind.MODIFIED);
+            }
+        } else if (kind == ChangeKind.DELETED) {
+            pending.put(path, ChangeKind.DELETED);
+        }
+    }
+
+    private void deliver() {
+        List<FileChange> batch = new ArrayList<>(pending.size());
+        for (Map.Entry<Path, ChangeKind> entry : pending.entrySet()) {
+            batch.add(new FileChange(entry.getKey(), entry.getValue()));
+        }
+        pending.clear();
+        batches.increment();
+        try {
+            listener.onChanges(batch);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "FileWatcher{root=" + root + ", events=" + getEventCount() + ", batches=" + getBatchCount()
+                + ", overflows=" + getOverflowCount() + "}";
+    }
+
+    /**
+     * 关闭后未交付的变化被丢弃
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 快照中的文件状态，修改时间或长度变化即认为内容变化
+    private static class FileState {
+        final long modified;
+        final long size;
+        final boolean directory;
+
+        FileState(BasicFileAttributes attrs) {
+            this.modified = attrs.lastModifiedTime().toMillis();
+            this.size = attrs.size();
+            this.directory = attrs.isDirectory();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) o;
+            return modified == other.modified && size == other.size && directory == other.directory;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(modified) * 31 + Long.hashCode(size);
+        }
+    }
+}
+
+/**
+ * 批量变化回调，在监听线程中调用；处理耗时期间到达的事件在下一批交付
+ */
+@FunctionalInterface
+interface FileChangeListener {
+    void onChanges(List<FileChange> batch);
+}
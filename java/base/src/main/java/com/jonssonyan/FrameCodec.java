@@ -0,0 +1,34 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制帧编解码器
+ * 每帧由"长度头 + 帧体"组成，帧体可以是任意二进制数据
+ */
+interface FrameCodec {
+    int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * 从in中解码一帧
+     *
+     * @param in 已flip的入站数据
+     * @return 帧体的切片(与in共享内存，零拷贝)，数据不足一帧时返回null且不移动in的position
+     * @throws IOException 帧长度非法或超出上限
+     */
+    ByteBuffer decode(ByteBuffer in) throws IOException;
+
+    /**
+     * 编码一帧
+     *
+     * @param payload 帧体
+     * @return 长度头和帧体，可以直接交给聚集写(gathering write)一次写出
+     */
+    ByteBuffer[] encode(ByteBuffer payload);
+
+    /**
+     * 帧体长度上限，超过时decode抛出IOException
+     */
+    int maxFrameLength();
+}
@@ -0,0 +1,37 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 把NIO服务器的字节流拆成帧的处理器，一次读事件中的多个完整帧会依次回调
+ */
+abstract class FrameHandler implements NioHandler {
+    protected final FrameCodec codec;
+
+    protected FrameHandler(FrameCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public final void onRead(NioConnection connection, ByteBuffer in) throws IOException {
+        ByteBuffer frame;
+        while (connection.isOpen() && (frame = codec.decode(in)) != null) {
+            onFrame(connection, frame);
+        }
+    }
+
+    /**
+     * 收到一个完整帧
+     *
+     * @param frame 帧体切片，只在本次回调内有效，需要保留时应自行复制
+     */
+    protected abstract void onFrame(NioConnection connection, ByteBuffer frame) throws IOException;
+
+    /**
+     * 编码并写出一帧
+     */
+    protected void writeFrame(NioConnection connection, ByteBuffer payload) {
+        connection.write(codec.encode(payload));
+    }
+}
@@ -0,0 +1,59 @@
+package com.jonssonyan;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 阻塞式帧读取器 - 适用于阻塞的SocketChannel，或通过Channels.newChannel包装的Socket输入流
+ * 内部复用一个可增长的缓冲区，返回的帧在下一次read()之前有效
+ */
+class FrameReader {
+    private final ReadableByteChannel channel;
+    private final FrameCodec codec;
+    private ByteBuffer buffer;
+
+    public FrameReader(ReadableByteChannel channel, FrameCodec codec) {
+        this(channel, codec, 8192);
+    }
+
+    public FrameReader(ReadableByteChannel channel, FrameCodec codec, int initialCapacity) {
+        this.channel = channel;
+        this.codec = codec;
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+        this.buffer.flip(); // 初始为空的读模式
+    }
+
+    /**
+     * 读取下一帧，对端正常关闭时返回null
+     */
+    public ByteBuffer read() throws IOException {
+        while (true) {
+            ByteBuffer frame = codec.decode(buffer);
+            if (frame != null) {
+                return frame;
+            }
+            fill();
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    throw new EOFException("连接在帧中间被关闭");
+                }
+                return null;
+            }
+            buffer.flip();
+        }
+    }
+
+    // 切换到写模式准备读入更多数据，空间不足时扩容
+    private void fill() {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+}
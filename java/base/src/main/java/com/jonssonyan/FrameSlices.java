@@ -0,0 +1,18 @@
+package com.jonssonyan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 切片工具
+ */
+class FrameSlices {
+    /**
+     * 截取[offset, offset + length)作为只读切片，并把in的position移到帧尾
+     */
+    static ByteBuffer slice(ByteBuffer in, int offset, int length) {
+        ByteBuffer frame = in.duplicate();
+        frame.limit(offset + length).position(offset);
+        in.position(offset + length);
+        return frame.slice().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,35 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 帧写出器 - SocketChannel等支持聚集写的通道一次系统调用写出长度头和帧体
+ */
+class FrameWriter {
+    private final WritableByteChannel channel;
+    private final FrameCodec codec;
+
+    public FrameWriter(WritableByteChannel channel, FrameCodec codec) {
+        this.channel = channel;
+        this.codec = codec;
+    }
+
+    public void write(ByteBuffer payload) throws IOException {
+        ByteBuffer[] frame = codec.encode(payload);
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            while (frame[0].hasRemaining() || frame[frame.length - 1].hasRemaining()) {
+                gathering.write(frame);
+            }
+        } else {
+            for (ByteBuffer part : frame) {
+                while (part.hasRemaining()) {
+                    channel.write(part);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.jonssonyan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 单线程GZIPOutputStream/GZIPInputStream与并行版本的对比
+ */
+class GzipBenchmark {
+    static void run(Path dir, int sizeMegabytes, int threads) throws IOException {
+        Path source = dir.resolve("gzip_bench.txt");
+        long size = (long) sizeMegabytes << 20;
+        Path single = dir.resolve("gzip_bench_single.gz");
+        Path parallel = dir.resolve("gzip_bench_parallel.gz");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            generate(source, size);
+            for (int round = 0; round < 2; round++) { // 第一轮预热
+                boolean print = round == 1;
+                long start = System.nanoTime();
+                try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(single)), 64 * 1024)) {
+                    Files.copy(source, out);
+                }
+                report(print, "GZIPOutputStream压缩", size, start, Files.size(single));
+
+                start = System.nanoTime();
+                try (OutputStream out = new ParallelGzipOutputStream(new BufferedOutputStream(Files.newOutputStream(parallel)),
+                        pool, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+                    Files.copy(source, out);
+                }
+                report(print, "ParallelGzipOutputStream压缩(" + threads + "线程)", size, start, Files.size(parallel));
+
+                start = System.nanoTime();
+                try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(parallel)), 64 * 1024)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    while (in.read(buffer) > 0) {
+                        // 只计时
+                    }
+                }
+                report(print, "GZIPInputStream解压", size, start, Files.size(parallel));
+
+                start = System.nanoTime();
+                ParallelGunzip gunzip = ParallelGunzip.open(parallel);
+                gunzip.decompress(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                    }
+                }, pool);
+                report(print, "ParallelGunzip解压(" + threads + "线程, " + gunzip.getBlocks().size() + "块)", size, start, Files.size(parallel));
+            }
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(single);
+            Files.deleteIfExists(parallel);
+        }
+    }
+
+    private static void generate(Path file, long size) throws IOException {
+        Random random = new Random(17);
+        String[] words = {"GET", "POST", "/api/users", "/api/orders", "200", "404", "500", "user-agent", "curl", "Mozilla"};
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            long written = 0;
+            StringBuilder line = new StringBuilder();
+            while (written < size) {
+                line.setLength(0);
+                line.append(random.nextInt(1 << 30)).append(' ');
+                for (int i = 0; i < 6; i++) {
+                    line.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                line.append('\n');
+                byte[] bytes = line.toString().getBytes(StandardCharsets.US_ASCII);
+                int n = (int) Math.min(bytes.length, size - written);
+                out.write(bytes, 0, n);
+                written += n;
+            }
+        }
+    }
+
+    private static void report(boolean print, String name, long size, long start, long compressedSize) {
+        if (print) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f MB/s, 压缩后%d字节(%.1f%%)%n", name, size / seconds / (1 << 20),
+                    compressedSize, compressedSize * 100.0 / size);
+        }
+    }
+}
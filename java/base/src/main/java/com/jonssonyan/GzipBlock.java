@@ -0,0 +1,23 @@
+package com.jonssonyan;
+
+/**
+ * 索引中的一个块：在压缩文件中的位置和在原始数据中的位置
+ */
+class GzipBlock {
+    final long compressedOffset;
+    final int compressedSize;
+    final long rawOffset;
+    final int rawSize;
+
+    GzipBlock(long compressedOffset, int compressedSize, long rawOffset, int rawSize) {
+        this.compressedOffset = compressedOffset;
+        this.compressedSize = compressedSize;
+        this.rawOffset = rawOffset;
+        this.rawSize = rawSize;
+    }
+
+    @Override
+    public String toString() {
+        return "GzipBlock{compressed=" + compressedOffset + "+" + compressedSize + ", raw=" + rawOffset + "+" + rawSize + "}";
+    }
+}
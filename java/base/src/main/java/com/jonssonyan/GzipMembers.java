@@ -0,0 +1,138 @@
+package com.jonssonyan;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * gzip成员的编码与解码
+ * 成员头部带一个FEXTRA子字段'P','G'，8个字节：成员总长度和原始数据长度，都是小端无符号32位整数
+ */
+final class GzipMembers {
+    static final int MAX_BLOCK_SIZE = 64 << 20;
+    static final int HEADER_SIZE = 10 + 2 + 4 + 8;
+    private static final int TRAILER_SIZE = 8;
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[10]);
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private GzipMembers() {
+    }
+
+    static byte[] compress(byte[] input, int length, int level) {
+        Deflater[] cache = DEFLATERS.get(); // 每个工作线程每个级别一个Deflater，反复reset复用
+        int slot = level == Deflater.DEFAULT_COMPRESSION ? 6 : level;
+        Deflater deflater = cache[slot];
+        if (deflater == null) {
+            deflater = new Deflater(slot, true); // 原始deflate，头尾由这里写
+            cache[slot] = deflater;
+        }
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        byte[] out = new byte[(int) maxMemberSize(length)];
+        int position = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (position == out.length - TRAILER_SIZE) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            position += deflater.deflate(out, position, out.length - TRAILER_SIZE - position);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(input, 0, length);
+        int memberSize = position + TRAILER_SIZE;
+        writeHeader(out, memberSize, length);
+        putIntLE(out, position, (int) crc.getValue());
+        putIntLE(out, position + 4, length);
+        return out.length == memberSize ? out : Arrays.copyOf(out, memberSize);
+    }
+
+    /**
+     * 原始长度为rawSize的成员压缩后的长度上限，不可压缩的数据最坏情况比原始数据略大
+     */
+    static long maxMemberSize(long rawSize) {
+        return HEADER_SIZE + rawSize + (rawSize >> 12) + 64 + TRAILER_SIZE;
+    }
+
+    /**
+     * 头部记录的长度是否可信：原始长度不超过块大小上限，成员长度在头尾之和与压缩上限之间。
+     * 长度字段被篡改或损坏时，按它分配缓冲区可能一次申请几个GB
+     */
+    static boolean isValidSizes(long memberSize, long rawSize) {
+        return rawSize <= MAX_BLOCK_SIZE && memberSize > HEADER_SIZE + TRAILER_SIZE && memberSize <= maxMemberSize(rawSize);
+    }
+
+    private static void writeHeader(byte[] out, int memberSize, int rawSize) {
+        out[0] = 0x1f;
+        out[1] = (byte) 0x8b;
+        out[2] = 8; // deflate
+        out[3] = 4; // FEXTRA
+        // 4-7 修改时间为0，8 XFL为0
+        out[9] = (byte) 255; // 操作系统未知
+        out[10] = 12; // XLEN
+        out[11] = 0;
+        out[12] = 'P';
+        out[13] = 'G';
+        out[14] = 8; // SLEN
+        out[15] = 0;
+        putIntLE(out, 16, memberSize);
+        putIntLE(out, 20, rawSize);
+    }
+
+    /**
+     * 解析成员头部，返回{成员长度, 原始长度}；不是本类写出的成员时返回null
+     */
+    static long[] parseHeader(byte[] header, int length) {
+        if (length < HEADER_SIZE || (header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b || header[2] != 8
+                || header[3] != 4 || header[10] != 12 || header[11] != 0
+                || header[12] != 'P' || header[13] != 'G' || header[14] != 8 || header[15] != 0) {
+            return null;
+        }
+        return new long[]{getIntLE(header, 16) & 0xFFFFFFFFL, getIntLE(header, 20) & 0xFFFFFFFFL};
+    }
+
+    /**
+     * 解压一个完整的成员并校验CRC和长度
+     */
+    static int inflate(byte[] member, int memberSize, byte[] out, int rawSize) throws IOException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(member, HEADER_SIZE, memberSize - HEADER_SIZE - TRAILER_SIZE);
+        int n = 0;
+        try {
+            while (n < rawSize && !inflater.finished()) {
+                int r = inflater.inflate(out, n, rawSize - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("压缩数据被截断");
+                }
+                n += r;
+            }
+            if (!inflater.finished() && inflater.inflate(new byte[1]) != 0) {
+                throw new IOException("解压后的数据超过记录的原始长度" + rawSize);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("压缩数据损坏", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out, 0, n);
+        int trailer = memberSize - TRAILER_SIZE;
+        if (n != rawSize || getIntLE(member, trailer + 4) != rawSize || getIntLE(member, trailer) != (int) crc.getValue()) {
+            throw new IOException("CRC或长度校验失败");
+        }
+        return n;
+    }
+
+    private static void putIntLE(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) (value >>> 16);
+        b[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int getIntLE(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | (b[offset + 1] & 0xFF) << 8 | (b[offset + 2] & 0xFF) << 16 | (b[offset + 3] & 0xFF) << 24;
+    }
+}
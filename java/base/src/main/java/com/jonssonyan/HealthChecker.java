@@ -0,0 +1,313 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * TCP健康检查调度器
+ * 所有目标的探测都是在同一个Selector上发起的非阻塞connect，成千上万个探测可以同时进行而不占用线程；
+ * 每个目标有自己的超时时间，探测间隔带随机抖动，避免所有目标在同一时刻被集中探测
+ */
+class HealthChecker implements Closeable {
+    private final long intervalMillis;
+    private final double jitter;
+    private final int failureThreshold;
+    private final DnsResolver resolver;
+    private final Selector selector;
+    private final Thread ioThread;
+    private final List<HealthTarget> targets = new CopyOnWriteArrayList<>();
+    private final List<HealthListener> listeners = new CopyOnWriteArrayList<>();
+    private final Queue<HealthTarget> newTargets = new ConcurrentLinkedQueue<>();
+    private final Queue<Probe> resolvedProbes = new ConcurrentLinkedQueue<>();
+    // 以下只在IO线程中访问
+    private final PriorityQueue<HealthTarget> schedule = new PriorityQueue<>((a, b) -> Long.compare(a.nextProbeAt, b.nextProbeAt));
+    private final PriorityQueue<Probe> deadlines = new PriorityQueue<>((a, b) -> Long.compare(a.deadline, b.deadline));
+    private volatile int activeProbes; // 只有IO线程写入
+    private volatile boolean closed;
+
+    public HealthChecker(long intervalMillis, double jitter) throws IOException {
+        this(intervalMillis, jitter, 1, DnsResolver.DEFAULT);
+    }
+
+    /**
+     * @param intervalMillis   每个目标的探测间隔
+     * @param jitter           间隔的随机抖动比例，0.2表示实际间隔在0.8~1.2倍之间
+     * @param failureThreshold 连续失败多少次才判定为不可用，避免偶发失败导致状态抖动
+     * @param resolver         目标主机名的解析器
+     */
+    public HealthChecker(long intervalMillis, double jitter, int failureThreshold, DnsResolver resolver) throws IOException {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("抖动比例必须在[0, 1)之间: " + jitter);
+        }
+        this.intervalMillis = intervalMillis;
+        this.jitter = jitter;
+        this.failureThreshold = failureThreshold;
+        this.resolver = resolver;
+        this.selector = Selector.open();
+        this.ioThread = new Thread(this::ioLoop, "health-checker");
+        this.ioThread.setDaemon(true);
+    }
+
+    public void start() {
+        ioThread.start();
+    }
+
+    /**
+     * 添加探测目标，首次探测时间在一个间隔内随机分布
+     */
+    public HealthTarget addTarget(String host, int port, long timeoutMillis) {
+        HealthTarget target = new HealthTarget(host, port, timeoutMillis);
+        target.nextProbeAt = System.currentTimeMillis() + (long) (ThreadLocalRandom.current().nextDouble() * intervalMillis);
+        targets.add(target);
+        newTargets.add(target);
+        selector.wakeup();
+        return target;
+    }
+
+    /**
+     * 注册状态变化回调，回调在IO线程中执行，不能阻塞
+     */
+    public void addListener(HealthListener listener) {
+        listeners.add(listener);
+    }
+
+    public List<HealthTarget> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+
+    public int getActiveProbeCount() {
+        return activeProbes;
+    }
+
+    private void ioLoop() {
+        try {
+            while (!closed) {
+                selector.select(nextTimeout());
+                long now = System.currentTimeMillis();
+                HealthTarget target;
+                while ((target = newTargets.poll()) != null) {
+                    schedule.add(target);
+                }
+                startDueProbes(now);
+                connectResolved();
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    Probe probe = (Probe) key.attachment();
+                    try {
+                        if (probe.channel.finishConnect()) {
+                            complete(probe, null, false);
+                        }
+                    } catch (IOException e) {
+                        complete(probe, e, false);
+                    }
+                }
+                expireTimedOut();
+            }
+        } catch (ClosedSelectorException e) {
+            // 调度器关闭
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (Probe probe : deadlines) {
+                probe.closeChannel();
+            }
+            activeProbes = 0;
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // 到下一个探测时间或最早的探测超时还有多久
+    private long nextTimeout() {
+        long next = Long.MAX_VALUE;
+        HealthTarget target = schedule.peek();
+        if (target != null) {
+            next = target.nextProbeAt;
+        }
+        Probe probe = deadlines.peek();
+        if (probe != null) {
+            next = Math.min(next, probe.deadline);
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0; // 没有目标时一直阻塞到wakeup
+        }
+        return Math.max(1, next - System.currentTimeMillis());
+    }
+
+    private void startDueProbes(long now) {
+        while (!schedule.isEmpty() && schedule.peek().nextProbeAt <= now) {
+            HealthTarget target = schedule.poll();
+            if (target.removed) {
+                continue;
+            }
+            Probe probe = new Probe(target, now, System.nanoTime());
+            deadlines.add(probe);
+            activeProbes++;
+            // 超时从解析开始计算；解析在解析器线程中完成，结果交回IO线程再发起连接
+            resolver.resolve(target.host, target.port).whenComplete((address, ex) -> {
+                probe.address = address;
+                probe.resolveError = ex instanceof CompletionException ? ex.getCause() : ex;
+                resolvedProbes.add(probe);
+                selector.wakeup();
+            });
+        }
+    }
+
+    private void connectResolved() {
+        Probe probe;
+        while ((probe = resolvedProbes.poll()) != null) {
+            if (probe.done) {
+                continue; // 解析期间已经超时
+            }
+            if (probe.resolveError != null) {
+                complete(probe, probe.resolveError, false);
+                continue;
+            }
+            try {
+                probe.channel = SocketChannel.open();
+                probe.channel.configureBlocking(false);
+                if (probe.channel.connect(probe.address)) {
+                    complete(probe, null, false); // 本机连接可能立即完成
+                } else {
+                    probe.channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                }
+            } catch (IOException e) {
+                complete(probe, e, false);
+            }
+        }
+    }
+
+    private void expireTimedOut() {
+        long now = System.currentTimeMillis();
+        while (!deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+            Probe probe = deadlines.poll();
+            if (!probe.done) {
+                complete(probe, null, true);
+            }
+        }
+    }
+
+    private void complete(Probe probe, Throwable error, boolean timedOut) {
+        if (probe.done) {
+            return;
+        }
+        probe.done = true;
+        activeProbes--;
+        probe.closeChannel();
+        // 已完成的探测留在deadlines中，到期时跳过，避免每次完成都做O(n)的删除
+        HealthTarget target = probe.target;
+        HealthStatus before = target.status;
+        if (error == null && !timedOut) {
+            target.onSuccess((System.nanoTime() - probe.startNanos) / 1000);
+        } else {
+            target.onFailure(timedOut ? "连接超时" : String.valueOf(error), timedOut, failureThreshold);
+        }
+        if (before != target.status) {
+            for (HealthListener listener : listeners) {
+                try {
+                    listener.onStatusChange(target, before, target.status);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (!target.removed && !closed) {
+            // 从本次探测开始时刻算下一次，保持节奏；抖动让各目标的探测时间逐渐错开
+            double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            target.nextProbeAt = Math.max(System.currentTimeMillis(), probe.startedAt + (long) (intervalMillis * factor));
+            schedule.add(target);
+        }
+    }
+
+    /**
+     * 移除目标，正在进行的探测完成后不再调度
+     */
+    public void removeTarget(HealthTarget target) {
+        target.removed = true;
+        targets.remove(target);
+    }
+
+    @Override
+    public String toString() {
+        int up = 0;
+        int down = 0;
+        for (HealthTarget target : targets) {
+            if (target.status == HealthStatus.UP) {
+                up++;
+            } else if (target.status == HealthStatus.DOWN) {
+                down++;
+            }
+        }
+        return "HealthChecker{targets=" + targets.size() + ", up=" + up + ", down=" + down
+                + ", activeProbes=" + activeProbes + "}";
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        if (ioThread.isAlive()) {
+            try {
+                ioThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            selector.close();
+        }
+    }
+
+    // 一次探测，只在IO线程中修改(解析回调只写address/resolveError，通过队列交接)
+    private static class Probe {
+        final HealthTarget target;
+        final long startedAt;
+        final long startNanos;
+        final long deadline;
+        volatile InetSocketAddress address;
+        volatile Throwable resolveError;
+        SocketChannel channel;
+        boolean done;
+
+        Probe(HealthTarget target, long startedAt, long startNanos) {
+            this.target = target;
+            this.startedAt = startedAt;
+            this.startNanos = startNanos;
+            this.deadline = startedAt + target.timeoutMillis;
+        }
+
+        void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
+
+/**
+ * 健康状态变化回调
+ */
+@FunctionalInterface
+interface HealthListener {
+    void onStatusChange(HealthTarget target, HealthStatus from, HealthStatus to);
+}
@@ -0,0 +1,5 @@
+package com.jonssonyan;
+
+enum HealthStatus {
+    UNKNOWN, UP, DOWN
+}
@@ -0,0 +1,85 @@
+package com.jonssonyan;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 探测目标及其统计信息，由IO线程更新，其他线程可以随时读取
+ */
+class HealthTarget {
+    final String host;
+    final int port;
+    final long timeoutMillis;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    volatile HealthStatus status = HealthStatus.UNKNOWN;
+    private volatile int consecutiveFailures;
+    private volatile String lastError;
+    volatile boolean removed;
+    long nextProbeAt; // 只在IO线程中访问
+
+    HealthTarget(String host, int port, long timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    void onSuccess(long latencyMicros) {
+        latency.record(latencyMicros);
+        successes.incrementAndGet();
+        consecutiveFailures = 0;
+        status = HealthStatus.UP;
+    }
+
+    void onFailure(String error, boolean timedOut, int failureThreshold) {
+        failures.incrementAndGet();
+        if (timedOut) {
+            timeouts.incrementAndGet();
+        }
+        lastError = error;
+        int failed = consecutiveFailures + 1; // 只有IO线程写入
+        consecutiveFailures = failed;
+        if (failed >= failureThreshold) {
+            status = HealthStatus.DOWN;
+        }
+    }
+
+    public String getName() {
+        return host + ":" + port;
+    }
+
+    public HealthStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * 成功探测的连接耗时直方图，单位微秒
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " " + status + " ok=" + getSuccesses() + " fail=" + getFailures()
+                + " timeout=" + getTimeouts() + " latency(us){" + latency + "}"
+                + (status == HealthStatus.DOWN ? " error=" + lastError : "");
+    }
+}
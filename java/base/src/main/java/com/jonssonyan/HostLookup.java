@@ -0,0 +1,14 @@
+package com.jonssonyan;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 主机名查询方式
+ */
+@FunctionalInterface
+interface HostLookup {
+    HostLookup SYSTEM = InetAddress::getAllByName;
+
+    InetAddress[] lookup(String host) throws UnknownHostException;
+}
@@ -0,0 +1,58 @@
+package com.jonssonyan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * 连接池客户端与"每次新建HttpURLConnection + 逐行读取"写法的对比压测
+ */
+class HttpClientBenchmark {
+    static void run(int requests) throws IOException {
+        try (LocalHttpServer server = new LocalHttpServer(0);
+             PooledHttpClient client = new PooledHttpClient()) {
+            String url = "http://localhost:" + server.getPort() + "/get";
+
+            // 预热
+            for (int i = 0; i < requests / 10; i++) {
+                readWithUrlConnection(url);
+                try (HttpResponse response = client.get(url)) {
+                    response.bodyAsString();
+                }
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                readWithUrlConnection(url);
+            }
+            long urlConnectionNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                try (HttpResponse response = client.get(url)) {
+                    response.bodyAsString();
+                }
+            }
+            long pooledNanos = System.nanoTime() - start;
+
+            System.out.printf("HttpURLConnection: %d次请求 %.1f req/s%n", requests, requests * 1e9 / urlConnectionNanos);
+            System.out.printf("PooledHttpClient:  %d次请求 %.1f req/s%n", requests, requests * 1e9 / pooledNanos);
+        }
+    }
+
+    // 现有写法：每次新建连接对象并逐行读取响应
+    private static String readWithUrlConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+            StringBuilder content = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line);
+            }
+            return content.toString();
+        }
+    }
+}
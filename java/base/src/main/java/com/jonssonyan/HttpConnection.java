@@ -0,0 +1,40 @@
+package com.jonssonyan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * 池中的一条HTTP连接
+ */
+class HttpConnection {
+    final Socket socket;
+    final InputStream in;
+    final OutputStream out;
+    volatile long lastUsed;
+    boolean reused;
+
+    HttpConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    void send(byte[] head, byte[] body) throws IOException {
+        out.write(head);
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    void closeQuietly() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.jonssonyan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HTTP响应 - 状态行和响应头已解析，响应体按Content-Length或chunked编码流式读取
+ * 关闭响应时会读完剩余的响应体，使连接可以被复用
+ */
+class HttpResponse implements Closeable {
+    static final int MAX_LINE_LENGTH = 8 * 1024;
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final InputStream body;
+    private final HttpConnection connection;
+    private final PooledHttpClient.HostPool pool;
+    private final boolean keepAlive;
+    private boolean closed;
+
+    private HttpResponse(int statusCode, Map<String, String> headers, InputStream body,
+                         HttpConnection connection, PooledHttpClient.HostPool pool, boolean keepAlive) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+        this.connection = connection;
+        this.pool = pool;
+        this.keepAlive = keepAlive;
+    }
+
+    static HttpResponse read(HttpConnection connection, String method, PooledHttpClient.HostPool pool) throws IOException {
+        InputStream in = connection.in;
+        String[] parts;
+        int statusCode;
+        Map<String, String> headers = new LinkedHashMap<>();
+        while (true) {
+            String statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("服务器在响应前关闭了连接");
+            }
+            parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("非法的状态行: " + statusLine);
+            }
+            long status = parseNumber(parts[1], "状态码");
+            if (status < 100 || status > 999) {
+                throw new IOException("非法的状态行: " + statusLine);
+            }
+            statusCode = (int) status;
+
+            headers.clear();
+            int headerSize = statusLine.length();
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                headerSize += line.length();
+                if (headerSize > MAX_HEADER_SIZE) {
+                    throw new IOException("响应头超过" + MAX_HEADER_SIZE + "字节");
+                }
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+            // 1xx是中间响应(100 Continue、103 Early Hints)，最终响应紧随其后；101之后连接不再是HTTP，交给调用方
+            if (statusCode / 100 != 1 || statusCode == 101) {
+                break;
+            }
+        }
+
+        String connectionHeader = headers.getOrDefault("connection", "");
+        boolean keepAlive = parts[0].equals("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+        InputStream body;
+        String contentLength = headers.get("content-length");
+        if ("HEAD".equals(method) || statusCode == 204 || statusCode == 304 || statusCode / 100 == 1) {
+            body = new BoundedInputStream(in, 0);
+        } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            body = new ChunkedInputStream(in);
+        } else if (contentLength != null) {
+            long length = parseNumber(contentLength, "Content-Length");
+            if (length < 0) {
+                throw new IOException("非法的Content-Length: " + contentLength);
+            }
+            body = new BoundedInputStream(in, length);
+        } else {
+            body = in; // 读到连接关闭为止，连接不能复用
+            keepAlive = false;
+        }
+        return new HttpResponse(statusCode, headers, body, connection, pool, keepAlive);
+    }
+
+    // 服务器发来的数字格式错误属于协议错误，按IOException抛出，由调用方关闭连接
+    private static long parseNumber(String value, String name) throws IOException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("非法的" + name + ": " + value);
+        }
+    }
+
+    // 按ISO-8859-1读取一行，去掉行尾的\r\n；超长的行按协议错误处理，不会无限制地缓存
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (line.length() > MAX_LINE_LENGTH) {
+                throw new IOException("响应行超过" + MAX_LINE_LENGTH + "字节");
+            }
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public String header(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 响应体输入流，读到流结束即读完响应体
+     */
+    public InputStream body() {
+        return body;
+    }
+
+    /**
+     * 读取完整响应体并按UTF-8解码，适合小响应
+     */
+    public String bodyAsString() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = body.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean reusable = keepAlive;
+        if (reusable) {
+            try {
+                // 读完剩余的响应体，下一个请求才能从正确的位置开始读
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) != -1) {
+                    // 丢弃
+                }
+            } catch (IOException e) {
+                reusable = false;
+            }
+        }
+        pool.release(connection, reusable);
+    }
+}
@@ -16,9 +16,9 @@ import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.channels.FileChannel;
@@ -28,8 +28,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -114,12 +119,50 @@ public class JavaIO {
             dos.writeBoolean(true);
         }
 
+        // 列式文件 - 同类型的值按列块连续存放，带最小/最大值统计和文件尾索引
+        try (ColumnarWriter columnar = ColumnarFile.create(Paths.get("data.col"),
+                Arrays.asList("id", "score", "passed"),
+                Arrays.asList(ColumnType.INT, ColumnType.DOUBLE, ColumnType.BOOLEAN), 1024)) {
+            for (int i = 0; i < 10000; i++) {
+                columnar.setInt(0, i);
+                columnar.setDouble(1, i % 100 + 0.5);
+                columnar.setBoolean(2, i % 100 >= 60);
+                columnar.endRow();
+            }
+        }
+
+        // 映射读取列式文件，统计信息不可能命中的行组整组跳过，只读取用到的列
+        try (ColumnarReader columnarReader = ColumnarFile.open(Paths.get("data.col"))) {
+            int idColumn = columnarReader.columnIndex("id");
+            int scoreColumn = columnarReader.columnIndex("score");
+            double[] scoreSum = new double[1];
+            long matched = columnarReader.scan(ColumnPredicate.between(idColumn, 2000L, 2999L),
+                    row -> scoreSum[0] += row.getDouble(scoreColumn));
+            System.out.println("命中 " + matched + " 行, 分数合计 " + scoreSum[0]
+                    + ", 跳过 " + columnarReader.getLastSkippedGroups() + " 个行组");
+        }
+
         // ObjectOutputStream - 写入对象
         try (ObjectOutputStream oos = new ObjectOutputStream(
                 new FileOutputStream("object.dat"))) {
             oos.writeObject(new SerializablePerson("小明", 25));
         }
 
+        // 二进制序列化 - 按缓存的字段表写变长编码的字段值，不写类描述
+        BinarySerializer<SerializablePerson> personSerializer = BinarySerializer.of(SerializablePerson.class);
+        byte[] personBytes = personSerializer.toBytes(new SerializablePerson("小明", 25));
+        System.out.println("二进制序列化 " + personBytes.length + " 字节: " + personSerializer.fromBytes(personBytes));
+
+        // 批量编码到同一个缓冲区，写入文件后再整体解码
+        BinaryOutput batch = new BinaryOutput(256);
+        personSerializer.encodeAll(Arrays.asList(new SerializablePerson("小明", 25),
+                new SerializablePerson("小红", 23)), batch);
+        try (FileOutputStream fos = new FileOutputStream("people.bin")) {
+            batch.writeTo(fos);
+        }
+        byte[] batchBytes = Files.readAllBytes(Paths.get("people.bin"));
+        System.out.println("批量解码: " + personSerializer.decodeAll(new BinaryInput(batchBytes, 0, batchBytes.length)));
+
         // 压缩流
         // GZIP压缩
         try (GZIPOutputStream gzos = new GZIPOutputStream(
@@ -140,6 +183,21 @@ public class JavaIO {
             }
         }
 
+        // 并行GZIP压缩 - 按块在线程池中压缩成多成员gzip，结果仍可用GZIPInputStream或gunzip解压
+        try (ParallelGzipOutputStream pgzos = new ParallelGzipOutputStream(
+                new FileOutputStream("parallel.gz"))) {
+            for (int i = 0; i < 10000; i++) {
+                pgzos.write(("第" + i + "行日志\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        // 并行GZIP解压 - 根据成员头部的长度建立块索引，各块并行解压后按顺序写出
+        ParallelGunzip gunzip = ParallelGunzip.open(Paths.get("parallel.gz"));
+        try (OutputStream gunzipOut = new FileOutputStream("parallel.txt")) {
+            gunzip.decompress(gunzipOut, ForkJoinPool.commonPool());
+        }
+        System.out.println("并行解压 " + gunzip.getBlocks().size() + " 块, 共 " + gunzip.getUncompressedSize() + " 字节");
+
         // ==================== 字符流 ====================
 
         // Reader - 字符输入流的抽象基类
@@ -215,6 +273,16 @@ public class JavaIO {
             pw.println("最后一行");
         }
 
+        // 异步写入 - 调用线程只把数据复制进环形缓冲区，刷盘线程成批写文件；缓冲区满时阻塞或丢弃
+        try (AsyncFileWriter asyncWriter = new AsyncFileWriter(Paths.get("async.log"), false, 64 * 1024,
+                AsyncFileWriter.OverflowPolicy.BLOCK, 100)) {
+            for (int i = 0; i < 1000; i++) {
+                asyncWriter.writeLine("请求" + i + "处理完成");
+            }
+            asyncWriter.flush();
+            System.out.println("异步写入: " + asyncWriter);
+        }
+
         // ==================== Scanner类 ====================
 
         // 从文件中读取
@@ -239,6 +307,20 @@ public class JavaIO {
             System.out.println("项目: " + delimiterScanner.next());
         }
 
+        // 字节级分词 - 大量数字不经过正则和String，直接在缓冲区里解析
+        try (FastScanner fastScanner = new FastScanner(new ByteArrayInputStream("1 -2 3.5 4e2\n5".getBytes(StandardCharsets.US_ASCII)))) {
+            System.out.println("FastScanner: " + fastScanner.nextInt() + ", " + fastScanner.nextLong() + ", "
+                    + fastScanner.nextDouble() + ", " + fastScanner.nextDouble() + ", " + fastScanner.nextInt());
+        }
+        try (FastScanner csvScanner = new FastScanner(new ByteArrayInputStream("10,20,30".getBytes(StandardCharsets.US_ASCII)))
+                .useDelimiters(",\n")) {
+            long csvSum = 0;
+            while (csvScanner.hasNext()) {
+                csvSum += csvScanner.nextLong();
+            }
+            System.out.println("逗号分隔求和: " + csvSum);
+        }
+
         // ==================== NIO (New I/O) ====================
 
         // Path - 文件路径
@@ -257,12 +339,44 @@ public class JavaIO {
                 "\n追加内容".getBytes(StandardCharsets.UTF_8),
                 StandardOpenOption.APPEND);
 
+        // 预写日志 - 带CRC的分段追加日志，并发写入合并成一批，每批只force()一次
+        try (WriteAheadLog wal = new WriteAheadLog(Paths.get("wal"))) {
+            long sequence = wal.appendAndSync("第一条持久化记录".getBytes(StandardCharsets.UTF_8));
+            wal.append("异步提交的记录".getBytes(StandardCharsets.UTF_8))
+                    .thenAccept(seq -> System.out.println("记录已持久化, 序号: " + seq));
+            wal.replay(sequence, (seq, record) ->
+                    System.out.println("回放 " + seq + ": " + new String(record, StandardCharsets.UTF_8)));
+        }
+
+        // 键值存储 - 写入先进预写日志和内存跳表，写满后刷成带稀疏索引和布隆过滤器的有序段文件，后台合并
+        try (KvStore store = new KvStore(Paths.get("kv"))) {
+            store.put("user:1", "张三");
+            store.put("user:2", "李四");
+            store.put("user:3", "王五");
+            store.delete("user:2".getBytes(StandardCharsets.UTF_8));
+            System.out.println("user:1 = " + store.get("user:1") + ", user:2 = " + store.get("user:2"));
+            store.scan("user:".getBytes(StandardCharsets.UTF_8), "user;".getBytes(StandardCharsets.UTF_8), (key, value) -> {
+                System.out.println("范围扫描: " + new String(key, StandardCharsets.UTF_8) + " = " + new String(value, StandardCharsets.UTF_8));
+                return true;
+            });
+        }
+
         // 读取所有行
         List<String> lines = Files.readAllLines(Paths.get("nio_write.txt"));
         for (String line : lines) {
             System.out.println("NIO读取: " + line);
         }
 
+        // 逐行扫描 - 大文件不适合readAllLines，LineScanner在复用的缓冲区中查找换行符，每行是零拷贝视图
+        long lineCount = LineScanner.forEachLine(Paths.get("nio_write.txt"),
+                line -> System.out.println("LineScanner读取: " + line));
+        System.out.println("共 " + lineCount + " 行");
+
+        // 并行逐行处理 - 文件按行切段后在fork-join线程池中统计
+        long[] totalBytes = LineScanner.parallelReduce(Paths.get("nio_write.txt"), () -> new long[1],
+                (total, line) -> total[0] += line.length(), (a, b) -> new long[]{a[0] + b[0]});
+        System.out.println("行内容共 " + totalBytes[0] + " 字节");
+
         // 读取所有字节
         byte[] bytes = Files.readAllBytes(Paths.get("nio_write.txt"));
         System.out.println("字节内容: " + new String(bytes, StandardCharsets.UTF_8));
@@ -283,6 +397,18 @@ public class JavaIO {
         // 删除文件
         Files.deleteIfExists(Paths.get("nio_moved.txt"));
 
+        // 目录树批量操作 - 每个目录一个fork-join任务，文件分批并行处理，可以定时回报进度和取消
+        Files.write(Paths.get("nio_dir/subdir/tree.txt"), "目录树中的文件".getBytes(StandardCharsets.UTF_8));
+        try (TreeWalker walker = new TreeWalker(4)) {
+            WalkProgress progress = new WalkProgress(500, p -> System.out.println("进度: " + p));
+            walker.copy(Paths.get("nio_dir"), Paths.get("nio_dir_copy"), progress);
+            System.out.println("目录树复制完成: " + progress);
+            long checksum = walker.checksum(Paths.get("nio_dir_copy"), null, new WalkProgress());
+            System.out.println("目录树校验和: " + Long.toHexString(checksum)
+                    + ", 占用字节: " + walker.diskUsage(Paths.get("nio_dir_copy"), new WalkProgress()));
+            walker.delete(Paths.get("nio_dir_copy"), new WalkProgress());
+        }
+
         // 文件通道
         try (FileChannel sourceChannel = FileChannel.open(Paths.get("nio_write.txt"),
                 StandardOpenOption.READ);
@@ -296,21 +422,56 @@ public class JavaIO {
         boolean isDir = Files.isDirectory(Paths.get("nio_dir"));
         long size = Files.size(Paths.get("nio_write.txt"));
         System.out.println("文件存在: " + exists + ", 是目录: " + isDir + ", 大小: " + size);
-    }
-}
 
-class SerializablePerson implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private String name;
-    private int age;
+        // 监听文件变化 - 代替轮询Files.exists/Files.size，一批文件写入合并成一次回调
+        BlockingQueue<List<FileChange>> changes = new LinkedBlockingQueue<>();
+        try (FileWatcher watcher = new FileWatcher(Paths.get("nio_dir"), 200, 2000, changes::add)) {
+            for (int i = 0; i < 100; i++) {
+                Files.write(Paths.get("nio_dir/subdir/watched" + i + ".txt"), ("第" + i + "次写入").getBytes(StandardCharsets.UTF_8));
+            }
+            List<FileChange> changeBatch = changes.poll(5, TimeUnit.SECONDS);
+            System.out.println("收到一批变化: " + (changeBatch == null ? 0 : changeBatch.size()) + "个文件, " + watcher);
+        }
+
+        // 内存映射文件 - 超过2GB的文件分窗口映射，不把整个文件读进堆
+        try (MappedFile mapped = MappedFile.openReadWrite(Paths.get("mapped.bin"), 1024)) {
+            mapped.putInt(0, 123);
+            mapped.putDouble(4, 45.67);
+            mapped.put(12, "映射写入".getBytes(StandardCharsets.UTF_8), 0, 12);
+        }
+        try (MappedFile mapped = MappedFile.openRead(Paths.get("mapped.bin"))) {
+            MappedCursor cursor = mapped.cursor(0);
+            int intValue = cursor.readInt();
+            double doubleValue = cursor.readDouble();
+            byte[] text = new byte[12];
+            cursor.read(text, 0, text.length);
+            System.out.println("映射读取: " + intValue + ", " + doubleValue + ", " + new String(text, StandardCharsets.UTF_8));
+        }
 
-    public SerializablePerson(String name, int age) {
-        this.name = name;
-        this.age = age;
+        // 性能对比要写几十MB的临时文件，默认不跑，用参数bench或-Djavaio.bench=true开启
+        if (Arrays.asList(args).contains("bench") || Boolean.getBoolean("javaio.bench")) {
+            runBenchmarks();
+        }
     }
 
-    @Override
-    public String toString() {
-        return "Person{name='" + name + "', age=" + age + "}";
+    private static void runBenchmarks() throws Exception {
+        Path dir = Files.createTempDirectory("javaio_bench");
+        try {
+            MappedFileBenchmark.run(dir.resolve("mapped_bench.bin"), 64);
+            LineScannerBenchmark.run(dir.resolve("line_bench.log"), 64);
+            SerializerBenchmark.run(100_000, 5);
+            GzipBenchmark.run(dir, 64, Runtime.getRuntime().availableProcessors());
+            WalBenchmark.run(dir.resolve("wal_bench"), 64, 500, 128);
+            ColumnarBenchmark.run(dir, 1_000_000);
+            KvBenchmark.run(dir.resolve("kv_bench"), 1_000_000);
+            TreeWalkerBenchmark.run(dir, 20_000, 1024);
+            FastScannerBenchmark.run(dir, 5_000_000);
+            AsyncWriterBenchmark.run(dir, 4, 100_000);
+        } finally {
+            // 某个对比中途失败时留下的文件也一起删掉
+            try (TreeWalker walker = new TreeWalker(4)) {
+                walker.delete(dir, new WalkProgress());
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,79 +1,76 @@
 package com.jonssonyan;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import java.io.BufferedReader;
-import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JavaNet {
     public static void main(String[] args) throws Exception {
+        // 压测要起几十个并发连接、写几十MB临时文件，默认不跑，用参数bench或-Djavanet.bench=true开启
+        boolean bench = Arrays.asList(args).contains("bench") || Boolean.getBoolean("javanet.bench");
+
         // ================ Socket通信 - TCP连接 ================
 
-        // 创建服务器 - 在单独线程中启动
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.submit(() -> {
-            try {
-                ServerSocket serverSocket = new ServerSocket(8080);
-                System.out.println("服务器启动在端口8080...");
-                Socket clientSocket = serverSocket.accept(); // 阻塞等待客户端连接
-
-                // 读取客户端数据
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                String clientMessage = in.readLine();
-                System.out.println("从客户端收到: " + clientMessage);
-
-                // 发送响应给客户端
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-                out.println("服务器收到消息: " + clientMessage);
-
-                // 关闭资源
-                in.close();
-                out.close();
-                clientSocket.close();
-                serverSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        // 创建服务器 - 每个连接一个线程执行阻塞式处理代码，JDK 21+上是虚拟线程，Java 8上是有界线程池
+        BlockingServer blockingServer = new BlockingServer(8080, clientSocket -> {
+            // 读取客户端数据 - 长度前缀帧，帧体是任意二进制数据，不再按行读取
+            FrameCodec codec = new LengthFieldCodec();
+            FrameReader in = new FrameReader(Channels.newChannel(clientSocket.getInputStream()), codec);
+            String clientMessage = StandardCharsets.UTF_8.decode(in.read()).toString();
+            System.out.println("从客户端收到: " + clientMessage);
+
+            // 发送响应给客户端，方法返回后连接自动关闭
+            FrameWriter out = new FrameWriter(Channels.newChannel(clientSocket.getOutputStream()), codec);
+            out.write(ByteBuffer.wrap(("服务器收到消息: " + clientMessage).getBytes(StandardCharsets.UTF_8)));
         });
-
-        // 等待服务器启动
-        Thread.sleep(1000);
+        blockingServer.start();
+        System.out.println("服务器启动在端口8080... 虚拟线程: " + blockingServer.isVirtualThreads());
 
         // 创建客户端
-        try (Socket socket = new Socket("localhost", 8080)) {
+        try (Socket socket = new Socket()) {
+            socket.connect(DnsResolver.DEFAULT.resolveNow("localhost", 8080)); // 通过带缓存的解析器解析主机名
+
+            FrameCodec codec = new LengthFieldCodec();
+
             // 发送数据到服务器
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            out.println("Hello, Server! 当前时间: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            FrameWriter out = new FrameWriter(Channels.newChannel(socket.getOutputStream()), codec);
+            String message = "Hello, Server! 当前时间: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            out.write(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
 
             // 接收服务器响应
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            System.out.println("服务器响应: " + in.readLine());
+            FrameReader in = new FrameReader(Channels.newChannel(socket.getInputStream()), codec);
+            System.out.println("服务器响应: " + StandardCharsets.UTF_8.decode(in.read()));
+        }
+        blockingServer.close();
+
+        // 每连接一个线程 vs Selector - 32个并发客户端建立2000条短连接，每条连接10次请求
+        if (bench) {
+            ServerBenchmark.run(32, 2000, 10);
         }
 
         // ================ URL处理 - HTTP请求 ================
@@ -92,190 +89,198 @@ public class JavaNet {
             System.out.println("URL内容示例: " + content.substring(0, Math.min(50, content.length())) + "...");
         }
 
-        // HttpURLConnection - 发送HTTP GET请求
-        URL getUrl = new URL("https://httpbin.org/get?user=jonssonyan");
-        HttpURLConnection getConnection = (HttpURLConnection) getUrl.openConnection();
-        getConnection.setRequestMethod("GET");
+        // 连接池HTTP客户端 - 同一主机的请求复用keep-alive连接，响应体以流的形式读取
+        PooledHttpClient httpClient = new PooledHttpClient();
 
-        int responseCode = getConnection.getResponseCode();
-        System.out.println("HTTP GET响应码: " + responseCode);
-
-        // HttpURLConnection - 发送HTTP POST请求
-        URL postUrl = new URL("https://httpbin.org/post");
-        HttpURLConnection postConnection = (HttpURLConnection) postUrl.openConnection();
-        postConnection.setRequestMethod("POST");
-        postConnection.setRequestProperty("Content-Type", "application/json");
-        postConnection.setDoOutput(true);
+        // 发送HTTP GET请求
+        try (HttpResponse getResponse = httpClient.get("https://httpbin.org/get?user=jonssonyan")) {
+            System.out.println("HTTP GET响应码: " + getResponse.statusCode());
+        }
 
-        // 写入请求体
+        // 发送HTTP POST请求 - 复用上面GET请求归还的连接
         String jsonInputString = "{\"name\":\"jonssonyan\",\"date\":\"2025-04-25\"}";
-        try (OutputStream os = postConnection.getOutputStream()) {
-            byte[] input = jsonInputString.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+        try (HttpResponse postResponse = httpClient.post("https://httpbin.org/post", "application/json",
+                jsonInputString.getBytes(StandardCharsets.UTF_8))) {
+            String response = postResponse.bodyAsString();
+            System.out.println("HTTP POST响应示例: " + response.substring(0, Math.min(50, response.length())) + "...");
         }
 
-        // 读取响应
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(postConnection.getInputStream(), StandardCharsets.UTF_8))) {
-            StringBuilder response = new StringBuilder();
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
-            }
-            System.out.println("HTTP POST响应示例: " + response.substring(0, Math.min(50, response.length())) + "...");
+        // 对比压测 - 本地替身服务器上比较"每次新建HttpURLConnection + 逐行读取"和连接池客户端
+        if (bench) {
+            HttpClientBenchmark.run(500);
         }
 
         // ================ UDP通信 - 无连接传输 ================
 
-        // 在单独线程中启动UDP服务器
-        executor.submit(() -> {
-            try {
-                DatagramSocket serverSocket = new DatagramSocket(9090);
-                byte[] receiveData = new byte[1024];
-
-                // 接收数据包
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                serverSocket.receive(receivePacket); // 阻塞等待
-
-                String message = new String(receivePacket.getData(), 0, receivePacket.getLength());
-                System.out.println("UDP服务器收到: " + message);
-
-                // 发送响应
-                InetAddress clientAddress = receivePacket.getAddress();
-                int clientPort = receivePacket.getPort();
-                String responseMsg = "UDP服务器确认收到";
-                byte[] sendData = responseMsg.getBytes();
-
-                DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, clientAddress, clientPort);
-                serverSocket.send(sendPacket);
-
-                serverSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        // 高吞吐UDP服务器 - 多个接收线程批量收包，接收缓冲区来自缓冲池，整批交给处理器
+        UdpServer udpServer = new UdpServer(9090, 2, batch -> {
+            ByteBuffer reply = ByteBuffer.wrap("UDP服务器确认收到".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < batch.size(); i++) {
+                System.out.println("UDP服务器收到: " + StandardCharsets.UTF_8.decode(batch.data(i)));
+                batch.reply(i, reply.duplicate());
             }
         });
-
-        // 等待UDP服务器启动
-        Thread.sleep(1000);
+        udpServer.start();
 
         // UDP客户端
-        try (DatagramSocket clientSocket = new DatagramSocket()) {
-            InetAddress serverAddress = InetAddress.getByName("localhost");
-            byte[] sendData = "Hello UDP Server!".getBytes();
+        try (DatagramChannel clientChannel = DatagramChannel.open();
+             PooledBuffer data = BufferPool.DEFAULT.acquire(1024)) {
+            InetSocketAddress serverAddress = new InetSocketAddress("localhost", 9090);
+            ByteBuffer buffer = data.buffer();
 
             // 发送数据包
-            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, serverAddress, 9090);
-            clientSocket.send(sendPacket);
+            buffer.put("Hello UDP Server!".getBytes(StandardCharsets.UTF_8));
+            buffer.flip();
+            clientChannel.send(buffer, serverAddress);
 
             // 接收响应
-            byte[] receiveData = new byte[1024];
-            DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-            clientSocket.receive(receivePacket);
+            buffer.clear();
+            clientChannel.receive(buffer);
+            buffer.flip();
 
-            String response = new String(receivePacket.getData(), 0, receivePacket.getLength());
+            String response = StandardCharsets.UTF_8.decode(buffer).toString();
             System.out.println("UDP客户端收到响应: " + response);
         }
 
+        // UDP压测 - 4个接收线程、2个处理线程，统计每秒收包数和丢包数
+        if (bench) {
+            try (UdpServer loadServer = new UdpServer(9091, 4, 64, 2048, 2, 1024, batch -> {
+                // 只计数，不做处理
+            })) {
+                loadServer.start();
+                UdpLoadGenerator.run("localhost", 9091, 2, 128, 2000);
+                Thread.sleep(200); // 等待处理线程消化积压
+                System.out.println("UDP服务器统计: " + loadServer + ", SO_REUSEPORT: " + loadServer.isReusePort());
+            }
+        }
+
         // ================ NIO - 非阻塞IO ================
 
-        // 在单独线程中启动NIO服务器
-        executor.submit(() -> {
-            try {
-                // 创建选择器和服务器通道
-                Selector selector = Selector.open();
-                ServerSocketChannel serverChannel = ServerSocketChannel.open();
-                serverChannel.bind(new InetSocketAddress(7070));
-                serverChannel.configureBlocking(false); // 设为非阻塞
-                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
-
-                System.out.println("NIO服务器启动在端口7070...");
-
-                while (true) {
-                    selector.select(); // 阻塞直到有事件发生
-
-                    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                    while (keyIterator.hasNext()) {
-                        SelectionKey key = keyIterator.next();
-                        keyIterator.remove();
-
-                        // 处理连接请求
-                        if (key.isAcceptable()) {
-                            ServerSocketChannel server = (ServerSocketChannel) key.channel();
-                            SocketChannel client = server.accept();
-                            client.configureBlocking(false);
-                            client.register(selector, SelectionKey.OP_READ);
-                        }
-
-                        // 读取数据
-                        if (key.isReadable()) {
-                            SocketChannel client = (SocketChannel) key.channel();
-                            ByteBuffer buffer = ByteBuffer.allocate(1024);
-                            int bytesRead = client.read(buffer);
-
-                            if (bytesRead > 0) {
-                                buffer.flip();
-                                String message = StandardCharsets.UTF_8.decode(buffer).toString();
-                                System.out.println("NIO服务器收到: " + message);
-
-                                // 回复客户端
-                                ByteBuffer responseBuffer = ByteBuffer.wrap("NIO服务器确认收到".getBytes());
-                                client.write(responseBuffer);
-                                client.close();
-                                break; // 示例中只处理一个连接
-                            }
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+        // 多Reactor NIO服务器 - boss选择器accept，worker选择器(每核一个)负责读写，支持长连接
+        // 流水线协议：varint长度前缀帧 + 请求ID，一次读事件中解出的多个请求批量处理、合并写出
+        NioServer nioServer = new NioServer(7070, new PipelineHandler(new VarintCodec(), request -> {
+            String message = StandardCharsets.UTF_8.decode(request).toString();
+            return ByteBuffer.wrap(("NIO服务器确认收到: " + message).getBytes(StandardCharsets.UTF_8));
+        }));
+        nioServer.start();
+        System.out.println("NIO服务器启动在端口7070...");
+
+        // NIO流水线客户端 - 单个SocketChannel上同时发出多个请求，按请求ID匹配乱序返回的响应
+        try (PipelineClient pipelineClient = new PipelineClient(new InetSocketAddress("localhost", 7070), new VarintCodec())) {
+            ByteBuffer response = pipelineClient.send(ByteBuffer.wrap("Hello NIO Server!".getBytes(StandardCharsets.UTF_8))).get();
+            System.out.println("NIO客户端收到响应: " + StandardCharsets.UTF_8.decode(response));
+
+            // 不等待响应连续发出1000个请求
+            long start = System.nanoTime();
+            List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(pipelineClient.send(ByteBuffer.wrap(("请求" + i).getBytes(StandardCharsets.UTF_8))));
             }
-        });
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+            System.out.println("流水线完成1000个请求耗时: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
 
-        // 等待NIO服务器启动
-        Thread.sleep(1000);
+        // TLS - 同一个流水线处理器运行在SSLEngine之上，握手计算在独立线程池执行，worker线程不被阻塞
+        SSLContext sslContext = TlsContexts.selfSigned(); // 临时生成的自签名证书，仅用于本地演示
+        NioServer tlsServer = new NioServer(0, new PipelineHandler(new VarintCodec(), request ->
+                ByteBuffer.wrap(("TLS服务器确认收到: " + StandardCharsets.UTF_8.decode(request)).getBytes(StandardCharsets.UTF_8))))
+                .enableTls(sslContext);
+        tlsServer.start();
+        try (PipelineClient tlsClient = new PipelineClient(new InetSocketAddress("localhost", tlsServer.getPort()), new VarintCodec(), sslContext)) {
+            SSLSession session = tlsClient.handshakeFuture().get();
+            System.out.println("TLS握手完成: " + session.getProtocol() + ", " + session.getCipherSuite());
+            ByteBuffer response = tlsClient.send(ByteBuffer.wrap("Hello TLS!".getBytes(StandardCharsets.UTF_8))).get();
+            System.out.println("TLS客户端收到响应: " + StandardCharsets.UTF_8.decode(response));
+        }
+        tlsServer.close();
+        // 握手速率(完整握手 vs 会话恢复)和吞吐量(明文 vs TLS)
+        if (bench) {
+            TlsBenchmark.run(200, 32);
+        }
 
-        // NIO客户端
-        try (SocketChannel clientChannel = SocketChannel.open()) {
-            clientChannel.connect(new InetSocketAddress("localhost", 7070));
+        // 背压 - 推送服务器只在连接可写时生产数据，200个不读数据的慢客户端也只占用有限的内存
+        AtomicLong maxPending = new AtomicLong();
+        NioServer pushServer = new NioServer(0, new NioHandler() {
+            private void push(NioConnection conn) {
+                while (conn.isWritable()) {
+                    conn.write(ByteBuffer.allocate(8192));
+                    maxPending.accumulateAndGet(conn.getPendingBytes(), Math::max);
+                }
+            }
 
-            // 发送消息
-            ByteBuffer buffer = ByteBuffer.wrap("Hello NIO Server!".getBytes(StandardCharsets.UTF_8));
-            clientChannel.write(buffer);
+            @Override
+            public void onOpen(NioConnection conn) {
+                push(conn);
+            }
 
-            // 接收响应
-            ByteBuffer responseBuffer = ByteBuffer.allocate(1024);
-            int bytesRead = clientChannel.read(responseBuffer);
-            responseBuffer.flip();
+            @Override
+            public void onRead(NioConnection conn, ByteBuffer in) {
+                in.position(in.limit()); // 忽略客户端发来的数据
+            }
 
-            if (bytesRead > 0) {
-                String response = StandardCharsets.UTF_8.decode(responseBuffer).toString();
-                System.out.println("NIO客户端收到响应: " + response);
+            @Override
+            public void onWritabilityChanged(NioConnection conn) {
+                if (conn.isWritable()) {
+                    push(conn); // 降到低水位以下，继续推送
+                }
             }
+        }).setWriteBufferWaterMark(32 * 1024, 64 * 1024);
+        pushServer.start();
+        List<SocketChannel> slowClients = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            slowClients.add(SocketChannel.open(new InetSocketAddress("localhost", pushServer.getPort())));
         }
-
-        // ================ 异步网络IO - Java 8 CompletableFuture ================
-
-        // 异步HTTP请求
-        CompletableFuture<String> asyncRequest = CompletableFuture.supplyAsync(() -> {
+        Thread.sleep(500);
+        System.out.println("200个慢客户端, 单连接最大排队字节数: " + maxPending.get() + " (高水位64KB)");
+        for (SocketChannel slowClient : slowClients) {
+            slowClient.close();
+        }
+        pushServer.close();
+
+        // 静态文件服务 - 支持Range请求，文件内容通过transferTo零拷贝发送，打开的文件句柄被缓存复用
+        Path wwwRoot = Files.createTempDirectory("www");
+        try {
+            byte[] fileContent = new byte[16 * 1024 * 1024];
+            new Random(42).nextBytes(fileContent);
+            Path bigFile = Files.write(wwwRoot.resolve("big.bin"), fileContent);
+            NioServer fileServer = new NioServer(0, new StaticFileHandler(wwwRoot, true));
+            fileServer.start();
             try {
-                URL asyncUrl = new URL("https://httpbin.org/delay/1"); // 延迟1秒的API
-                HttpURLConnection connection1 = (HttpURLConnection) asyncUrl.openConnection();
-                connection1.setRequestMethod("GET");
+                URLConnection rangeConnection = new URL("http://localhost:" + fileServer.getPort() + "/big.bin").openConnection();
+                rangeConnection.setRequestProperty("Range", "bytes=1024-2047"); // 只请求第二个1KB
+                try (InputStream rangeIn = rangeConnection.getInputStream()) {
+                    byte[] part = new byte[2048];
+                    int partLength = 0;
+                    int n;
+                    while ((n = rangeIn.read(part, partLength, part.length - partLength)) > 0) {
+                        partLength += n;
+                    }
+                    System.out.println("Range响应: " + rangeConnection.getHeaderField("Content-Range") + ", 内容一致: "
+                            + Arrays.equals(Arrays.copyOf(part, partLength), Arrays.copyOfRange(fileContent, 1024, 2048)));
+                }
+            } finally {
+                fileServer.close();
+            }
+            // 吞吐量对比 - 零拷贝 vs 读入byte[]再写出
+            if (bench) {
+                FileServerBenchmark.run(bigFile.toFile(), 4, 5);
+            }
+        } finally {
+            // 临时目录里有16MB的测试文件，演示结束后删除
+            try (TreeWalker walker = new TreeWalker(1)) {
+                walker.delete(wwwRoot, new WalkProgress());
+            }
+        }
 
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection1.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
+        // 缓冲池统计 - 命中、未命中和尚未归还的缓冲区数量
+        System.out.println("缓冲池统计: " + BufferPool.DEFAULT);
 
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
+        // ================ 异步网络IO - Java 8 CompletableFuture ================
 
-                return response.toString();
-            } catch (Exception e) {
-                e.printStackTrace();
-                return "请求失败: " + e.getMessage();
-            }
-        });
+        // 非阻塞HTTP客户端 - 连接和读写都在一个Selector线程上完成，在途请求不再占用公共线程池的线程
+        AsyncHttpClient asyncClient = new AsyncHttpClient();
+        CompletableFuture<String> asyncRequest = asyncClient.get("http://httpbin.org/delay/1") // 延迟1秒的API
+                .thenApply(AsyncHttpResponse::bodyAsString);
 
         // 处理异步结果
         asyncRequest.thenApply(response -> "处理响应: " + response.substring(0, Math.min(30, response.length())) + "...").thenAccept(System.out::println).exceptionally(ex -> {
@@ -283,8 +288,18 @@ public class JavaNet {
             return null;
         });
 
+        // 单个IO线程同时处理1000个并发请求(本地替身服务器)
+        try (LocalHttpServer localServer = new LocalHttpServer(0)) {
+            List<CompletableFuture<AsyncHttpResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(asyncClient.get("http://localhost:" + localServer.getPort() + "/item/" + i));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+            System.out.println("1000个并发请求完成，最后一个响应: " + futures.get(999).get().bodyAsString());
+        }
+
         // 等待异步操作完成
-        Thread.sleep(2000);
+        asyncRequest.handle((response, ex) -> null).get();
 
         // ================ 网络工具类 ================
 
@@ -293,9 +308,31 @@ public class JavaNet {
         System.out.println("本机地址: " + localHost.getHostAddress());
 
         // 解析主机名
-        InetAddress[] addresses = InetAddress.getAllByName("www.example.com");
+        // 异步解析 - 结果按TTL缓存，同一主机的并发解析只查询一次
+        InetAddress[] addresses = DnsResolver.DEFAULT.resolveAll("www.example.com").get();
         System.out.println("example.com的IP地址: " + addresses[0].getHostAddress());
 
+        // 用本地hosts表代替真实DNS，验证缓存命中、失败结果缓存和并发查询合并
+        StaticHostLookup hosts = new StaticHostLookup(50).add("api.local", "10.0.0.1", "10.0.0.2");
+        DnsResolver resolver = new DnsResolver(hosts, 30_000, 5_000);
+        List<CompletableFuture<InetAddress[]>> concurrent = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            concurrent.add(resolver.resolveAll("api.local")); // 查询有50ms延迟，这100次都在同一次查询进行中发起
+        }
+        CompletableFuture.allOf(concurrent.toArray(new CompletableFuture<?>[0])).get();
+        resolver.resolveAll("api.local").get();
+        for (int i = 0; i < 2; i++) {
+            try {
+                resolver.resolveAll("missing.local").get();
+            } catch (ExecutionException e) {
+                // 不存在的主机，第二次直接由失败缓存返回
+            }
+        }
+        if (hosts.getLookupCount() != 2 || resolver.getMerged() != 99 || resolver.getHits() != 2) {
+            throw new IllegalStateException("DNS缓存结果不符合预期: 查询" + hosts.getLookupCount() + "次, " + resolver);
+        }
+        System.out.println("本地hosts表解析: 查询" + hosts.getLookupCount() + "次, " + resolver);
+
         // NetworkInterface - 获取网络接口信息 (Java 8兼容写法)
         List<String> interfaceNames = new ArrayList<>();
         Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
@@ -305,12 +342,34 @@ public class JavaNet {
         }
         System.out.println("网络接口: " + String.join(", ", interfaceNames.subList(0, Math.min(3, interfaceNames.size()))) + (interfaceNames.size() > 3 ? "..." : ""));
 
-        // 检查网络可达性
-        boolean reachable = InetAddress.getByName("www.example.com").isReachable(5000); // 超时5秒
-        System.out.println("example.com是否可达: " + reachable);
+        // 检查网络可达性 - 在一个Selector上用非阻塞connect并发探测所有目标，每个目标单独超时
+        try (HealthChecker healthChecker = new HealthChecker(1000, 0.2)) {
+            healthChecker.addListener((target, from, to) -> {
+                if (from != HealthStatus.UNKNOWN) { // 只打印首次探测之后的状态变化
+                    System.out.println("健康状态变化: " + target.getName() + " " + from + " -> " + to);
+                }
+            });
+            healthChecker.start();
+            HealthTarget example = healthChecker.addTarget("www.example.com", 80, 5000); // 超时5秒
+            for (int i = 0; i < 500; i++) {
+                healthChecker.addTarget("localhost", nioServer.getPort(), 1000); // 本机NIO服务器上的500个探测目标
+            }
+            Thread.sleep(3000);
+            System.out.println("example.com是否可达: " + (example.getStatus() == HealthStatus.UP) + ", " + example);
+            LatencyHistogram localLatency = new LatencyHistogram();
+            for (HealthTarget target : healthChecker.getTargets()) {
+                if (target != example) {
+                    localLatency.add(target.getLatency());
+                }
+            }
+            System.out.println(healthChecker + " 本机探测延迟(us): " + localLatency);
+        }
 
-        // 关闭线程池
-        executor.shutdown();
+        // 关闭服务器和线程池
+        nioServer.close();
+        udpServer.close();
+        httpClient.close();
+        asyncClient.close();
         System.out.println("网络编程示例执行完毕!");
     }
 }
\ No newline at end of file
@@ -9,8 +9,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -42,7 +42,7 @@ public class JavaThread {
         };
 
         // Future - 获取异步计算结果
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ExecutorService executor = ManagedExecutors.single("callable");
         Future<String> future = executor.submit(callable);
         System.out.println("Future结果: " + future.get()); // 阻塞等待结果
 
@@ -67,19 +67,44 @@ public class JavaThread {
 
         // ================ 线程池 ================
 
-        // 固定大小线程池
-        ExecutorService fixedPool = Executors.newFixedThreadPool(2);
+        // 线程池统一由ManagedExecutors创建：池和线程有名字，队列有界，可以查看指标和调整大小
+
+        // 固定大小线程池 - 队列满时由提交线程执行
+        ManagedThreadPool fixedPool = ManagedExecutors.fixed("fixed", 2);
         for (int i = 0; i < 5; i++) {
             final int taskId = i;
             fixedPool.execute(() -> System.out.println("固定线程池-任务" + taskId +
                     " 由线程" + Thread.currentThread().getName() + "执行"));
         }
 
-        // 缓存线程池 - 按需创建线程
-        ExecutorService cachedPool = Executors.newCachedThreadPool();
+        // 有界队列和拒绝策略 - 超出容量的任务直接拒绝
+        ManagedThreadPool boundedPool = ManagedExecutors.fixed("bounded", 1, 2, RejectionPolicy.ABORT);
+        for (int i = 0; i < 5; i++) {
+            try {
+                boundedPool.execute(() -> sleepQuietly(100));
+            } catch (RejectedExecutionException e) {
+                System.out.println("有界线程池拒绝了任务" + i);
+            }
+        }
+
+        // 缓存线程池 - 按需创建线程，线程数有上限
+        ManagedThreadPool cachedPool = ManagedExecutors.cached("cached", 64);
+
+        // 工作窃取线程池 - 每个线程有自己的队列，空闲线程窃取其他线程的任务
+        ManagedWorkStealingPool stealingPool = ManagedExecutors.workStealing("stealing",
+                Runtime.getRuntime().availableProcessors());
+        CountDownLatch stealingDone = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            stealingPool.execute(stealingDone::countDown);
+        }
+        stealingDone.await();
+
+        // 运行时调整线程数
+        fixedPool.resize(4);
+        stealingPool.resize(Runtime.getRuntime().availableProcessors() * 2);
 
         // 定时任务线程池
-        ScheduledExecutorService scheduledPool = Executors.newScheduledThreadPool(1);
+        ScheduledExecutorService scheduledPool = ManagedExecutors.scheduled("scheduled", 1);
         scheduledPool.schedule(() -> System.out.println("3秒后执行"),
                 3, TimeUnit.SECONDS);
         scheduledPool.scheduleAtFixedRate(() -> System.out.println("每2秒执行一次"),
@@ -146,10 +171,27 @@ public class JavaThread {
         semaphore.acquire();  // 获取许可
         semaphore.release();  // 释放许可
 
+        // 线程池指标 - 队列深度、活动线程数、排队时间和运行时间分布
+        System.out.print(ManagedExecutors.report());
+        // 百万级任务的压测默认不跑，用参数bench或-Djavathread.bench=true开启
+        if (Arrays.asList(args).contains("bench") || Boolean.getBoolean("javathread.bench")) {
+            ExecutorBenchmark.run(1_000_000, Runtime.getRuntime().availableProcessors());
+        }
+
         // 关闭线程池
         executor.shutdown();
         fixedPool.shutdown();
+        boundedPool.shutdown();
         cachedPool.shutdown();
+        stealingPool.shutdown();
         scheduledPool.shutdown();
     }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
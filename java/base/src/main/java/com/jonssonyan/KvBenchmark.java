@@ -0,0 +1,91 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 写入、随机读取、读取不存在的键和范围扫描的吞吐
+ */
+class KvBenchmark {
+    static void run(Path dir, int keys) throws IOException {
+        deleteRecursively(dir);
+        try {
+            byte[] value = new byte[32];
+            long start = System.nanoTime();
+            try (KvStore store = new KvStore(dir, KvStore.DEFAULT_MEMTABLE_BYTES, false, 4, null)) {
+                for (int i = 0; i < keys; i++) {
+                    store.put(key(i), value);
+                }
+                report("put(异步组提交)", keys, start);
+                System.out.println(store);
+
+                Random random = new Random(9);
+                int reads = Math.min(keys, 1_000_000);
+                start = System.nanoTime();
+                for (int i = 0; i < reads; i++) {
+                    if (store.get(key(random.nextInt(keys))) == null) {
+                        throw new IllegalStateException("读不到已写入的键");
+                    }
+                }
+                report("get(存在的键)", reads, start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < reads; i++) {
+                    store.get(key(keys + random.nextInt(keys)));
+                }
+                report("get(不存在的键)", reads, start);
+
+                int scans = 10_000;
+                long[] scanned = new long[1];
+                start = System.nanoTime();
+                for (int i = 0; i < scans; i++) {
+                    int[] remaining = {100};
+                    scanned[0] += store.scan(key(random.nextInt(keys)), null, (k, v) -> --remaining[0] > 0);
+                }
+                report("scan(每次100个键)", scans, start);
+                System.out.println(store + ", 扫描键数" + scanned[0]);
+            }
+            start = System.nanoTime();
+            try (KvStore store = new KvStore(dir, KvStore.DEFAULT_MEMTABLE_BYTES, false, 4, null)) {
+                System.out.printf("重新打开(重放日志): %dms, %s%n", (System.nanoTime() - start) / 1_000_000, store);
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // 写入顺序随机的定长键："k"加上打散后的序号的16位十六进制
+    private static byte[] key(long i) {
+        long h = i * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        byte[] key = new byte[17];
+        key[0] = 'k';
+        for (int j = 16; j >= 1; j--) {
+            key[j] = (byte) "0123456789abcdef".charAt((int) (h & 0xF));
+            h >>>= 4;
+        }
+        return key;
+    }
+
+    private static void report(String name, long operations, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d次, %.0f ops/s%n", name, operations, operations / seconds);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+}
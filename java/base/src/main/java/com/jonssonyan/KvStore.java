@@ -0,0 +1,1067 @@
+package com.jonssonyan;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 嵌入式键值存储，LSM结构
+ * 写入先追加到预写日志再放进内存中的跳表(memtable)；memtable写满后冻结，由后台任务按键顺序写成不可变的段文件。
+ * 段文件由约4KB的数据块组成，常驻内存的只有每块第一个键构成的稀疏索引和布隆过滤器；
+ * 段文件数达到阈值后后台从最新的段开始合并大小相近的一组段，同时丢弃被覆盖的旧值，合并到最旧的段时也丢弃删除标记；
+ * 被选中的最旧的段不大于比它新的段之和，所以每次重写后记录所在的段大约翻倍，一条记录只被重写对数次。
+ * 读取依次查活跃memtable、冻结的memtable和从新到旧的段文件，第一个找到的版本就是最新值。
+ * 键按无符号字节序比较；传入的数组写入后不应再修改
+ */
+class KvStore implements Closeable {
+    static final long DEFAULT_MEMTABLE_BYTES = 64 << 20;
+    static final byte[] TOMBSTONE = new byte[0]; // 删除标记，按引用比较
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_CHECKPOINT = 3;
+    private static final int MAX_IMMUTABLE_MEMTABLES = 2;
+    private static final String SEGMENT_SUFFIX = ".sst";
+
+    private final Path dir;
+    private final long memtableBytes;
+    private final boolean syncWrites;
+    private final int compactionTrigger;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final WriteAheadLog wal;
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+    private final Object maintenanceLock = new Object(); // 刷盘和合并串行执行
+    private final AtomicLong nextSegmentId = new AtomicLong(1);
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private volatile KvState state;
+    private volatile IOException backgroundFailure;
+    private volatile boolean closed;
+
+    public KvStore(Path dir) throws IOException {
+        this(dir, DEFAULT_MEMTABLE_BYTES, true, 4, null);
+    }
+
+    /**
+     * @param memtableBytes     memtable的大约字节数上限，超过后冻结并刷成段文件
+     * @param syncWrites        为true时写入方法等到日志持久化后才返回；为false时日志仍由后台组提交，进程崩溃会丢失最近的写入
+     * @param compactionTrigger 段文件数达到这个值时尝试合并，没有大小相近的段可合并时段数会暂时超过它
+     * @param executor          执行刷盘和合并的线程池，为null时使用内部的单线程池
+     */
+    public KvStore(Path dir, long memtableBytes, boolean syncWrites, int compactionTrigger, ExecutorService executor) throws IOException {
+        this.dir = dir;
+        this.memtableBytes = memtableBytes;
+        this.syncWrites = syncWrites;
+        this.compactionTrigger = Math.max(2, compactionTrigger);
+        this.ownsExecutor = executor == null;
+        this.executor = executor != null ? executor : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "kv-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Files.createDirectories(dir);
+        List<KvSegment> segments = loadSegments();
+        Memtable memtable = new Memtable();
+        try {
+            // 日志段与memtable大小相当，刷盘后整段删除，重新打开时需要重放的记录不会太多
+            long walSegmentSize = Math.max(1 << 20, Math.min(WriteAheadLog.DEFAULT_SEGMENT_SIZE, memtableBytes / 4));
+            this.wal = new WriteAheadLog(dir.resolve("wal"), walSegmentSize, 64 * 1024);
+            // 日志中只保留了还没刷成段文件的写入(以及与它们同段的少量旧写入，重放一遍结果相同)
+            wal.replay(1, (sequence, data) -> apply(memtable, data));
+        } catch (IOException | RuntimeException e) {
+            for (KvSegment segment : segments) {
+                segment.release();
+            }
+            throw e;
+        }
+        this.state = new KvState(memtable, Collections.emptyList(), segments);
+    }
+
+    // 打开所有段文件，删除已经被合并结果覆盖的旧段(合并完成后、删除输入前崩溃时会留下)
+    private List<KvSegment> loadSegments() throws IOException {
+        List<KvSegment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(path); // 没有写完的段
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.add(KvSegment.open(path, id));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (KvSegment segment : segments) {
+                segment.release();
+            }
+            throw e;
+        }
+        List<KvSegment> live = new ArrayList<>();
+        for (KvSegment segment : segments) {
+            boolean covered = false;
+            for (KvSegment other : segments) {
+                if (other != segment && other.coveredFrom <= segment.id && segment.id < other.id) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (covered) {
+                segment.obsolete = true;
+                segment.release();
+            } else {
+                live.add(segment);
+                nextSegmentId.set(Math.max(nextSegmentId.get(), segment.id + 1));
+            }
+        }
+        live.sort((a, b) -> Long.compare(b.id, a.id)); // 新的在前
+        return live;
+    }
+
+    private static void apply(Memtable memtable, byte[] record) throws IOException {
+        BinaryInput in = new BinaryInput(record, 0, record.length);
+        byte op = in.readByte();
+        if (op == OP_PUT) {
+            memtable.put(in.readBytes(), in.readBytes());
+        } else if (op == OP_DELETE) {
+            memtable.put(in.readBytes(), TOMBSTONE);
+        } else if (op != OP_CHECKPOINT) {
+            throw new IOException("未知的日志记录类型: " + op);
+        }
+    }
+
+    public void put(byte[] key, byte[] value) throws IOException {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        write(OP_PUT, key, value);
+    }
+
+    public void delete(byte[] key) throws IOException {
+        write(OP_DELETE, key, null);
+    }
+
+    public void put(String key, String value) throws IOException {
+        put(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String get(String key) throws IOException {
+        byte[] value = get(key.getBytes(StandardCharsets.UTF_8));
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private void write(byte op, byte[] key, byte[] value) throws IOException {
+        ensureOpen();
+        BinaryOutput record = new BinaryOutput(key.length + (value == null ? 0 : value.length) + 12);
+        record.writeByte(op);
+        record.writeBytes(key);
+        if (op == OP_PUT) {
+            record.writeBytes(value);
+        }
+        CompletableFuture<Long> durable;
+        Memtable memtable;
+        // 读锁保证日志顺序与memtable归属一致：冻结memtable时拿写锁，之前追加的记录都在旧memtable里
+        switchLock.readLock().lock();
+        try {
+            durable = wal.append(record.toByteArray());
+            memtable = state.active;
+            memtable.put(key, op == OP_PUT ? value : TOMBSTONE);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+        if (syncWrites || durable.isCompletedExceptionally()) {
+            await(durable);
+        }
+        if (memtable.bytes() >= memtableBytes) {
+            switchMemtable(memtable);
+        }
+    }
+
+    private static long await(CompletableFuture<Long> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    // 冻结写满的memtable并安排刷盘；冻结的memtable过多时写入者在这里等待，避免内存无限增长
+    private synchronized void switchMemtable(Memtable full) throws IOException {
+        while (state.active == full && state.immutables.size() >= MAX_IMMUTABLE_MEMTABLES) {
+            ensureOpen();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待刷盘时被中断", e);
+            }
+        }
+        if (state.active != full) {
+            return; // 其他线程已经切换过
+        }
+        switchLock.writeLock().lock();
+        try {
+            // 检查点记录的序号大于旧memtable中的所有记录，刷盘完成后它之前的日志段可以删除
+            full.checkpoint = wal.append(new byte[]{OP_CHECKPOINT});
+            List<Memtable> immutables = new ArrayList<>(state.immutables.size() + 1);
+            immutables.add(full);
+            immutables.addAll(state.immutables);
+            state = new KvState(new Memtable(), immutables, state.segments);
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+        executor.execute(this::flushOldest);
+    }
+
+    // 每次冻结安排一次，总是刷最旧的那个memtable，线程池是多线程时也不会乱序
+    private void flushOldest() {
+        synchronized (maintenanceLock) {
+            if (closed || backgroundFailure != null) {
+                return;
+            }
+            try {
+                List<Memtable> immutables = state.immutables;
+                if (immutables.isEmpty()) {
+                    return;
+                }
+                Memtable oldest = immutables.get(immutables.size() - 1);
+                KvSegment segment = null;
+                if (!oldest.map.isEmpty()) {
+                    long id = nextSegmentId.getAndIncrement();
+                    segment = writeSegment(new MemtableCursor(oldest, null), oldest.map.size(), id, id);
+                }
+                synchronized (this) {
+                    List<Memtable> remaining = new ArrayList<>(state.immutables);
+                    remaining.remove(oldest);
+                    List<KvSegment> segments = new ArrayList<>(state.segments.size() + 1);
+                    if (segment != null) {
+                        segments.add(segment);
+                    }
+                    segments.addAll(state.segments);
+                    state = new KvState(state.active, remaining, segments);
+                    notifyAll();
+                }
+                flushes.increment();
+                wal.deleteSegmentsBefore(await(oldest.checkpoint));
+                if (state.segments.size() >= compactionTrigger) {
+                    compact(state.segments);
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    // 合并最新的一组段；刷盘与合并都持有maintenanceLock，合并期间不会出现新的段
+    private void compact(List<KvSegment> segments) throws IOException {
+        // 从最新的段往旧的方向选，直到遇到比已选的段加起来还大的段，避免每次都重写全部数据
+        int count = 1;
+        long selectedBytes = segments.get(0).fileSize();
+        while (count < segments.size() && segments.get(count).fileSize() <= selectedBytes) {
+            selectedBytes += segments.get(count).fileSize();
+            count++;
+        }
+        if (count < 2) {
+            return;
+        }
+        List<KvSegment> inputs = segments.subList(0, count);
+        long entries = 0;
+        long coveredFrom = Long.MAX_VALUE;
+        List<KvCursor> cursors = new ArrayList<>(inputs.size());
+        for (KvSegment input : inputs) {
+            entries += input.entryCount;
+            coveredFrom = Math.min(coveredFrom, input.coveredFrom);
+            cursors.add(input.cursor(null));
+        }
+        // 合并到了最旧的段时没有更旧的数据需要遮挡，删除标记可以丢弃
+        MergingCursor merged = new MergingCursor(cursors, count == segments.size());
+        KvSegment output = writeSegment(merged, entries, nextSegmentId.getAndIncrement(), coveredFrom);
+        synchronized (this) {
+            // 输入是最新的一段前缀，输出放在最前面，仍然按从新到旧排列
+            List<KvSegment> remaining = new ArrayList<>(segments.size() - count + 1);
+            remaining.add(output);
+            remaining.addAll(segments.subList(count, segments.size()));
+            state = new KvState(state.active, state.immutables, remaining);
+        }
+        for (KvSegment input : inputs) {
+            input.obsolete = true; // 正在读取它的线程释放后才解除映射并删除文件
+            input.release();
+        }
+        compactions.increment();
+    }
+
+    private KvSegment writeSegment(KvCursor cursor, long expectedKeys, long id, long coveredFrom) throws IOException {
+        Path target = dir.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (KvSegmentWriter writer = new KvSegmentWriter(tmp, expectedKeys, coveredFrom)) {
+            while (cursor.next()) {
+                writer.add(cursor.key(), cursor.value());
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        // 改名落盘后才能删除日志段或被合并的段，否则崩溃后两边的数据可能都找不到
+        WriteAheadLog.forceDirectory(dir);
+        return KvSegment.open(target, id);
+    }
+
+    private void fail(Exception e) {
+        backgroundFailure = e instanceof IOException ? (IOException) e : new IOException("后台刷盘或合并失败", e);
+        e.printStackTrace();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("存储已关闭");
+        }
+        IOException failure = backgroundFailure;
+        if (failure != null) {
+            throw new IOException("后台任务失败，存储不再接受写入", failure);
+        }
+    }
+
+    /**
+     * 读取键的最新值，不存在或已删除时返回null
+     */
+    public byte[] get(byte[] key) throws IOException {
+        while (true) {
+            KvState current = state;
+            byte[] value = current.active.map.get(key);
+            if (value != null) {
+                return value == TOMBSTONE ? null : value;
+            }
+            for (Memtable memtable : current.immutables) {
+                value = memtable.map.get(key);
+                if (value != null) {
+                    return value == TOMBSTONE ? null : value;
+                }
+            }
+            if (!acquire(current.segments)) {
+                continue; // 段刚被合并替换，用新的状态重试
+            }
+            try {
+                for (KvSegment segment : current.segments) {
+                    value = segment.get(key);
+                    if (value != null) {
+                        return value == TOMBSTONE ? null : value;
+                    }
+                }
+                return null;
+            } finally {
+                release(current.segments);
+            }
+        }
+    }
+
+    /**
+     * 按键顺序遍历[from, to)范围内的键值，from为null表示从头开始，to为null表示到末尾；visitor返回false时停止
+     */
+    public long scan(byte[] from, byte[] to, KvVisitor visitor) throws IOException {
+        KvState current;
+        do {
+            current = state;
+        } while (!acquire(current.segments));
+        try {
+            List<KvCursor> cursors = new ArrayList<>();
+            cursors.add(new MemtableCursor(current.active, from));
+            for (Memtable memtable : current.immutables) {
+                cursors.add(new MemtableCursor(memtable, from));
+            }
+            for (KvSegment segment : current.segments) {
+                cursors.add(segment.cursor(from));
+            }
+            MergingCursor merged = new MergingCursor(cursors, true);
+            long count = 0;
+            while (merged.next()) {
+                if (to != null && KvSegment.compare(merged.key(), to) >= 0) {
+                    break;
+                }
+                count++;
+                if (!visitor.visit(merged.key(), merged.value())) {
+                    break;
+                }
+            }
+            return count;
+        } finally {
+            release(current.segments);
+        }
+    }
+
+    private static boolean acquire(List<KvSegment> segments) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (!segments.get(i).acquire()) {
+                for (int j = 0; j < i; j++) {
+                    segments.get(j).release();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void release(List<KvSegment> segments) {
+        for (KvSegment segment : segments) {
+            segment.release();
+        }
+    }
+
+    public int getSegmentCount() {
+        return state.segments.size();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    @Override
+    public String toString() {
+        KvState current = state;
+        long segmentKeys = 0;
+        long bloomSkips = 0;
+        for (KvSegment segment : current.segments) {
+            segmentKeys += segment.entryCount;
+            bloomSkips += segment.bloomSkips.sum();
+        }
+        return "KvStore{memtable=" + current.active.map.size() + ", immutables=" + current.immutables.size()
+                + ", segments=" + current.segments.size() + ", segmentKeys=" + segmentKeys + ", flushes=" + getFlushCount()
+                + ", compactions=" + getCompactionCount() + ", bloomSkips=" + bloomSkips + "}";
+    }
+
+    /**
+     * 关闭后未刷盘的数据仍在预写日志中，下次打开时重放
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (maintenanceLock) {
+            wal.close();
+            for (KvSegment segment : state.segments) {
+                segment.release();
+            }
+        }
+    }
+
+    // 某一时刻的完整视图，整体替换，读取方拿到后不会再变
+    private static class KvState {
+        final Memtable active;
+        final List<Memtable> immutables; // 新的在前
+        final List<KvSegment> segments; // 新的在前
+
+        KvState(Memtable active, List<Memtable> immutables, List<KvSegment> segments) {
+            this.active = active;
+            this.immutables = immutables;
+            this.segments = segments;
+        }
+    }
+}
+
+/**
+ * 遍历回调
+ */
+@FunctionalInterface
+interface KvVisitor {
+    boolean visit(byte[] key, byte[] value) throws IOException;
+}
+
+/**
+ * 内存表：按无符号字节序排序的并发跳表
+ */
+class Memtable {
+    final ConcurrentSkipListMap<byte[], byte[]> map = new ConcurrentSkipListMap<>(KvSegment::compare);
+    private final AtomicLong bytes = new AtomicLong();
+    volatile CompletableFuture<Long> checkpoint;
+
+    void put(byte[] key, byte[] value) {
+        map.put(key, value);
+        bytes.addAndGet(key.length + value.length + 64); // 64字节近似跳表节点和数组对象头的开销
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+}
+
+/**
+ * 有序键值游标，删除标记的值是KvStore.TOMBSTONE
+ */
+interface KvCursor {
+    boolean next() throws IOException;
+
+    byte[] key();
+
+    byte[] value();
+}
+
+class MemtableCursor implements KvCursor {
+    private final Iterator<Map.Entry<byte[], byte[]>> iterator;
+    private Map.Entry<byte[], byte[]> current;
+
+    MemtableCursor(Memtable memtable, byte[] from) {
+        this.iterator = (from == null ? memtable.map : memtable.map.tailMap(from, true)).entrySet().iterator();
+    }
+
+    @Override
+    public boolean next() {
+        if (!iterator.hasNext()) {
+            return false;
+        }
+        current = iterator.next();
+        return true;
+    }
+
+    @Override
+    public byte[] key() {
+        return current.getKey();
+    }
+
+    @Override
+    public byte[] value() {
+        return current.getValue();
+    }
+}
+
+/**
+ * 多路归并：同一个键只取排在最前(最新)的来源中的版本
+ */
+class MergingCursor implements KvCursor {
+    private final PriorityQueue<Source> heap;
+    private final boolean dropTombstones;
+    private byte[] key;
+    private byte[] value;
+
+    /**
+     * @param cursors 按从新到旧排列
+     */
+    MergingCursor(List<KvCursor> cursors, boolean dropTombstones) throws IOException {
+        this.dropTombstones = dropTombstones;
+        this.heap = new PriorityQueue<>(Math.max(1, cursors.size()), Comparator
+                .<Source, byte[]>comparing(s -> s.cursor.key(), KvSegment::compare)
+                .thenComparingInt(s -> s.rank));
+        for (int i = 0; i < cursors.size(); i++) {
+            KvCursor cursor = cursors.get(i);
+            if (cursor.next()) {
+                heap.add(new Source(cursor, i));
+            }
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (!heap.isEmpty()) {
+            Source top = heap.poll();
+            byte[] k = top.cursor.key();
+            byte[] v = top.cursor.value();
+            // 更旧来源中的同一个键被遮挡
+            while (!heap.isEmpty() && KvSegment.compare(heap.peek().cursor.key(), k) == 0) {
+                Source shadowed = heap.poll();
+                if (shadowed.cursor.next()) {
+                    heap.add(shadowed);
+                }
+            }
+            if (top.cursor.next()) {
+                heap.add(top);
+            }
+            if (dropTombstones && v == KvStore.TOMBSTONE) {
+                continue;
+            }
+            key = k;
+            value = v;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] key() {
+        return key;
+    }
+
+    @Override
+    public byte[] value() {
+        return value;
+    }
+
+    private static class Source {
+        final KvCursor cursor;
+        final int rank;
+
+        Source(KvCursor cursor, int rank) {
+            this.cursor = cursor;
+            this.rank = rank;
+        }
+    }
+}
+
+/**
+ * 段文件写入
+ * 文件结构：[数据块...][稀疏索引][布隆过滤器][索引偏移8][过滤器偏移8][键数8][覆盖的最小段号8][魔数4]；
+ * 数据块内每条记录是[键长varint][值长+1的varint，0表示删除标记][键][值]
+ */
+class KvSegmentWriter implements Closeable {
+    static final int BLOCK_SIZE = 4096;
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final BloomFilter bloom;
+    private final long coveredFrom;
+    private final BinaryOutput block = new BinaryOutput(BLOCK_SIZE * 2);
+    private final List<byte[]> indexKeys = new ArrayList<>();
+    private final List<long[]> indexEntries = new ArrayList<>(); // {偏移, 长度}
+    private byte[] blockFirstKey;
+    private byte[] lastKey;
+    private long position;
+    private long entries;
+
+    KvSegmentWriter(Path path, long expectedKeys, long coveredFrom) throws IOException {
+        this.file = new FileOutputStream(path.toFile());
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 256 * 1024));
+        this.bloom = new BloomFilter(expectedKeys, 10);
+        this.coveredFrom = coveredFrom;
+    }
+
+    void add(byte[] key, byte[] value) throws IOException {
+        if (lastKey != null && KvSegment.compare(lastKey, key) >= 0) {
+            throw new IllegalStateException("键必须严格递增");
+        }
+        if (block.size() == 0) {
+            blockFirstKey = key;
+        }
+        block.writeVarInt(key.length);
+        block.writeVarInt(value == KvStore.TOMBSTONE ? 0 : value.length + 1);
+        block.write(key, 0, key.length);
+        if (value != KvStore.TOMBSTONE) {
+            block.write(value, 0, value.length);
+        }
+        bloom.add(key);
+        lastKey = key;
+        entries++;
+        if (block.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (block.size() == 0) {
+            return;
+        }
+        out.write(block.array(), 0, block.size());
+        indexKeys.add(blockFirstKey);
+        indexEntries.add(new long[]{position, block.size()});
+        position += block.size();
+        block.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            long indexOffset = position;
+            out.writeInt(indexKeys.size());
+            long indexBytes = 4;
+            for (int i = 0; i < indexKeys.size(); i++) {
+                byte[] key = indexKeys.get(i);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(indexEntries.get(i)[0]);
+                out.writeInt((int) indexEntries.get(i)[1]);
+                indexBytes += 4 + key.length + 8 + 4;
+            }
+            long bloomOffset = indexOffset + indexBytes;
+            bloom.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(entries);
+            out.writeLong(coveredFrom);
+            out.writeInt(KvSegment.MAGIC);
+            out.flush();
+            file.getChannel().force(true);
+        } finally {
+            out.close();
+        }
+    }
+}
+
+/**
+ * 只读的段文件：数据通过MappedFile访问，稀疏索引和布隆过滤器在打开时读入内存。
+ * 引用计数从1开始(由存储持有)，读取前acquire、读完release，计数归零时解除映射，被合并掉的段同时删除文件
+ */
+class KvSegment {
+    static final int MAGIC = 0x4B565353; // "KVSS"
+    private static final int TRAILER_SIZE = 8 * 4 + 4;
+
+    final long id;
+    final long coveredFrom;
+    final long entryCount;
+    final LongAdder bloomSkips = new LongAdder();
+    private final Path path;
+    private final MappedFile file;
+    private final byte[][] blockKeys;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final BloomFilter bloom;
+    private final AtomicInteger refs = new AtomicInteger(1);
+    volatile boolean obsolete;
+
+    private KvSegment(Path path, long id, MappedFile file) throws IOException {
+        this.path = path;
+        this.id = id;
+        this.file = file;
+        long size = file.size();
+        if (size < TRAILER_SIZE || file.getInt(size - 4) != MAGIC) {
+            throw new IOException("不是段文件: " + path);
+        }
+        long indexOffset = file.getLong(size - TRAILER_SIZE);
+        long bloomOffset = file.getLong(size - TRAILER_SIZE + 8);
+        this.entryCount = file.getLong(size - TRAILER_SIZE + 16);
+        this.coveredFrom = file.getLong(size - TRAILER_SIZE + 24);
+        if (indexOffset < 0 || bloomOffset < indexOffset || bloomOffset > size - TRAILER_SIZE) {
+            throw new IOException("段文件尾部损坏: " + path);
+        }
+        DataInputStream index = new DataInputStream(new ByteArrayInputStream(read(indexOffset, (int) (bloomOffset - indexOffset))));
+        int blocks = index.readInt();
+        this.blockKeys = new byte[blocks][];
+        this.blockOffsets = new long[blocks];
+        this.blockLengths = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            blockKeys[i] = new byte[index.readInt()];
+            index.readFully(blockKeys[i]);
+            blockOffsets[i] = index.readLong();
+            blockLengths[i] = index.readInt();
+        }
+        this.bloom = BloomFilter.read(new DataInputStream(new ByteArrayInputStream(
+                read(bloomOffset, (int) (size - TRAILER_SIZE - bloomOffset)))));
+    }
+
+    static KvSegment open(Path path, long id) throws IOException {
+        MappedFile file = MappedFile.openRead(path);
+        try {
+            return new KvSegment(path, id, file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    long fileSize() {
+        return file.size();
+    }
+
+    private byte[] read(long offset, int length) {
+        byte[] bytes = new byte[length];
+        file.get(offset, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * 返回值、KvStore.TOMBSTONE或null(本段没有这个键)
+     */
+    byte[] get(byte[] key) throws IOException {
+        if (!bloom.mightContain(key)) {
+            bloomSkips.increment();
+            return null;
+        }
+        int block = floorBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        return new BlockReader(read(blockOffsets[block], blockLengths[block])).find(key);
+    }
+
+    // 第一个键不大于key的最后一个块
+    private int floorBlock(byte[] key) {
+        int low = 0;
+        int high = blockKeys.length - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(blockKeys[mid], key) <= 0) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从第一个不小于from的键开始遍历，from为null时从头开始
+     */
+    KvCursor cursor(byte[] from) {
+        int startBlock = from == null ? 0 : Math.max(0, floorBlock(from));
+        return new KvCursor() {
+            private int block = startBlock;
+            private BlockReader reader;
+
+            @Override
+            public boolean next() throws IOException {
+                while (true) {
+                    if (reader == null || !reader.next()) {
+                        if (block >= blockKeys.length) {
+                            return false;
+                        }
+                        reader = new BlockReader(read(blockOffsets[block], blockLengths[block]));
+                        block++;
+                        continue;
+                    }
+                    if (from == null || compare(reader.key, from) >= 0) {
+                        return true;
+                    }
+                }
+            }
+
+            @Override
+            public byte[] key() {
+                return reader.key;
+            }
+
+            @Override
+            public byte[] value() {
+                return reader.value;
+            }
+        };
+    }
+
+    boolean acquire() {
+        while (true) {
+            int current = refs.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (refs.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            file.close();
+            if (obsolete) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 无符号字节序比较
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    // 解析一个数据块中的记录，每条记录的键和值都复制成独立的数组
+    private static class BlockReader {
+        private final byte[] data;
+        private int position;
+        byte[] key;
+        byte[] value;
+
+        BlockReader(byte[] data) {
+            this.data = data;
+        }
+
+        boolean next() throws IOException {
+            if (position >= data.length) {
+                return false;
+            }
+            int keyLength = readVarInt();
+            int valueLength = readVarInt() - 1;
+            if (keyLength < 0 || position + keyLength + Math.max(0, valueLength) > data.length) {
+                throw new IOException("数据块损坏");
+            }
+            key = Arrays.copyOfRange(data, position, position + keyLength);
+            position += keyLength;
+            if (valueLength < 0) {
+                value = KvStore.TOMBSTONE;
+            } else {
+                value = Arrays.copyOfRange(data, position, position + valueLength);
+                position += valueLength;
+            }
+            return true;
+        }
+
+        /**
+         * 在块内查找，键直接在块数据上比较，只复制命中的值
+         */
+        byte[] find(byte[] target) throws IOException {
+            while (position < data.length) {
+                int keyLength = readVarInt();
+                int valueLength = readVarInt() - 1;
+                if (keyLength < 0 || position + keyLength + Math.max(0, valueLength) > data.length) {
+                    throw new IOException("数据块损坏");
+                }
+                int c = compare(data, position, keyLength, target);
+                position += keyLength;
+                if (c == 0) {
+                    return valueLength < 0 ? KvStore.TOMBSTONE : Arrays.copyOfRange(data, position, position + valueLength);
+                }
+                if (c > 0) {
+                    return null;
+                }
+                position += Math.max(0, valueLength);
+            }
+            return null;
+        }
+
+        private static int compare(byte[] data, int offset, int length, byte[] b) {
+            int common = Math.min(length, b.length);
+            for (int i = 0; i < common; i++) {
+                int c = (data[offset + i] & 0xFF) - (b[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return length - b.length;
+        }
+
+        private int readVarInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= data.length) {
+                    throw new IOException("数据块损坏");
+                }
+                byte b = data[position++];
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("数据块损坏");
+        }
+    }
+}
+
+/**
+ * 布隆过滤器：每个键约10位时误判率约1%；不存在的键大多不需要读段文件
+ */
+class BloomFilter {
+    private final long[] bits;
+    private final int hashes;
+
+    BloomFilter(long expectedKeys, int bitsPerKey) {
+        long bitCount = Math.max(64, expectedKeys * bitsPerKey);
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (bitCount + 63) / 64)];
+        this.hashes = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    void add(byte[] key) {
+        long hash = hash(key);
+        long bitCount = (long) bits.length * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        long bitCount = (long) bits.length * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a后再用murmur3的fmix64打散
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter read(DataInputStream in) throws IOException {
+        int hashes = in.readInt();
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashes);
+    }
+}
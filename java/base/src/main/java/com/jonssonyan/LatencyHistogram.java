@@ -0,0 +1,128 @@
+package com.jonssonyan;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数-线性分桶的延迟直方图
+ * 小于64的值每个值一个桶，更大的值按2的幂分段、每段再等分32个桶，相对误差约3%，
+ * 内存固定不随样本数增长，可以多线程并发记录
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;      // 每段的桶数: 32
+    private static final int LINEAR_COUNT = SUB_COUNT << 1;  // 直接按值分桶的范围: [0, 64)
+    private static final int BUCKET_COUNT = LINEAR_COUNT + (63 - SUB_BITS - 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个非负值，单位由调用方决定(一般是微秒)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("不能记录负数: " + value);
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS + 1
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+        return LINEAR_COUNT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    // 桶内最大的值
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_COUNT) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (index - LINEAR_COUNT) % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_COUNT + sub) * width + width - 1;
+    }
+
+    /**
+     * 百分位数，如99.0表示p99；返回所在桶的上界，不超过实际最大值
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMin() {
+        return getCount() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * 把另一个直方图的样本合并进来，用于汇总多个目标或线程的统计
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        if (other.getCount() > 0) {
+            min.accumulateAndGet(other.min.get(), Math::min);
+            max.accumulateAndGet(other.max.get(), Math::max);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d",
+                getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,47 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 定长长度头 - 4字节大端int表示帧体长度
+ */
+class LengthFieldCodec implements FrameCodec {
+    private final int maxFrameLength;
+
+    public LengthFieldCodec() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public LengthFieldCodec(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) throws IOException {
+        if (in.remaining() < 4) {
+            return null;
+        }
+        int start = in.position();
+        int length = in.getInt(start); // 绝对读取，不移动position
+        if (length < 0 || length > maxFrameLength) {
+            throw new IOException("帧长度非法: " + length);
+        }
+        if (in.remaining() < 4 + length) {
+            return null;
+        }
+        return FrameSlices.slice(in, start + 4, length);
+    }
+
+    @Override
+    public int maxFrameLength() {
+        return maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer payload) {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(0, payload.remaining());
+        return new ByteBuffer[]{header, payload};
+    }
+}
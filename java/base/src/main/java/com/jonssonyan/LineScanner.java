@@ -0,0 +1,257 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * 按行扫描字节流
+ * 直接在可复用的字节缓冲区中查找换行符，每一行以ByteSlice视图的形式交给调用方，不为每行创建String；
+ * 内存占用只取决于缓冲区和最长的一行，与文件大小无关。行末的\n和\r\n都会被去掉
+ */
+class LineScanner implements Closeable {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final FileChannel channel;
+    private long channelPosition;
+    private final long end;
+    private byte[] buffer;
+    private int lineStart; // 缓冲区中下一行的起始位置
+    private int limit; // 缓冲区中有效数据的末尾
+    private long bufferOffset; // 缓冲区第0个字节在输入中的偏移
+    private boolean eof;
+    private final ByteSlice line = new ByteSlice();
+    private long lineOffset = -1;
+
+    public LineScanner(InputStream in) {
+        this(in, null, 0, Long.MAX_VALUE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 扫描文件的一个区域：从start开始，返回所有起始偏移小于end的行，最后一行可以越过end读完
+     */
+    LineScanner(FileChannel channel, long start, long end, int bufferSize) {
+        this(null, channel, start, end, bufferSize);
+    }
+
+    private LineScanner(InputStream in, FileChannel channel, long start, long end, int bufferSize) {
+        this.in = in;
+        this.channel = channel;
+        this.channelPosition = start;
+        this.bufferOffset = start;
+        this.end = end;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * 前进到下一行，没有更多行时返回false；上一次line()返回的视图随之失效
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int newline = indexOf(buffer, (byte) '\n', lineStart, limit);
+            if (newline >= 0) {
+                return emit(newline, newline + 1);
+            }
+            if (eof) {
+                // 最后一行没有换行符
+                return lineStart < limit && emit(limit, limit);
+            }
+            fill();
+        }
+    }
+
+    private boolean emit(int lineEnd, int nextStart) {
+        long offset = bufferOffset + lineStart;
+        if (offset >= end) {
+            eof = true;
+            limit = lineStart;
+            return false;
+        }
+        int length = lineEnd - lineStart;
+        if (length > 0 && buffer[lineEnd - 1] == '\r') {
+            length--;
+        }
+        line.set(buffer, lineStart, length);
+        lineOffset = offset;
+        lineStart = nextStart;
+        return true;
+    }
+
+    // 把未处理完的半行移到缓冲区开头再读入新数据；一行放不下整个缓冲区时扩容
+    private void fill() throws IOException {
+        if (lineStart > 0) {
+            System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+            limit -= lineStart;
+            bufferOffset += lineStart;
+            lineStart = 0;
+        } else if (limit == buffer.length) {
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+        int n;
+        if (in != null) {
+            n = in.read(buffer, limit, buffer.length - limit);
+        } else {
+            n = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit), channelPosition);
+            if (n > 0) {
+                channelPosition += n;
+            }
+        }
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+
+    /**
+     * 当前行，只在下一次调用next()之前有效，需要保留时调用copy()
+     */
+    public ByteSlice line() {
+        return line;
+    }
+
+    /**
+     * 当前行在输入中的字节偏移
+     */
+    public long lineOffset() {
+        return lineOffset;
+    }
+
+    static int indexOf(byte[] array, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * 顺序处理文件的每一行，返回行数
+     */
+    static long forEachLine(Path file, LineHandler handler) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LineScanner scanner = new LineScanner(channel, 0, Long.MAX_VALUE, DEFAULT_BUFFER_SIZE);
+            while (scanner.next()) {
+                handler.onLine(scanner.line());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static <A> A parallelReduce(Path file, Supplier<A> supplier, BiConsumer<A, ByteSlice> accumulator,
+                                BinaryOperator<A> combiner) throws IOException {
+        return parallelReduce(file, ForkJoinPool.commonPool(), 16 << 20, supplier, accumulator, combiner);
+    }
+
+    /**
+     * 并行处理：文件按chunkSize切成若干段，每段对齐到行首后在fork-join线程池中各自扫描，
+     * 每段有自己的累加器和缓冲区，最后用combiner按文件顺序合并
+     *
+     * @param accumulator 在工作线程中并发调用，不同段使用不同的累加器对象
+     */
+    static <A> A parallelReduce(Path file, ForkJoinPool pool, long chunkSize, Supplier<A> supplier,
+                                BiConsumer<A, ByteSlice> accumulator, BinaryOperator<A> combiner) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChunkTask<A> task = new ChunkTask<>(channel, 0, channel.size(), chunkSize, supplier, accumulator, combiner);
+            try {
+                return pool.invoke(task);
+            } catch (ChunkFailure e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static class ChunkTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final long chunkSize;
+        private final Supplier<A> supplier;
+        private final BiConsumer<A, ByteSlice> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        ChunkTask(FileChannel channel, long start, long end, long chunkSize, Supplier<A> supplier,
+                  BiConsumer<A, ByteSlice> accumulator, BinaryOperator<A> combiner) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (end - start > chunkSize) {
+                long middle = start + (end - start) / 2;
+                ChunkTask<A> left = new ChunkTask<>(channel, start, middle, chunkSize, supplier, accumulator, combiner);
+                ChunkTask<A> right = new ChunkTask<>(channel, middle, end, chunkSize, supplier, accumulator, combiner);
+                right.fork();
+                A leftResult = left.compute();
+                return combiner.apply(leftResult, right.join());
+            }
+            A result = supplier.get();
+            try {
+                // 从start前一个字节开始，丢弃到第一个换行符为止的内容，得到第一个起始偏移不小于start的行；
+                // 越过start的那一行属于前一段，由前一段读完
+                LineScanner scanner = new LineScanner(channel, Math.max(0, start - 1), end, DEFAULT_BUFFER_SIZE);
+                if (start > 0 && !scanner.next()) {
+                    return result;
+                }
+                while (scanner.next()) {
+                    accumulator.accept(result, scanner.line());
+                }
+            } catch (IOException e) {
+                throw new ChunkFailure(e);
+            }
+            return result;
+        }
+    }
+
+    // 在fork-join任务中传递IOException
+    private static class ChunkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
+
+/**
+ * 逐行回调，line只在回调内有效
+ */
+@FunctionalInterface
+interface LineHandler {
+    void onLine(ByteSlice line) throws IOException;
+}
@@ -0,0 +1,102 @@
+package com.jonssonyan;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 统计日志中包含ERROR的行：readAllLines、BufferedReader与LineScanner顺序/并行的对比
+ */
+class LineScannerBenchmark {
+    /**
+     * 生成sizeMegabytes大小的日志文件，测完删除
+     */
+    static void run(Path file, int sizeMegabytes) throws IOException {
+        try {
+            generate(file, (long) sizeMegabytes << 20);
+            measure(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void measure(Path file) throws IOException {
+        byte[] error = "ERROR".getBytes(StandardCharsets.US_ASCII);
+        long fileSize = Files.size(file);
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            boolean print = round == 1;
+
+            if (fileSize < 512 << 20) { // 太大的文件会撑爆堆
+                long start = System.nanoTime();
+                List<String> lines = Files.readAllLines(file);
+                long count = 0;
+                for (String line : lines) {
+                    if (line.contains("ERROR")) {
+                        count++;
+                    }
+                }
+                report(print, "Files.readAllLines", fileSize, start, count);
+            }
+
+            long start = System.nanoTime();
+            long count = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains("ERROR")) {
+                        count++;
+                    }
+                }
+            }
+            report(print, "BufferedReader.readLine", fileSize, start, count);
+
+            start = System.nanoTime();
+            long[] errors = new long[1];
+            LineScanner.forEachLine(file, line -> {
+                if (line.contains(error)) {
+                    errors[0]++;
+                }
+            });
+            report(print, "LineScanner顺序", fileSize, start, errors[0]);
+
+            start = System.nanoTime();
+            long[] result = LineScanner.parallelReduce(file, () -> new long[1], (total, line) -> {
+                if (line.contains(error)) {
+                    total[0]++;
+                }
+            }, (a, b) -> new long[]{a[0] + b[0]});
+            report(print, "LineScanner并行(" + ForkJoinPool.commonPool().getParallelism() + "线程)", fileSize, start, result[0]);
+        }
+    }
+
+    private static void generate(Path file, long size) throws IOException {
+        String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+        Random random = new Random(42);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            long written = 0;
+            long time = 1_700_000_000_000L;
+            while (written < size) {
+                String line = time + " [" + levels[random.nextInt(levels.length)] + "] worker-" + random.nextInt(64)
+                        + " request id=" + random.nextInt(1_000_000) + " took " + random.nextInt(5000) + "ms\n";
+                byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+                out.write(bytes);
+                written += bytes.length;
+                time += random.nextInt(10);
+            }
+        }
+    }
+
+    private static void report(boolean print, String name, long size, long start, long count) {
+        if (print) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f MB/s, ERROR行数%d%n", name, size / seconds / (1 << 20), count);
+        }
+    }
+}
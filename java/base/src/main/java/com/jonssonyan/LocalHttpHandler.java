@@ -0,0 +1,105 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LocalHttpServer的请求处理器，请求头或请求体不完整时保留在入站缓冲区等待后续数据
+ */
+class LocalHttpHandler implements NioHandler {
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+
+    @Override
+    public void onRead(NioConnection connection, ByteBuffer in) throws IOException {
+        int end;
+        while ((end = headerEnd(in)) >= 0) {
+            byte[] head = new byte[end - in.position()];
+            in.duplicate().get(head);
+            String[] lines = new String(head, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+                }
+            }
+            long contentLength = contentLength(headers);
+            if (requestLine.length != 3 || contentLength < 0 || contentLength > Integer.MAX_VALUE - end) {
+                respond(connection, "400 Bad Request", new byte[0], true, false);
+                in.position(in.limit());
+                return;
+            }
+            if (in.limit() - end < contentLength) {
+                return; // 请求体还没收全
+            }
+            in.position(end);
+            byte[] body = new byte[(int) contentLength];
+            in.get(body);
+
+            boolean keepAlive = "HTTP/1.1".equals(requestLine[2])
+                    ? !"close".equalsIgnoreCase(headers.get("connection"))
+                    : "keep-alive".equalsIgnoreCase(headers.get("connection"));
+            byte[] response = "POST".equals(requestLine[0]) ? body
+                    : ("{\"path\":\"" + requestLine[1] + "\",\"server\":\"local\"}").getBytes(StandardCharsets.UTF_8);
+            respond(connection, "200 OK", response, !"HEAD".equals(requestLine[0]), keepAlive);
+            if (!keepAlive) {
+                in.position(in.limit());
+                return;
+            }
+        }
+        if (in.remaining() > MAX_HEADER_SIZE) {
+            respond(connection, "431 Request Header Fields Too Large", new byte[0], true, false);
+            in.position(in.limit());
+        }
+    }
+
+    // 请求头结束位置(空行之后)，不完整时返回-1
+    private static int headerEnd(ByteBuffer in) {
+        for (int i = in.position(); i + 3 < in.limit(); i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    // 没有请求体时为0，格式错误或使用chunked编码时返回-1
+    private static long contentLength(Map<String, String> headers) {
+        if (headers.containsKey("transfer-encoding")) {
+            return -1;
+        }
+        String value = headers.get("content-length");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 响应头和响应体放在同一个缓冲区里一次写出；HEAD请求只写响应头
+    private static void respond(NioConnection connection, String status, byte[] body, boolean sendBody, boolean keepAlive) {
+        byte[] head = ("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + (keepAlive ? "" : "Connection: close\r\n")
+                + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer response = ByteBuffer.allocate(head.length + (sendBody ? body.length : 0));
+        response.put(head);
+        if (sendBody) {
+            response.put(body);
+        }
+        response.flip();
+        connection.write(response);
+        if (!keepAlive) {
+            connection.closeAfterFlush();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 本地HTTP替身服务器 - 运行在NioServer上，验证和压测时不依赖外网
+ * GET返回固定JSON，POST原样回显请求体；支持长连接和流水线请求，请求体只支持Content-Length
+ * 每个响应的头和体合并成一次写出，连接上开启TCP_NODELAY，压测结果不受Nagle算法和延迟ACK影响
+ */
+class LocalHttpServer implements Closeable {
+    private final NioServer server;
+
+    public LocalHttpServer(int port) throws IOException {
+        server = new NioServer(port, new LocalHttpHandler());
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.jonssonyan;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 带名字、指标和运行时调整能力的线程池
+ */
+interface ManagedExecutor extends ExecutorService {
+    String getName();
+
+    PoolMetrics getMetrics();
+
+    /**
+     * 调整线程数；已提交的任务不受影响
+     */
+    void resize(int threads);
+}
@@ -0,0 +1,250 @@
+package com.jonssonyan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 受管理的线程池：代替Executors的工厂方法
+ * 每个池有名字(线程名为"名字-序号")并登记在这里，可以随时列出所有池的指标；
+ * 普通线程池使用有界队列和可配置的拒绝策略，工作窃取池基于ForkJoinPool并用许可数限制排队任务数；
+ * 所有池统计队列深度、活动线程数、任务排队时间和运行时间直方图(微秒)，并可以在运行时调整线程数。
+ * 与Executors一样，普通池和定时池的线程不是守护线程，用完必须shutdown，否则JVM不会退出
+ */
+final class ManagedExecutors {
+    static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    private static final ConcurrentHashMap<String, ManagedExecutor> POOLS = new ConcurrentHashMap<>();
+
+    private ManagedExecutors() {
+    }
+
+    /**
+     * 固定线程数，有界队列满时由提交线程自己执行(CALLER_RUNS)，形成背压而不是无限堆积
+     */
+    public static ManagedThreadPool fixed(String name, int threads) {
+        return fixed(name, threads, DEFAULT_QUEUE_CAPACITY, RejectionPolicy.CALLER_RUNS);
+    }
+
+    public static ManagedThreadPool fixed(String name, int threads, int queueCapacity, RejectionPolicy policy) {
+        return register(new ManagedThreadPool(name, threads, threads, 0, new ArrayBlockingQueue<>(queueCapacity), policy));
+    }
+
+    public static ManagedThreadPool single(String name) {
+        return fixed(name, 1);
+    }
+
+    /**
+     * 按需创建线程，空闲60秒回收；与newCachedThreadPool不同，线程数有上限，达到上限后按策略处理
+     */
+    public static ManagedThreadPool cached(String name, int maxThreads) {
+        return register(new ManagedThreadPool(name, 0, maxThreads, 60, new SynchronousQueue<>(), RejectionPolicy.CALLER_RUNS));
+    }
+
+    public static ManagedScheduledPool scheduled(String name, int threads) {
+        return register(new ManagedScheduledPool(name, threads));
+    }
+
+    /**
+     * 工作窃取池：每个工作线程有自己的任务队列，池内任务提交的子任务进本线程队列，空闲线程从其他队列窃取
+     */
+    public static ManagedWorkStealingPool workStealing(String name, int parallelism) {
+        return workStealing(name, parallelism, DEFAULT_QUEUE_CAPACITY, RejectionPolicy.CALLER_RUNS);
+    }
+
+    public static ManagedWorkStealingPool workStealing(String name, int parallelism, int queueCapacity, RejectionPolicy policy) {
+        return register(new ManagedWorkStealingPool(name, parallelism, queueCapacity, policy));
+    }
+
+    private static <E extends ManagedExecutor> E register(E executor) {
+        if (POOLS.putIfAbsent(executor.getName(), executor) != null) {
+            executor.shutdownNow();
+            throw new IllegalArgumentException("线程池名称重复: " + executor.getName());
+        }
+        return executor;
+    }
+
+    static void unregister(ManagedExecutor executor) {
+        POOLS.remove(executor.getName(), executor);
+    }
+
+    public static ManagedExecutor get(String name) {
+        return POOLS.get(name);
+    }
+
+    public static Collection<ManagedExecutor> getAll() {
+        return new ArrayList<>(POOLS.values());
+    }
+
+    /**
+     * 所有池的指标，每个池一行
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (ManagedExecutor executor : getAll()) {
+            report.append(executor.getMetrics()).append('\n');
+        }
+        return report.toString();
+    }
+
+    public static void shutdownAll() {
+        for (ManagedExecutor executor : getAll()) {
+            executor.shutdown();
+        }
+    }
+
+    // 非守护线程：池里还有任务时JVM不会在中途退出
+    static ThreadFactory threadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> new Thread(r, name + "-" + counter.incrementAndGet());
+    }
+}
+
+/**
+ * 定时任务池；排队时间是任务实际开始时间比计划时间晚了多少
+ */
+class ManagedScheduledPool extends ScheduledThreadPoolExecutor implements ManagedExecutor {
+    private final String name;
+    private final TaskMetrics metrics;
+
+    ManagedScheduledPool(String name, int threads) {
+        this(name, threads, new TaskMetrics());
+    }
+
+    private ManagedScheduledPool(String name, int threads, TaskMetrics metrics) {
+        super(threads, ManagedExecutors.threadFactory(name), RejectionPolicy.ABORT.handler(metrics));
+        this.name = name;
+        this.metrics = metrics;
+        setRemoveOnCancelPolicy(true);
+    }
+
+    // 包装的是交给父类的Runnable/Callable，父类队列里仍是它自己的任务对象，取消时能从队列中移除；
+    // execute和submit也经过这几个方法
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        metrics.submitted.increment();
+        Runnable task = new TimedScheduledTask<Void>(command, null, metrics, unit.toNanos(delay), 0);
+        return super.schedule(task, delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        metrics.submitted.increment();
+        Callable<V> task = new TimedScheduledTask<>(null, callable, metrics, unit.toNanos(delay), 0);
+        return super.schedule(task, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        metrics.submitted.increment();
+        Runnable task = new TimedScheduledTask<Void>(command, null, metrics, unit.toNanos(initialDelay), unit.toNanos(period));
+        return super.scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        metrics.submitted.increment();
+        Runnable task = new TimedScheduledTask<Void>(command, null, metrics, unit.toNanos(initialDelay), -unit.toNanos(delay));
+        return super.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void resize(int threads) {
+        setCorePoolSize(threads);
+    }
+
+    @Override
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(name, getPoolSize(), getActiveCount(), getCorePoolSize(),
+                getQueue().size(), Integer.MAX_VALUE, metrics);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        ManagedExecutors.unregister(this);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = super.shutdownNow();
+        ManagedExecutors.unregister(this);
+        return pending;
+    }
+
+    // 自己推算每次的计划执行时间，在执行前后记录指标；周期任务每次执行的都是同一个包装
+    private static class TimedScheduledTask<V> implements Runnable, Callable<V> {
+        private final Runnable runnable;
+        private final Callable<V> callable;
+        private final TaskMetrics metrics;
+        private final long period; // 与父类相同：正数为固定频率，负数为固定延迟，0为单次
+        private long scheduledAt; // 同一任务的各次执行不会并发，父类的队列保证前后可见
+
+        TimedScheduledTask(Runnable runnable, Callable<V> callable, TaskMetrics metrics, long delayNanos, long period) {
+            if (runnable == null && callable == null) {
+                throw new NullPointerException();
+            }
+            this.runnable = runnable;
+            this.callable = callable;
+            this.metrics = metrics;
+            this.period = period;
+            this.scheduledAt = System.nanoTime() + Math.max(0, delayNanos);
+        }
+
+        @Override
+        public void run() {
+            long start = started();
+            Throwable error = null;
+            try {
+                runnable.run();
+            } catch (RuntimeException | Error e) {
+                error = e;
+                throw e;
+            } finally {
+                finished(start, error);
+            }
+        }
+
+        @Override
+        public V call() throws Exception {
+            long start = started();
+            Throwable error = null;
+            try {
+                return callable.call();
+            } catch (Exception | Error e) {
+                error = e;
+                throw e;
+            } finally {
+                finished(start, error);
+            }
+        }
+
+        private long started() {
+            long start = System.nanoTime();
+            metrics.waitTime.record(Math.max(0, (start - scheduledAt) / 1000));
+            return start;
+        }
+
+        private void finished(long start, Throwable error) {
+            metrics.finished(this, start, error);
+            if (period > 0) {
+                scheduledAt += period;
+            } else if (period < 0) {
+                scheduledAt = System.nanoTime() - period;
+            }
+        }
+    }
+}
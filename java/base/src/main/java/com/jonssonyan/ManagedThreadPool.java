@@ -0,0 +1,86 @@
+package com.jonssonyan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有界队列的ThreadPoolExecutor
+ */
+class ManagedThreadPool extends ThreadPoolExecutor implements ManagedExecutor {
+    private final String name;
+    private final TaskMetrics metrics;
+    private final boolean fixedSize;
+
+    ManagedThreadPool(String name, int coreThreads, int maxThreads, long keepAliveSeconds, BlockingQueue<Runnable> queue, RejectionPolicy policy) {
+        this(name, coreThreads, maxThreads, keepAliveSeconds, queue, policy, new TaskMetrics());
+    }
+
+    private ManagedThreadPool(String name, int coreThreads, int maxThreads, long keepAliveSeconds, BlockingQueue<Runnable> queue,
+                              RejectionPolicy policy, TaskMetrics metrics) {
+        super(coreThreads, maxThreads, keepAliveSeconds, TimeUnit.SECONDS, queue, ManagedExecutors.threadFactory(name), policy.handler(metrics));
+        this.name = name;
+        this.metrics = metrics;
+        this.fixedSize = coreThreads == maxThreads;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        metrics.submitted.increment();
+        super.execute(new TimedTask(command, metrics, null));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 固定大小的池同时调整核心和最大线程数，按需创建的池只调整上限
+     */
+    @Override
+    public void resize(int threads) {
+        if (fixedSize) {
+            resize(threads, threads);
+        } else {
+            resize(getCorePoolSize(), threads);
+        }
+    }
+
+    // 两个值的设置顺序要保证任何时刻core <= max
+    public synchronized void resize(int coreThreads, int maxThreads) {
+        if (maxThreads >= getMaximumPoolSize()) {
+            setMaximumPoolSize(maxThreads);
+            setCorePoolSize(coreThreads);
+        } else {
+            setCorePoolSize(coreThreads);
+            setMaximumPoolSize(maxThreads);
+        }
+    }
+
+    @Override
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(name, getPoolSize(), getActiveCount(), getMaximumPoolSize(),
+                getQueue().size(), getQueue().remainingCapacity(), metrics);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        ManagedExecutors.unregister(this);
+    }
+
+    // 返回调用方提交的原始任务，而不是记录指标的包装
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = super.shutdownNow();
+        ManagedExecutors.unregister(this);
+        List<Runnable> tasks = new ArrayList<>(pending.size());
+        for (Runnable task : pending) {
+            tasks.add(task instanceof TimedTask ? ((TimedTask) task).getDelegate() : task);
+        }
+        return tasks;
+    }
+}
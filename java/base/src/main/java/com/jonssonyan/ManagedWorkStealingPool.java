@@ -0,0 +1,160 @@
+package com.jonssonyan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于ForkJoinPool(异步FIFO模式)的工作窃取池
+ * ForkJoinPool的并行度创建后不能修改，resize时换一个新池接收后续任务，旧池执行完已有任务后退出；
+ * 排队任务数用信号量限制，任务开始执行时归还许可
+ */
+class ManagedWorkStealingPool extends AbstractExecutorService implements ManagedExecutor {
+    private final String name;
+    private final int queueCapacity;
+    private final RejectionPolicy policy;
+    private final TaskMetrics metrics = new TaskMetrics();
+    private final Semaphore slots;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final List<ForkJoinPool> retired = new ArrayList<>();
+    private volatile ForkJoinPool pool;
+    private volatile boolean shutdown;
+
+    ManagedWorkStealingPool(String name, int parallelism, int queueCapacity, RejectionPolicy policy) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.slots = new Semaphore(queueCapacity);
+        this.pool = newPool(parallelism);
+    }
+
+    private ForkJoinPool newPool(int parallelism) {
+        return new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName(name + "-" + threadCounter.incrementAndGet());
+            return thread;
+        }, null, true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            metrics.rejected.increment();
+            throw new RejectedExecutionException("线程池已关闭: " + name);
+        }
+        metrics.submitted.increment();
+        if (!slots.tryAcquire()) {
+            metrics.rejected.increment();
+            switch (policy) {
+                case CALLER_RUNS:
+                    new TimedTask(command, metrics, null).run();
+                    return;
+                case DISCARD:
+                case DISCARD_OLDEST:
+                    return;
+                case BLOCK:
+                    try {
+                        slots.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("等待队列空位时被中断", e);
+                    }
+                    break;
+                default:
+                    throw new RejectedExecutionException("队列已满: " + name);
+            }
+        }
+        try {
+            pool.execute(new TimedTask(command, metrics, slots));
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void resize(int threads) {
+        if (shutdown || threads == pool.getParallelism()) {
+            return;
+        }
+        ForkJoinPool old = pool;
+        pool = newPool(threads);
+        old.shutdown();
+        retired.add(old);
+        retired.removeIf(ForkJoinPool::isTerminated);
+    }
+
+    @Override
+    public PoolMetrics getMetrics() {
+        ForkJoinPool current = pool;
+        int queued = queueCapacity - slots.availablePermits();
+        return new PoolMetrics(name, current.getPoolSize(), current.getActiveThreadCount(), current.getParallelism(),
+                queued, slots.availablePermits(), metrics);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        pool.shutdown();
+        for (ForkJoinPool old : retired) {
+            old.shutdown();
+        }
+        ManagedExecutors.unregister(this);
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown = true;
+        pool.shutdownNow();
+        for (ForkJoinPool old : retired) {
+            old.shutdownNow();
+        }
+        ManagedExecutors.unregister(this);
+        return new ArrayList<>(); // ForkJoinPool不返回未执行的任务
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        if (!shutdown || !pool.isTerminated()) {
+            return false;
+        }
+        for (ForkJoinPool old : retired) {
+            if (!old.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<ForkJoinPool> pools;
+        synchronized (this) {
+            pools = new ArrayList<>(retired);
+            pools.add(pool);
+        }
+        for (ForkJoinPool p : pools) {
+            if (!p.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return isTerminated();
+    }
+}
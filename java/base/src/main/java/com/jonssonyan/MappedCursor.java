@@ -0,0 +1,70 @@
+package com.jonssonyan;
+
+/**
+ * 映射文件上的顺序读取游标，非线程安全
+ */
+class MappedCursor {
+    private final MappedFile file;
+    private long position;
+
+    MappedCursor(MappedFile file, long position) {
+        this.file = file;
+        this.position = position;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public MappedCursor position(long position) {
+        this.position = position;
+        return this;
+    }
+
+    public long remaining() {
+        return file.size() - position;
+    }
+
+    public boolean hasRemaining() {
+        return position < file.size();
+    }
+
+    public byte readByte() {
+        byte value = file.getByte(position);
+        position += 1;
+        return value;
+    }
+
+    public short readShort() {
+        short value = file.getShort(position);
+        position += 2;
+        return value;
+    }
+
+    public int readInt() {
+        int value = file.getInt(position);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() {
+        long value = file.getLong(position);
+        position += 8;
+        return value;
+    }
+
+    public double readDouble() {
+        double value = file.getDouble(position);
+        position += 8;
+        return value;
+    }
+
+    public void read(byte[] dst, int off, int len) {
+        file.get(position, dst, off, len);
+        position += len;
+    }
+
+    public void skip(long bytes) {
+        position += bytes;
+    }
+}
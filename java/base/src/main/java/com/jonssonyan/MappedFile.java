@@ -0,0 +1,280 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存映射文件 - 超过2GB的文件按窗口切分为多段映射，用long偏移随机读写基本类型
+ * 相邻窗口重叠8个字节，任何不超过8字节的基本类型都能在一个窗口内完整读写，不必逐字节拼接；
+ * 数据由操作系统按页加载，不占用Java堆，close()时立即解除映射而不是等GC
+ */
+class MappedFile implements Closeable {
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30; // 1GB
+    private static final int OVERLAP = 8;
+
+    private final Path path;
+    private final long size;
+    private final int windowShift;
+    private final long windowMask;
+    private final MappedByteBuffer[] windows;
+    private final boolean writable;
+    private volatile boolean closed;
+
+    /**
+     * 只读映射整个文件
+     */
+    public static MappedFile openRead(Path path) throws IOException {
+        return new MappedFile(path, Files.size(path), false, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * 读写映射，文件不足size时扩展到size
+     */
+    public static MappedFile openReadWrite(Path path, long size) throws IOException {
+        return new MappedFile(path, size, true, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize 每段映射的大小，必须是2的幂，测试时可以设小以覆盖跨窗口的情况
+     */
+    MappedFile(Path path, long size, boolean writable, int windowSize) throws IOException {
+        if (Integer.bitCount(windowSize) != 1 || windowSize < 4096) {
+            throw new IllegalArgumentException("窗口大小必须是不小于4096的2的幂: " + windowSize);
+        }
+        this.path = path;
+        this.size = size;
+        this.writable = writable;
+        this.windowShift = Integer.numberOfTrailingZeros(windowSize);
+        this.windowMask = windowSize - 1;
+        int count = (int) ((size + windowSize - 1) >>> windowShift);
+        this.windows = new MappedByteBuffer[count];
+        StandardOpenOption[] options = writable
+                ? new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE}
+                : new StandardOpenOption[]{StandardOpenOption.READ};
+        // 映射建立后不依赖通道，通道可以立即关闭
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+            try {
+                for (int i = 0; i < count; i++) {
+                    long start = (long) i << windowShift;
+                    long length = Math.min(size - start, (long) windowSize + OVERLAP);
+                    windows[i] = channel.map(mode, start, length);
+                }
+            } catch (IOException | RuntimeException e) {
+                unmapAll();
+                throw e;
+            }
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // 定位到position所在的窗口，并检查[position, position + length)是否越界
+    private MappedByteBuffer window(long position, int length) {
+        if (closed) {
+            throw new IllegalStateException("文件已关闭: " + path);
+        }
+        if (position < 0 || position > size - length) {
+            throw new IndexOutOfBoundsException("位置越界: " + position + ", 长度" + length + ", 文件大小" + size);
+        }
+        return windows[(int) (position >>> windowShift)];
+    }
+
+    private int offset(long position) {
+        return (int) (position & windowMask);
+    }
+
+    public byte getByte(long position) {
+        return window(position, 1).get(offset(position));
+    }
+
+    public short getShort(long position) {
+        return window(position, 2).getShort(offset(position));
+    }
+
+    public int getInt(long position) {
+        return window(position, 4).getInt(offset(position));
+    }
+
+    public long getLong(long position) {
+        return window(position, 8).getLong(offset(position));
+    }
+
+    public float getFloat(long position) {
+        return window(position, 4).getFloat(offset(position));
+    }
+
+    public double getDouble(long position) {
+        return window(position, 8).getDouble(offset(position));
+    }
+
+    /**
+     * 批量读取，可以跨越多个窗口
+     */
+    public void get(long position, byte[] dst, int off, int len) {
+        window(position, len);
+        while (len > 0) {
+            ByteBuffer view = windows[(int) (position >>> windowShift)].duplicate();
+            int offset = offset(position);
+            int n = Math.min(len, (int) Math.min(windowMask + 1 - offset, size - position));
+            view.position(offset);
+            view.get(dst, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void putByte(long position, byte value) {
+        writableWindow(position, 1).put(offset(position), value);
+    }
+
+    public void putShort(long position, short value) {
+        writableWindow(position, 2).putShort(offset(position), value);
+    }
+
+    public void putInt(long position, int value) {
+        writableWindow(position, 4).putInt(offset(position), value);
+    }
+
+    public void putLong(long position, long value) {
+        writableWindow(position, 8).putLong(offset(position), value);
+    }
+
+    public void putFloat(long position, float value) {
+        writableWindow(position, 4).putFloat(offset(position), value);
+    }
+
+    public void putDouble(long position, double value) {
+        writableWindow(position, 8).putDouble(offset(position), value);
+    }
+
+    public void put(long position, byte[] src, int off, int len) {
+        writableWindow(position, len);
+        while (len > 0) {
+            ByteBuffer view = windows[(int) (position >>> windowShift)].duplicate();
+            int offset = offset(position);
+            int n = Math.min(len, (int) Math.min(windowMask + 1 - offset, size - position));
+            view.position(offset);
+            view.put(src, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private MappedByteBuffer writableWindow(long position, int length) {
+        if (!writable) {
+            throw new UnsupportedOperationException("只读映射: " + path);
+        }
+        return window(position, length);
+    }
+
+    /**
+     * 从position开始顺序读取
+     */
+    public MappedCursor cursor(long position) {
+        return new MappedCursor(this, position);
+    }
+
+    /**
+     * 把修改过的页写回磁盘
+     */
+    public void force() {
+        if (writable && !closed) {
+            for (MappedByteBuffer window : windows) {
+                window.force();
+            }
+        }
+    }
+
+    /**
+     * 解除映射；关闭后其他线程不能再访问，否则访问已解除映射的内存会导致JVM崩溃
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        force();
+        unmapAll();
+    }
+
+    private void unmapAll() {
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i] != null) {
+                BufferUnmapper.unmap(windows[i]);
+                windows[i] = null;
+            }
+        }
+    }
+}
+
+/**
+ * 立即释放直接内存或解除文件映射
+ * Java 9+通过Unsafe.invokeCleaner，Java 8通过DirectBuffer.cleaner()，都用反射调用以兼容两类版本；
+ * 都不可用时什么也不做，映射在缓冲区被GC回收时才解除
+ */
+class BufferUnmapper {
+    private static final Unmapper UNMAPPER = lookup();
+
+    @FunctionalInterface
+    private interface Unmapper {
+        void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private static Unmapper lookup() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8没有invokeCleaner
+        }
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    clean.invoke(cleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return UNMAPPER != null;
+    }
+
+    static void unmap(ByteBuffer buffer) {
+        if (UNMAPPER == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            UNMAPPER.unmap(buffer);
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.jonssonyan;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 读取大文件的几种方式对比：顺序求和与随机读取
+ */
+class MappedFileBenchmark {
+    /**
+     * 生成sizeMegabytes大小的测试文件，测完删除
+     */
+    static void run(Path file, long sizeMegabytes) throws IOException {
+        long size = sizeMegabytes << 20;
+        try {
+            try (MappedFile writer = MappedFile.openReadWrite(file, size)) {
+                for (long position = 0; position < size; position += 8) {
+                    writer.putLong(position, position);
+                }
+            }
+            measure(file, size);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void measure(Path file, long size) throws IOException {
+        for (int round = 0; round < 3; round++) { // 前几轮包含JIT预热
+            long start = System.nanoTime();
+            long sum = 0;
+            try (FileInputStream in = new FileInputStream(file.toFile())) {
+                byte[] buffer = new byte[1024]; // 与JavaIO中的读法相同
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    for (int i = 0; i < n; i++) {
+                        sum += buffer[i];
+                    }
+                }
+            }
+            report("FileInputStream(1KB缓冲)", size, start, sum, round);
+
+            start = System.nanoTime();
+            sum = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile()), 64 * 1024))) {
+                for (long i = 0; i < size; i += 8) {
+                    sum += in.readLong();
+                }
+            }
+            report("DataInputStream.readLong", size, start, sum, round);
+
+            if (size <= Integer.MAX_VALUE - 8) {
+                start = System.nanoTime();
+                sum = 0;
+                ByteBuffer all = ByteBuffer.wrap(Files.readAllBytes(file)); // 整个文件进堆
+                for (int i = 0; i < size; i += 8) {
+                    sum += all.getLong(i);
+                }
+                report("Files.readAllBytes", size, start, sum, round);
+            }
+
+            start = System.nanoTime();
+            sum = 0;
+            try (MappedFile mapped = MappedFile.openRead(file)) {
+                MappedCursor cursor = mapped.cursor(0);
+                while (cursor.remaining() >= 8) {
+                    sum += cursor.readLong();
+                }
+            }
+            report("MappedFile顺序读取", size, start, sum, round);
+        }
+
+        // 随机读取：每次读一个long
+        int reads = 1_000_000;
+        Random random = new Random(1);
+        long[] positions = new long[reads];
+        for (int i = 0; i < reads; i++) {
+            positions[i] = (random.nextLong() & Long.MAX_VALUE) % (size / 8) * 8;
+        }
+        long start = System.nanoTime();
+        long sum = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            for (long position : positions) {
+                raf.seek(position);
+                sum += raf.readLong();
+            }
+        }
+        System.out.printf("RandomAccessFile随机读%d次: %dms (校验和%d)%n", reads, (System.nanoTime() - start) / 1_000_000, sum);
+        start = System.nanoTime();
+        sum = 0;
+        try (MappedFile mapped = MappedFile.openRead(file)) {
+            for (long position : positions) {
+                sum += mapped.getLong(position);
+            }
+        }
+        System.out.printf("MappedFile随机读%d次: %dms (校验和%d)%n", reads, (System.nanoTime() - start) / 1_000_000, sum);
+    }
+
+    private static void report(String name, long size, long start, long checksum, int round) {
+        if (round == 2) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f MB/s (校验和%d)%n", name, size / seconds / (1 << 20), checksum);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.jonssonyan;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个连接的读写状态
+ * 读：未消费完的半包数据保存在inbound中，与下一次读到的数据拼接
+ * 写：写不完的数据(ByteBuffer或FileRegion)排队在outbound中，并注册OP_WRITE等待通道可写；
+ * 排队字节数超过高水位后连接变为不可写，写出到低水位以下恢复可写，两次变化都会回调处理器
+ * 开启TLS时读写都经过TlsChannel，处理器看到的始终是明文
+ */
+class NioConnection {
+    private static final int MAX_GATHER = 64;
+
+    private final NioWorker worker;
+    private final SocketChannel channel;
+    private final Deque<Object> outbound = new ArrayDeque<>(); // ByteBuffer或FileRegion，按提交顺序写出
+    private final int lowWaterMark;
+    private final int highWaterMark;
+    // 已提交但还没写入内核的字节数，包括其他线程提交、尚未转交到worker线程的数据
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean unwritable = new AtomicBoolean();
+    SelectionKey key;
+    TlsChannel tls; // 未开启TLS时为null
+    private PooledBuffer inbound;
+    private boolean closeAfterFlush;
+    private boolean closed;
+    private Object attachment;
+
+    NioConnection(NioWorker worker, SocketChannel channel, int lowWaterMark, int highWaterMark) {
+        this.worker = worker;
+        this.channel = channel;
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+    }
+
+    void handleRead(ByteBuffer readBuffer) throws IOException {
+        if (tls != null) {
+            handleTlsRead(readBuffer);
+            return;
+        }
+        readBuffer.clear();
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead < 0) {
+            close();
+            return;
+        }
+        if (bytesRead == 0) {
+            return;
+        }
+        readBuffer.flip();
+        deliver(readBuffer);
+    }
+
+    private void handleTlsRead(ByteBuffer readBuffer) throws IOException {
+        // 一次读到的密文可能包含多条记录，反复解密直到没有新的明文
+        int bytesRead;
+        while (!closed && (bytesRead = tls.read((ByteBuffer) readBuffer.clear())) != 0) {
+            if (bytesRead < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            deliver(readBuffer);
+        }
+        if (!closed) {
+            flush(); // 握手过程中可能要回写握手消息，握手完成后发出排队的应用数据
+        }
+    }
+
+    // 握手任务在其他线程完成后回到worker线程继续读写
+    void resumeTls() {
+        if (closed) {
+            return;
+        }
+        try {
+            handleTlsRead(worker.readBuffer());
+        } catch (IOException e) {
+            close();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    private void deliver(ByteBuffer readBuffer) throws IOException {
+        ByteBuffer in = readBuffer;
+        if (inbound != null) {
+            // 拼接上一次剩余的半包
+            ensureInboundCapacity(readBuffer.remaining());
+            in = inbound.buffer();
+            in.put(readBuffer);
+            in.flip();
+        }
+
+        worker.handler().onRead(this, in);
+
+        if (closed) {
+            return;
+        }
+        if (in.hasRemaining()) {
+            if (in == readBuffer) {
+                // 半包只在真正剩余时才从池中借缓冲区，空闲的长连接不占用内存；预留的空间不超过池的最大级别
+                inbound = BufferPool.DEFAULT.acquire(growCapacity(in.remaining(), in.remaining()));
+                inbound.buffer().put(in);
+            } else {
+                in.compact();
+            }
+        } else {
+            releaseInbound();
+        }
+    }
+
+    private void ensureInboundCapacity(int extra) {
+        ByteBuffer current = inbound.buffer();
+        if (current.remaining() >= extra) {
+            return;
+        }
+        PooledBuffer bigger = BufferPool.DEFAULT.acquire(growCapacity(current.capacity(), current.position() + extra));
+        current.flip();
+        bigger.buffer().put(current);
+        inbound.release();
+        inbound = bigger;
+    }
+
+    // 按两倍增长，但不为了预留空间越过池的最大级别；只有单个半包本身超过最大级别时才申请不入池的大缓冲区
+    private static int growCapacity(int capacity, int required) {
+        return Math.max(required, Math.min(capacity * 2, BufferPool.MAX_POOLED_CAPACITY));
+    }
+
+    private void releaseInbound() {
+        if (inbound != null) {
+            inbound.release();
+            inbound = null;
+        }
+    }
+
+    /**
+     * 写出数据，可以在任意线程调用；写不完的部分会排队等待OP_WRITE
+     * 传入多个缓冲区时(如帧头+帧体)通过聚集写一次系统调用写出
+     * 写入不会因为队列过长而失败，生产者应在isWritable()为false时暂停
+     */
+    public void write(ByteBuffer... data) {
+        long bytes = 0;
+        for (ByteBuffer buffer : data) {
+            bytes += buffer.remaining();
+        }
+        // 在调用线程中立即计入排队字节数，其他线程的生产者也能马上看到不可写
+        if (pendingBytes.addAndGet(bytes) > highWaterMark && unwritable.compareAndSet(false, true)) {
+            fireWritabilityChanged();
+        }
+        if (!worker.inWorkerThread()) {
+            worker.execute(() -> enqueue(data));
+            return;
+        }
+        enqueue(data);
+    }
+
+    /**
+     * 把文件的一段直接从页缓存发送到套接字(FileChannel.transferTo，Linux上是sendfile)，数据不经过用户态缓冲区
+     * 与write()共用出站队列，保证和前后写入的数据按顺序发出；发送完成或连接关闭时释放region
+     */
+    public void transferFile(FileRegion region) {
+        if (pendingBytes.addAndGet(region.remaining()) > highWaterMark && unwritable.compareAndSet(false, true)) {
+            fireWritabilityChanged();
+        }
+        if (!worker.inWorkerThread()) {
+            worker.execute(() -> enqueue(new Object[]{region}));
+            return;
+        }
+        enqueue(new Object[]{region});
+    }
+
+    private void enqueue(Object[] data) {
+        if (closed) {
+            releaseRegions(data);
+            return;
+        }
+        Collections.addAll(outbound, data);
+        try {
+            flush();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * 出站队列低于高水位时为true
+     */
+    public boolean isWritable() {
+        return !unwritable.get();
+    }
+
+    /**
+     * 排队等待写出的字节数
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * 暂停或恢复从该连接读取数据，暂停期间对端的数据留在内核缓冲区，TCP窗口会逐渐收缩让对端放慢发送
+     */
+    public void setAutoRead(boolean autoRead) {
+        if (!worker.inWorkerThread()) {
+            worker.execute(() -> setAutoRead(autoRead));
+            return;
+        }
+        if (closed || !key.isValid()) {
+            return;
+        }
+        int ops = key.interestOps();
+        key.interestOps(autoRead ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+    }
+
+    private void fireWritabilityChanged() {
+        // 回调总是在worker线程中执行，且与状态变化的先后顺序一致
+        worker.execute(() -> {
+            if (closed) {
+                return;
+            }
+            try {
+                worker.handler().onWritabilityChanged(this);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                close();
+            }
+        });
+    }
+
+    void flush() throws IOException {
+        if (tls != null) {
+            flushTls();
+            return;
+        }
+        while (!outbound.isEmpty()) {
+            if (outbound.peek() instanceof FileRegion) {
+                FileRegion region = (FileRegion) outbound.peek();
+                written(region.transferTo(channel));
+                if (region.remaining() > 0) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outbound.poll();
+                region.release();
+                continue;
+            }
+            ByteBuffer[] batch = gatherBatch();
+            written(channel.write(batch));
+            while (outbound.peek() instanceof ByteBuffer && !((ByteBuffer) outbound.peek()).hasRemaining()) {
+                outbound.poll();
+            }
+            if (batch[batch.length - 1].hasRemaining()) {
+                // 发送缓冲区已满，等待可写事件
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if (closeAfterFlush) {
+            close();
+        }
+    }
+
+    // TLS模式下数据要先加密，文件也只能读到用户态再加密发送，无法零拷贝
+    private void flushTls() throws IOException {
+        tls.write(new ByteBuffer[0]); // 推进握手、写出积压的密文
+        while (!outbound.isEmpty() && !tls.hasPendingOutput()) {
+            long consumed;
+            if (outbound.peek() instanceof FileRegion) {
+                FileRegion region = (FileRegion) outbound.peek();
+                consumed = region.transferTo(tls);
+                if (region.remaining() == 0) {
+                    outbound.poll();
+                    region.release();
+                }
+            } else {
+                consumed = tls.write(gatherBatch());
+                while (outbound.peek() instanceof ByteBuffer && !((ByteBuffer) outbound.peek()).hasRemaining()) {
+                    outbound.poll();
+                }
+            }
+            written(consumed);
+            if (consumed == 0) {
+                break; // 握手未完成或正在执行握手任务
+            }
+        }
+        if (tls.hasPendingOutput()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return;
+        }
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if (closeAfterFlush && outbound.isEmpty()) {
+            close();
+        }
+    }
+
+    private void written(long bytes) {
+        if (pendingBytes.addAndGet(-bytes) <= lowWaterMark && unwritable.compareAndSet(true, false)) {
+            fireWritabilityChanged();
+        }
+    }
+
+    // 从队头取出最多MAX_GATHER个连续的ByteBuffer用于一次聚集写，遇到FileRegion为止
+    private ByteBuffer[] gatherBatch() {
+        int count = 0;
+        for (Object item : outbound) {
+            if (!(item instanceof ByteBuffer) || count == MAX_GATHER) {
+                break;
+            }
+            count++;
+        }
+        ByteBuffer[] batch = new ByteBuffer[count];
+        Iterator<Object> iterator = outbound.iterator();
+        for (int i = 0; i < count; i++) {
+            batch[i] = (ByteBuffer) iterator.next();
+        }
+        return batch;
+    }
+
+    private static void releaseRegions(Object[] items) {
+        for (Object item : items) {
+            if (item instanceof FileRegion) {
+                ((FileRegion) item).release();
+            }
+        }
+    }
+
+    /**
+     * 待排队数据全部写出后再关闭连接
+     */
+    public void closeAfterFlush() {
+        if (!worker.inWorkerThread()) {
+            worker.execute(this::closeAfterFlush);
+            return;
+        }
+        closeAfterFlush = true;
+        if (outbound.isEmpty()) {
+            close();
+        }
+    }
+
+    public void close() {
+        if (!worker.inWorkerThread()) {
+            worker.execute(this::close);
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseRegions(outbound.toArray());
+        outbound.clear();
+        pendingBytes.set(0);
+        releaseInbound();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            if (tls != null) {
+                tls.close(); // 尽力发出close_notify
+            } else {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        worker.connectionClosed(this);
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    public SocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * TLS会话，未开启TLS或握手尚未完成时为null
+     */
+    public SSLSession getSslSession() {
+        return tls != null && tls.handshakeFuture().isDone() && !tls.handshakeFuture().isCompletedExceptionally()
+                ? tls.getSession() : null;
+    }
+
+    public Object attachment() {
+        return attachment;
+    }
+
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+}
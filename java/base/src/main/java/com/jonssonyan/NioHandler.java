@@ -0,0 +1,38 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * NIO连接事件回调
+ */
+interface NioHandler {
+    /**
+     * 连接注册到worker后调用
+     */
+    default void onOpen(NioConnection connection) {
+    }
+
+    /**
+     * 有数据可读时调用
+     *
+     * @param connection 当前连接
+     * @param in         已flip的入站数据，未消费的字节会保留到下一次读事件(处理半包)
+     */
+    void onRead(NioConnection connection, ByteBuffer in) throws IOException;
+
+    /**
+     * 连接的可写状态变化时在worker线程中调用，通过connection.isWritable()获取当前状态
+     * 默认实现在不可写时暂停读取，对端收不到响应就不会继续发请求，慢客户端的内存占用因此有上限；
+     * 主动推送数据的处理器应覆盖此方法，在不可写时暂停生产、恢复可写后继续
+     */
+    default void onWritabilityChanged(NioConnection connection) {
+        connection.setAutoRead(connection.isWritable());
+    }
+
+    /**
+     * 连接关闭后调用
+     */
+    default void onClose(NioConnection connection) {
+    }
+}
@@ -0,0 +1,188 @@
+package com.jonssonyan;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多Reactor NIO服务器
+ * 一个boss选择器负责接收连接，按轮询方式分发给N个worker选择器(默认每个CPU核心一个)
+ */
+class NioServer implements Closeable {
+    private final int port;
+    private final NioHandler handler;
+    private final NioWorker[] workers;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private int lowWaterMark = 32 * 1024;
+    private int highWaterMark = 64 * 1024;
+    private SSLContext sslContext;
+    private Executor handshakeExecutor;
+
+    private Selector bossSelector;
+    private ServerSocketChannel serverChannel;
+    private Thread bossThread;
+    private volatile boolean running;
+
+    public NioServer(int port, NioHandler handler) {
+        this(port, Runtime.getRuntime().availableProcessors(), handler);
+    }
+
+    public NioServer(int port, int workerCount, NioHandler handler) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("worker数量必须大于0: " + workerCount);
+        }
+        this.port = port;
+        this.handler = handler;
+        this.workers = new NioWorker[workerCount];
+    }
+
+    /**
+     * 设置每个连接出站队列的高低水位，需要在start()之前调用
+     * 排队字节数超过高水位时连接变为不可写，降到低水位以下才恢复可写，两者之间留出间隔避免状态频繁切换
+     */
+    public NioServer setWriteBufferWaterMark(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("水位设置不合法: low=" + low + ", high=" + high);
+        }
+        this.lowWaterMark = low;
+        this.highWaterMark = high;
+        return this;
+    }
+
+    /**
+     * 开启TLS，需要在start()之前调用；处理器收到和写出的仍是明文
+     *
+     * @param handshakeExecutor 执行握手计算的线程池，worker线程只负责收发握手消息
+     */
+    public NioServer enableTls(SSLContext sslContext, Executor handshakeExecutor) {
+        this.sslContext = sslContext;
+        this.handshakeExecutor = handshakeExecutor;
+        return this;
+    }
+
+    public NioServer enableTls(SSLContext sslContext) {
+        return enableTls(sslContext, TlsChannel.DEFAULT_TASK_EXECUTOR);
+    }
+
+    SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    Executor getHandshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+    int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * 绑定端口并启动boss线程和所有worker线程
+     */
+    public void start() throws IOException {
+        bossSelector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 1024); // 较大的backlog应对连接洪峰
+        serverChannel.configureBlocking(false);
+        serverChannel.register(bossSelector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new NioWorker(this, "nio-worker-" + i);
+            workers[i].start();
+        }
+
+        running = true;
+        bossThread = new Thread(this::acceptLoop, "nio-boss");
+        bossThread.start();
+    }
+
+    // boss线程 - 只负责accept，读写全部交给worker
+    private void acceptLoop() {
+        try {
+            while (running) {
+                bossSelector.select();
+                Iterator<SelectionKey> keyIterator = bossSelector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        acceptAll();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // 服务器关闭
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // 一次就绪事件中尽可能多地accept，减少select次数
+    private void acceptAll() throws IOException {
+        SocketChannel client;
+        while ((client = serverChannel.accept()) != null) {
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            client.setOption(StandardSocketOptions.SO_KEEPALIVE, true); // 长连接
+            NioWorker worker = workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+            worker.register(client);
+        }
+    }
+
+    public NioHandler getHandler() {
+        return handler;
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    void connectionOpened() {
+        connectionCount.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        connectionCount.decrementAndGet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (bossSelector != null) {
+            bossSelector.close();
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (NioWorker worker : workers) {
+            if (worker != null) {
+                worker.shutdown();
+            }
+        }
+        if (handler instanceof Closeable) {
+            ((Closeable) handler).close(); // 处理器持有的资源(如文件句柄缓存)随服务器一起释放
+        }
+    }
+}
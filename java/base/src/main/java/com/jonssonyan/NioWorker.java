@@ -0,0 +1,148 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * worker线程 - 每个worker持有一个独立的选择器，负责若干连接的读写
+ */
+class NioWorker extends Thread {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final NioServer server;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // 同一个worker上的连接共享一个池化的读缓冲区，避免每次读都分配
+    private final PooledBuffer readBuffer = BufferPool.DEFAULT.acquire(READ_BUFFER_SIZE);
+    private volatile boolean running = true;
+
+    NioWorker(NioServer server, String name) throws IOException {
+        super(name);
+        this.server = server;
+        this.selector = Selector.open();
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                NioConnection connection = new NioConnection(this, channel, server.getLowWaterMark(), server.getHighWaterMark());
+                if (server.getSslContext() != null) {
+                    connection.tls = new TlsChannel(channel, TlsChannel.serverEngine(server.getSslContext()),
+                            server.getHandshakeExecutor(), () -> execute(connection::resumeTls));
+                }
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                server.connectionOpened();
+                server.getHandler().onOpen(connection);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * 在worker线程中执行任务，保证同一连接的状态只被一个线程修改
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    boolean inWorkerThread() {
+        return Thread.currentThread() == this;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    processKey(key);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // worker关闭
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.handleRead(readBuffer.buffer());
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException e) {
+            // 对端重置等错误直接关闭连接
+            connection.close();
+        } catch (RuntimeException e) {
+            // 业务回调异常不能影响worker上的其他连接
+            e.printStackTrace();
+            connection.close();
+        }
+    }
+
+    NioHandler handler() {
+        return server.getHandler();
+    }
+
+    ByteBuffer readBuffer() {
+        return readBuffer.buffer();
+    }
+
+    void connectionClosed(NioConnection connection) {
+        server.connectionClosed();
+        server.getHandler().onClose(connection);
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection) {
+                ((NioConnection) attachment).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        readBuffer.release();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.jonssonyan;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 并行解压ParallelGzipOutputStream写出的文件
+ * 先顺着成员头部的长度字段跳读建立索引，再按块并行解压，按原顺序写出；
+ * 也可以只解压包含某个原始偏移的那一块。不带索引信息或索引长度不可信的文件退回到单线程的GZIPInputStream
+ */
+class ParallelGunzip {
+    private final Path file;
+    private final List<GzipBlock> blocks; // 普通gzip文件时为null
+
+    private ParallelGunzip(Path file, List<GzipBlock> blocks) {
+        this.file = file;
+        this.blocks = blocks;
+    }
+
+    /**
+     * 扫描所有成员头部建立索引，只读取每个成员的头部
+     */
+    static ParallelGunzip open(Path file) throws IOException {
+        List<GzipBlock> blocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long compressedOffset = 0;
+            long rawOffset = 0;
+            byte[] headerBytes = new byte[GzipMembers.HEADER_SIZE];
+            ByteBuffer header = ByteBuffer.wrap(headerBytes);
+            while (compressedOffset < size) {
+                header.clear();
+                while (header.hasRemaining() && channel.read(header, compressedOffset + header.position()) > 0) {
+                    // 读满头部
+                }
+                long[] sizes = GzipMembers.parseHeader(headerBytes, header.position());
+                if (sizes == null || !GzipMembers.isValidSizes(sizes[0], sizes[1]) || compressedOffset + sizes[0] > size) {
+                    return new ParallelGunzip(file, null);
+                }
+                blocks.add(new GzipBlock(compressedOffset, (int) sizes[0], rawOffset, (int) sizes[1]));
+                compressedOffset += sizes[0];
+                rawOffset += sizes[1];
+            }
+        }
+        return new ParallelGunzip(file, blocks);
+    }
+
+    public boolean isIndexed() {
+        return blocks != null;
+    }
+
+    public List<GzipBlock> getBlocks() {
+        return blocks == null ? Collections.emptyList() : Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * 解压后的总长度，没有索引时返回-1
+     */
+    public long getUncompressedSize() {
+        if (blocks == null) {
+            return -1;
+        }
+        return blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).rawOffset + blocks.get(blocks.size() - 1).rawSize;
+    }
+
+    /**
+     * 并行解压全部数据并按顺序写到out，同时在解压中的块数有上限
+     */
+    public void decompress(OutputStream out, ExecutorService pool) throws IOException {
+        if (blocks == null) {
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)), 64 * 1024)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            return;
+        }
+        int maxInFlight = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            try {
+                for (GzipBlock block : blocks) {
+                    pending.add(pool.submit(() -> inflateBlock(channel, block)));
+                    if (pending.size() >= maxInFlight) {
+                        out.write(pending.poll().get());
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    out.write(pending.poll().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待解压时被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException("解压失败", cause);
+            } finally {
+                for (Future<byte[]> future : pending) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 只解压包含原始偏移position的那一块，返回该块的全部原始数据
+     */
+    public byte[] readBlockAt(long position) throws IOException {
+        if (blocks == null) {
+            throw new UnsupportedOperationException("普通gzip文件不支持随机访问: " + file);
+        }
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            GzipBlock block = blocks.get(mid);
+            if (position < block.rawOffset) {
+                high = mid - 1;
+            } else if (position >= block.rawOffset + block.rawSize) {
+                low = mid + 1;
+            } else {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    return inflateBlock(channel, block);
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException("偏移超出文件原始长度: " + position);
+    }
+
+    // 各块通过定位读取互不干扰，可以在多个线程中同时进行
+    private static byte[] inflateBlock(FileChannel channel, GzipBlock block) throws IOException {
+        byte[] member = new byte[block.compressedSize];
+        ByteBuffer buffer = ByteBuffer.wrap(member);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, block.compressedOffset + buffer.position()) < 0) {
+                throw new EOFException("文件被截断");
+            }
+        }
+        byte[] raw = new byte[block.rawSize];
+        GzipMembers.inflate(member, member.length, raw, block.rawSize);
+        return raw;
+    }
+}
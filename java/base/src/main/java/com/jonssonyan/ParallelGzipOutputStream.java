@@ -0,0 +1,157 @@
+package com.jonssonyan;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * 并行GZIP压缩
+ * 输入按固定大小切块，每块在线程池中独立压缩成一个完整的gzip成员，按顺序拼接成标准的多成员gzip流，
+ * gunzip和GZIPInputStream都能直接解压。每个成员头部的扩展字段记录了成员的压缩大小和原始大小，
+ * ParallelGunzip据此不解压就能建立索引，再把各块并行解压
+ */
+class ParallelGzipOutputStream extends FilterOutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final ExecutorService pool;
+    private final int blockSize;
+    private final int level;
+    private final int maxInFlight;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<byte[]> freeBlocks = new ConcurrentLinkedQueue<>();
+    private byte[] block;
+    private int blockLength;
+    private boolean wroteMember;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param blockSize 每块的原始大小，块越大压缩率越接近单线程gzip，但并行粒度越粗
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService pool, int blockSize, int level) {
+        super(out);
+        if (blockSize <= 0 || blockSize > GzipMembers.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("块大小必须在(0, " + GzipMembers.MAX_BLOCK_SIZE + "]之间: " + blockSize);
+        }
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9)) {
+            throw new IllegalArgumentException("压缩级别必须在0~9之间: " + level);
+        }
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.level = level;
+        // 同时在压缩的块数有上限，写入比压缩快时调用方在write中等待，内存占用有界
+        this.maxInFlight = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] input = block;
+        int length = blockLength;
+        pending.add(pool.submit(() -> {
+            try {
+                return GzipMembers.compress(input, length, level);
+            } finally {
+                freeBlocks.add(input);
+            }
+        }));
+        wroteMember = true;
+        byte[] free = freeBlocks.poll();
+        block = free != null ? free : new byte[blockSize];
+        blockLength = 0;
+        while (pending.size() >= maxInFlight) {
+            writeCompleted(pending.poll());
+        }
+        // 顺手写出已经完成的块，不等到队列满
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeCompleted(pending.poll());
+        }
+    }
+
+    private void writeCompleted(Future<byte[]> future) throws IOException {
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待压缩时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("压缩失败", e.getCause());
+        }
+    }
+
+    /**
+     * 把当前不满一块的数据也压缩成一个成员并写出所有已提交的块
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeCompleted(pending.poll());
+        }
+        out.flush();
+    }
+
+    /**
+     * 写完剩余数据但不关闭底层流
+     */
+    public void finish() throws IOException {
+        if (blockLength > 0 || !wroteMember) {
+            submitBlock(); // 空输入也输出一个空成员，保证结果是合法的gzip
+        }
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("流已关闭");
+        }
+    }
+}
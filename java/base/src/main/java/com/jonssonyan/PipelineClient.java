@@ -0,0 +1,293 @@
+package com.jonssonyan;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流水线请求/响应客户端
+ * 一个SocketChannel上同时有多个在途请求，每个请求带请求ID，响应可以乱序返回，按ID完成对应的CompletableFuture
+ * 发送方不必等待上一个响应，单连接的吞吐不再受往返时延限制
+ */
+class PipelineClient implements Closeable {
+    private static final int MAX_GATHER = 64;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_LENGTH = 5; // 长度头最长为varint的5个字节
+
+    private final SocketChannel channel;
+    private final FrameCodec codec;
+    private final Selector selector;
+    private final Thread ioThread;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> inflight = new ConcurrentHashMap<>();
+    private final Queue<ByteBuffer[]> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupScheduled = new AtomicBoolean();
+    private final TlsChannel tls; // 未开启TLS时为null
+    private volatile boolean tlsResume;
+    // 以下字段只在IO线程中访问
+    private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+    private PooledBuffer readBuffer = BufferPool.DEFAULT.acquire(READ_BUFFER_SIZE);
+    private SelectionKey key;
+    private volatile boolean closed;
+
+    public PipelineClient(InetSocketAddress address, FrameCodec codec) throws IOException {
+        this(address, codec, null);
+    }
+
+    /**
+     * @param sslContext 不为null时使用TLS；同一个上下文连接同一地址时会尝试恢复之前的会话，省去完整握手
+     */
+    public PipelineClient(InetSocketAddress address, FrameCodec codec, SSLContext sslContext) throws IOException {
+        this.codec = codec;
+        this.channel = SocketChannel.open(address);
+        this.channel.configureBlocking(false);
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // TLS握手由多个小消息组成，不能被Nagle算法延迟
+        this.selector = Selector.open();
+        this.key = channel.register(selector, SelectionKey.OP_READ);
+        if (sslContext != null) {
+            tls = new TlsChannel(channel, TlsChannel.clientEngine(sslContext, address.getHostString(), address.getPort()),
+                    TlsChannel.DEFAULT_TASK_EXECUTOR, () -> {
+                tlsResume = true;
+                selector.wakeup();
+            });
+            tls.beginHandshake();
+            tls.write(new ByteBuffer[0]); // 发出ClientHello
+        } else {
+            tls = null;
+        }
+        this.ioThread = new Thread(this::ioLoop, "pipeline-client-io");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * 发送请求，立即返回；响应到达时在IO线程中完成future，耗时的后续处理应切换到其他线程
+     *
+     * @param body 请求体，调用后不应再修改
+     * @return 响应体
+     */
+    public CompletableFuture<ByteBuffer> send(ByteBuffer body) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("客户端已关闭"));
+            return future;
+        }
+        int requestId = nextRequestId.incrementAndGet();
+        inflight.put(requestId, future);
+        if (closed) {
+            failAll(new IOException("客户端已关闭")); // 与IO线程退出并发时兜底
+            return future;
+        }
+        pendingWrites.add(PipelineProtocol.encode(codec, requestId, PipelineProtocol.STATUS_OK, body));
+        // 多个请求合并为一次wakeup，IO线程醒来后批量写出
+        if (wakeupScheduled.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+        return future;
+    }
+
+    public int getInflightCount() {
+        return inflight.size();
+    }
+
+    /**
+     * TLS握手完成时完成；未开启TLS时为null
+     */
+    public CompletableFuture<SSLSession> handshakeFuture() {
+        return tls != null ? tls.handshakeFuture() : null;
+    }
+
+    private void ioLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+                wakeupScheduled.set(false);
+                if (tlsResume) {
+                    // 握手任务完成，继续处理已收到的握手消息
+                    tlsResume = false;
+                    read();
+                }
+                drainPendingWrites();
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey selected = keyIterator.next();
+                    keyIterator.remove();
+                    if (selected.isValid() && selected.isReadable()) {
+                        read();
+                    }
+                    if (selected.isValid() && selected.isWritable()) {
+                        flush();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // 客户端关闭
+        } catch (IOException e) {
+            failAll(e);
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void drainPendingWrites() throws IOException {
+        ByteBuffer[] frame;
+        while ((frame = pendingWrites.poll()) != null) {
+            Collections.addAll(outbound, frame);
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (tls != null) {
+            tls.write(new ByteBuffer[0]);
+            while (!outbound.isEmpty() && !tls.hasPendingOutput()) {
+                if (tls.write(gatherBatch()) == 0) {
+                    break; // 握手未完成
+                }
+                while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) {
+                    outbound.poll();
+                }
+            }
+            key.interestOps(tls.hasPendingOutput() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            return;
+        }
+        while (!outbound.isEmpty()) {
+            ByteBuffer[] batch = gatherBatch();
+            channel.write(batch);
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) {
+                outbound.poll();
+            }
+            if (batch[batch.length - 1].hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private ByteBuffer[] gatherBatch() {
+        ByteBuffer[] batch = new ByteBuffer[Math.min(outbound.size(), MAX_GATHER)];
+        Iterator<ByteBuffer> iterator = outbound.iterator();
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = iterator.next();
+        }
+        return batch;
+    }
+
+    private void read() throws IOException {
+        if (tls == null) {
+            if (channel.read(readBuffer.buffer()) < 0) {
+                throw new IOException("服务器关闭了连接");
+            }
+            decodeResponses();
+            return;
+        }
+        // 一次读到的密文可能包含多条记录，反复解密直到没有新的明文
+        int n;
+        while ((n = tls.read(readBuffer.buffer())) != 0) {
+            if (n < 0) {
+                throw new IOException("服务器关闭了连接");
+            }
+            decodeResponses();
+        }
+        flush(); // 握手过程中可能要回写握手消息，握手完成后发出排队的请求
+    }
+
+    private void decodeResponses() throws IOException {
+        ByteBuffer buffer = readBuffer.buffer();
+        buffer.flip();
+        ByteBuffer frame;
+        while ((frame = codec.decode(buffer)) != null) {
+            if (frame.remaining() < 5) {
+                throw new IOException("响应帧过短: " + frame.remaining() + "字节");
+            }
+            int requestId = frame.getInt();
+            byte status = frame.get();
+            CompletableFuture<ByteBuffer> future = inflight.remove(requestId);
+            if (future == null) {
+                continue; // 未知或已失败的请求
+            }
+            // 响应体复制出来，读缓冲区马上会被复用
+            ByteBuffer body = ByteBuffer.allocate(frame.remaining());
+            body.put(frame).flip();
+            if (status == PipelineProtocol.STATUS_OK) {
+                future.complete(body);
+            } else {
+                future.completeExceptionally(new IOException(StandardCharsets.UTF_8.decode(body).toString()));
+            }
+        }
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            growReadBuffer();
+        }
+    }
+
+    // 缓冲区被一个不完整的帧占满时按两倍扩容，最大到编解码器允许的最长帧；更长的帧decode时已经抛出异常
+    private void growReadBuffer() throws IOException {
+        ByteBuffer current = readBuffer.buffer();
+        int limit = codec.maxFrameLength() + MAX_HEADER_LENGTH;
+        if (current.capacity() >= limit) {
+            throw new IOException("响应帧超过读缓冲区大小: " + current.capacity());
+        }
+        PooledBuffer bigger = BufferPool.DEFAULT.acquire((int) Math.min((long) current.capacity() * 2, limit));
+        current.flip();
+        bigger.buffer().put(current);
+        readBuffer.release();
+        readBuffer = bigger;
+    }
+
+    private void failAll(Throwable cause) {
+        for (Integer requestId : new ArrayList<>(inflight.keySet())) {
+            CompletableFuture<ByteBuffer> future = inflight.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        failAll(new IOException("连接已关闭"));
+        try {
+            selector.close();
+            if (tls != null) {
+                tls.close();
+            } else {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        readBuffer.release();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
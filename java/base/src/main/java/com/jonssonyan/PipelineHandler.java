@@ -0,0 +1,68 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 服务端流水线处理器
+ * 一次读事件中解出的所有请求作为一批处理，响应合并为一次聚集写；
+ * 指定executor时请求交给线程池并发处理，先完成的先响应(乱序)
+ */
+class PipelineHandler implements NioHandler {
+    private final FrameCodec codec;
+    private final Function<ByteBuffer, ByteBuffer> processor;
+    private final Executor executor;
+
+    public PipelineHandler(FrameCodec codec, Function<ByteBuffer, ByteBuffer> processor) {
+        this(codec, processor, null);
+    }
+
+    public PipelineHandler(FrameCodec codec, Function<ByteBuffer, ByteBuffer> processor, Executor executor) {
+        this.codec = codec;
+        this.processor = processor;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onRead(NioConnection connection, ByteBuffer in) throws IOException {
+        List<ByteBuffer> responses = new ArrayList<>();
+        ByteBuffer frame;
+        while ((frame = codec.decode(in)) != null) {
+            if (frame.remaining() < 5) {
+                // 连请求编号和状态位都不完整，后面的数据也无法对齐，直接断开
+                System.err.println("流水线请求帧过短(" + frame.remaining() + "字节)，关闭连接: "
+                        + connection.channel().socket().getRemoteSocketAddress());
+                connection.close();
+                return;
+            }
+            int requestId = frame.getInt();
+            frame.get(); // 请求的状态位不使用
+            if (executor == null) {
+                Collections.addAll(responses, process(requestId, frame));
+            } else {
+                // 帧体只在本次回调内有效，交给其他线程前先复制
+                ByteBuffer body = ByteBuffer.allocate(frame.remaining());
+                body.put(frame).flip();
+                executor.execute(() -> connection.write(process(requestId, body)));
+            }
+        }
+        if (!responses.isEmpty()) {
+            connection.write(responses.toArray(new ByteBuffer[0]));
+        }
+    }
+
+    private ByteBuffer[] process(int requestId, ByteBuffer body) {
+        try {
+            return PipelineProtocol.encode(codec, requestId, PipelineProtocol.STATUS_OK, processor.apply(body));
+        } catch (RuntimeException e) {
+            ByteBuffer message = ByteBuffer.wrap(String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+            return PipelineProtocol.encode(codec, requestId, PipelineProtocol.STATUS_ERROR, message);
+        }
+    }
+}
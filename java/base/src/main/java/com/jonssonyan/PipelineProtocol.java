@@ -0,0 +1,17 @@
+package com.jonssonyan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 流水线协议 - 每帧的帧体为：请求ID(4字节) + 状态(1字节) + 消息体
+ */
+class PipelineProtocol {
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    static ByteBuffer[] encode(FrameCodec codec, int requestId, byte status, ByteBuffer body) {
+        ByteBuffer payload = ByteBuffer.allocate(5 + body.remaining());
+        payload.putInt(requestId).put(status).put(body.duplicate()).flip();
+        return codec.encode(payload);
+    }
+}
@@ -0,0 +1,44 @@
+package com.jonssonyan;
+
+/**
+ * 某一时刻的池状态
+ */
+class PoolMetrics {
+    final String name;
+    final int poolSize;
+    final int activeThreads;
+    final int maxThreads;
+    final int queueDepth;
+    final int queueRemaining;
+    final long submitted;
+    final long completed;
+    final long failed;
+    final long rejected;
+    final LatencyHistogram waitTime;
+    final LatencyHistogram runTime;
+
+    PoolMetrics(String name, int poolSize, int activeThreads, int maxThreads, int queueDepth, int queueRemaining, TaskMetrics metrics) {
+        this.name = name;
+        this.poolSize = poolSize;
+        this.activeThreads = activeThreads;
+        this.maxThreads = maxThreads;
+        this.queueDepth = queueDepth;
+        this.queueRemaining = queueRemaining;
+        this.submitted = metrics.submitted.sum();
+        this.completed = metrics.completed.sum();
+        this.failed = metrics.failed.sum();
+        this.rejected = metrics.rejected.sum();
+        this.waitTime = metrics.waitTime;
+        this.runTime = metrics.runTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: 线程%d/%d(活动%d), 队列%d(剩余%s), 提交%d, 完成%d, 失败%d, 拒绝%d, 排队p50=%dus p99=%dus, 运行p50=%dus p99=%dus",
+                name, poolSize, maxThreads, activeThreads, queueDepth,
+                queueRemaining == Integer.MAX_VALUE ? "无界" : String.valueOf(queueRemaining),
+                submitted, completed, failed, rejected,
+                waitTime.getValueAtPercentile(50), waitTime.getValueAtPercentile(99),
+                runTime.getValueAtPercentile(50), runTime.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,45 @@
+package com.jonssonyan;
+
+import java.lang.ref.PhantomReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 从BufferPool借出的缓冲区句柄，支持try-with-resources自动归还
+ */
+class PooledBuffer implements AutoCloseable {
+    private final BufferPool pool;
+    final ByteBuffer buffer;
+    final int sizeClass;
+    final Thread owner = Thread.currentThread();
+    private final AtomicBoolean released = new AtomicBoolean();
+    PhantomReference<PooledBuffer> tracker;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    public ByteBuffer buffer() {
+        if (released.get()) {
+            throw new IllegalStateException("缓冲区已归还");
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，归还后不能再使用buffer()
+     */
+    public void release() {
+        if (!released.compareAndSet(false, true)) {
+            throw new IllegalStateException("缓冲区重复归还");
+        }
+        pool.release(this);
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
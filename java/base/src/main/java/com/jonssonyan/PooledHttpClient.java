@@ -0,0 +1,255 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 带连接池的HTTP/1.1客户端
+ * 每个主机一个连接池：复用keep-alive连接，后台定期清理空闲连接，并用信号量限制每个主机的并发请求数
+ * 响应体以流的形式返回，不再逐行读入StringBuilder
+ */
+class PooledHttpClient implements Closeable {
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutMillis;
+    private final int connectTimeoutMillis;
+    private final DnsResolver resolver;
+    private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    public PooledHttpClient() {
+        this(8, 30_000, 5_000);
+    }
+
+    /**
+     * @param maxConnectionsPerHost 每个主机最大并发请求数(也是最大连接数)
+     * @param idleTimeoutMillis     空闲连接保留时间，超时后被后台线程关闭
+     * @param connectTimeoutMillis  建立连接的超时时间
+     */
+    public PooledHttpClient(int maxConnectionsPerHost, long idleTimeoutMillis, int connectTimeoutMillis) {
+        this(maxConnectionsPerHost, idleTimeoutMillis, connectTimeoutMillis, DnsResolver.DEFAULT);
+    }
+
+    /**
+     * @param resolver 建立新连接时使用的域名解析器，解析结果按TTL缓存
+     */
+    public PooledHttpClient(int maxConnectionsPerHost, long idleTimeoutMillis, int connectTimeoutMillis, DnsResolver resolver) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.resolver = resolver;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "http-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutMillis / 2, 100);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public HttpResponse get(String url) throws IOException {
+        return execute("GET", url, Collections.emptyMap(), null);
+    }
+
+    public HttpResponse post(String url, String contentType, byte[] body) throws IOException {
+        return execute("POST", url, Collections.singletonMap("Content-Type", contentType), body);
+    }
+
+    /**
+     * 发送请求，返回的响应必须关闭，关闭后连接才会归还连接池
+     */
+    public HttpResponse execute(String method, String url, Map<String, String> headers, byte[] body) throws IOException {
+        URL target = new URL(url);
+        String scheme = target.getProtocol();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            throw new IllegalArgumentException("不支持的协议: " + scheme);
+        }
+        int port = target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+        String hostKey = scheme + "://" + target.getHost() + ":" + port;
+        HostPool pool = pools.computeIfAbsent(hostKey, k -> new HostPool(scheme, target.getHost(), port));
+
+        String path = target.getFile().isEmpty() ? "/" : target.getFile();
+        byte[] head = buildRequestHead(method, path, target, headers, body);
+
+        pool.acquirePermit();
+        boolean idempotent = "GET".equals(method) || "HEAD".equals(method);
+        try {
+            while (true) {
+                HttpConnection connection = pool.borrow();
+                try {
+                    connection.send(head, body);
+                    return HttpResponse.read(connection, method, pool);
+                } catch (IOException e) {
+                    connection.closeQuietly();
+                    // 复用的连接可能已被服务器关闭，幂等请求换一个新连接重试
+                    if (!connection.reused || !idempotent) {
+                        throw e;
+                    }
+                } catch (RuntimeException e) {
+                    connection.closeQuietly();
+                    throw e;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.releasePermit();
+            throw e;
+        }
+    }
+
+    private static byte[] buildRequestHead(String method, String path, URL target, Map<String, String> headers, byte[] body) {
+        StringBuilder head = new StringBuilder(128);
+        head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(target.getPort() == -1 ? target.getHost() : target.getHost() + ":" + target.getPort()).append("\r\n");
+        head.append("Connection: keep-alive\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+        for (HostPool pool : pools.values()) {
+            pool.evictIdleBefore(deadline);
+        }
+    }
+
+    /**
+     * 当前所有主机的空闲连接数
+     */
+    public int getIdleConnectionCount() {
+        int count = 0;
+        for (HostPool pool : pools.values()) {
+            count += pool.idleCount();
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        for (HostPool pool : pools.values()) {
+            pool.evictIdleBefore(Long.MAX_VALUE);
+        }
+        pools.clear();
+    }
+
+    /**
+     * 单个主机的连接池
+     */
+    class HostPool {
+        private final String scheme;
+        private final String host;
+        private final int port;
+        private final Semaphore permits = new Semaphore(maxConnectionsPerHost);
+        private final Deque<HttpConnection> idle = new ArrayDeque<>();
+
+        HostPool(String scheme, String host, int port) {
+            this.scheme = scheme;
+            this.host = host;
+            this.port = port;
+        }
+
+        void acquirePermit() throws IOException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待连接时被中断", e);
+            }
+        }
+
+        void releasePermit() {
+            permits.release();
+        }
+
+        // 优先复用最近归还的连接(LIFO)，最久未用的连接留给清理线程回收
+        HttpConnection borrow() throws IOException {
+            synchronized (idle) {
+                HttpConnection connection;
+                while ((connection = idle.pollFirst()) != null) {
+                    if (!connection.socket.isClosed()) {
+                        connection.reused = true;
+                        return connection;
+                    }
+                }
+            }
+            return open();
+        }
+
+        private HttpConnection open() throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(resolver.resolveNow(host, port), connectTimeoutMillis);
+                if ("https".equals(scheme)) {
+                    // 在已连接的socket上叠加TLS，带上主机名以支持SNI和证书主机名校验
+                    SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                            .createSocket(socket, host, port, true);
+                    SSLParameters parameters = sslSocket.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    sslSocket.setSSLParameters(parameters);
+                    socket = sslSocket;
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return new HttpConnection(socket);
+        }
+
+        /**
+         * 请求结束后归还连接，并释放并发许可
+         */
+        void release(HttpConnection connection, boolean reusable) {
+            if (reusable) {
+                connection.lastUsed = System.currentTimeMillis();
+                synchronized (idle) {
+                    idle.addFirst(connection);
+                }
+            } else {
+                connection.closeQuietly();
+            }
+            permits.release();
+        }
+
+        void evictIdleBefore(long deadline) {
+            synchronized (idle) {
+                Iterator<HttpConnection> iterator = idle.descendingIterator();
+                while (iterator.hasNext()) {
+                    HttpConnection connection = iterator.next();
+                    if (connection.lastUsed < deadline) {
+                        iterator.remove();
+                        connection.closeQuietly();
+                    }
+                }
+            }
+        }
+
+        int idleCount() {
+            synchronized (idle) {
+                return idle.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jonssonyan;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 队列满(或池已关闭)时的处理方式
+ */
+enum RejectionPolicy {
+    /**
+     * 抛出RejectedExecutionException
+     */
+    ABORT,
+    /**
+     * 在提交线程中直接执行，自然地降低提交速度
+     */
+    CALLER_RUNS,
+    /**
+     * 静默丢弃
+     */
+    DISCARD,
+    /**
+     * 丢弃队列中最早的任务再重试；工作窃取池没有全局队列，按DISCARD处理
+     */
+    DISCARD_OLDEST,
+    /**
+     * 阻塞提交线程直到队列有空位
+     */
+    BLOCK;
+
+    RejectedExecutionHandler handler(TaskMetrics metrics) {
+        RejectedExecutionHandler handler;
+        switch (this) {
+            case CALLER_RUNS:
+                handler = new ThreadPoolExecutor.CallerRunsPolicy();
+                break;
+            case DISCARD:
+                handler = new ThreadPoolExecutor.DiscardPolicy();
+                break;
+            case DISCARD_OLDEST:
+                handler = new ThreadPoolExecutor.DiscardOldestPolicy();
+                break;
+            case BLOCK:
+                handler = (r, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("线程池已关闭");
+                    }
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("等待队列空位时被中断", e);
+                    }
+                    // 等待期间池被关闭时，工作线程可能已经退出，留在队列里的任务不会再执行
+                    if (executor.isShutdown() && executor.getQueue().remove(r)) {
+                        throw new RejectedExecutionException("线程池已关闭");
+                    }
+                };
+                break;
+            default:
+                handler = new ThreadPoolExecutor.AbortPolicy();
+        }
+        RejectedExecutionHandler delegate = handler;
+        return (r, executor) -> {
+            metrics.rejected.increment();
+            delegate.rejectedExecution(r, executor);
+        };
+    }
+}
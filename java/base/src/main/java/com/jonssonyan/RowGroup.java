@@ -0,0 +1,16 @@
+package com.jonssonyan;
+
+/**
+ * 一组行在文件中的位置：起始行号、行数和每列的列块
+ */
+class RowGroup {
+    final long firstRow;
+    final int rowCount;
+    final ColumnChunk[] chunks;
+
+    RowGroup(long firstRow, int rowCount, ColumnChunk[] chunks) {
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+        this.chunks = chunks;
+    }
+}
@@ -0,0 +1,8 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+
+@FunctionalInterface
+interface RowHandler {
+    void onRow(RowView row) throws IOException;
+}
@@ -0,0 +1,55 @@
+package com.jonssonyan;
+
+/**
+ * 当前行的视图，按列号从映射文件中读取对应列块里的值
+ */
+class RowView {
+    private final ColumnarReader reader;
+    private final MappedFile file;
+    RowGroup group;
+    int index;
+
+    RowView(ColumnarReader reader) {
+        this.reader = reader;
+        this.file = reader.file();
+    }
+
+    /**
+     * 当前行在整个文件中的行号
+     */
+    public long getRowNumber() {
+        return group.firstRow + index;
+    }
+
+    public int getInt(int column) {
+        return file.getInt(group.chunks[column].offset + (long) index * 4);
+    }
+
+    public long getLong(int column) {
+        return file.getLong(group.chunks[column].offset + (long) index * 8);
+    }
+
+    public double getDouble(int column) {
+        return file.getDouble(group.chunks[column].offset + (long) index * 8);
+    }
+
+    public boolean getBoolean(int column) {
+        return file.getByte(group.chunks[column].offset + index) != 0;
+    }
+
+    /**
+     * INT/LONG/BOOLEAN列统一按long读取
+     */
+    long getAsLong(int column) {
+        switch (reader.getColumnType(column)) {
+            case INT:
+                return getInt(column);
+            case LONG:
+                return getLong(column);
+            case BOOLEAN:
+                return getBoolean(column) ? 1 : 0;
+            default:
+                throw new IllegalArgumentException("DOUBLE列不能按整数读取");
+        }
+    }
+}
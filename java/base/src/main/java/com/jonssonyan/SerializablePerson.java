@@ -0,0 +1,23 @@
+package com.jonssonyan;
+
+import java.io.Serializable;
+
+class SerializablePerson implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String name;
+    private int age;
+
+    private SerializablePerson() {
+        // 供BinarySerializer创建实例
+    }
+
+    public SerializablePerson(String name, int age) {
+        this.name = name;
+        this.age = age;
+    }
+
+    @Override
+    public String toString() {
+        return "Person{name='" + name + "', age=" + age + "}";
+    }
+}
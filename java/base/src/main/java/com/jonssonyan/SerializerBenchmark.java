@@ -0,0 +1,96 @@
+package com.jonssonyan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BinarySerializer与Java序列化的对比：编码后大小和每秒编解码次数
+ */
+class SerializerBenchmark {
+    static void run(int count, int rounds) throws Exception {
+        List<SerializablePerson> people = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            people.add(new SerializablePerson("person-" + i, 18 + i % 60));
+        }
+        BinarySerializer<SerializablePerson> serializer = BinarySerializer.of(SerializablePerson.class);
+        for (int round = 0; round < rounds; round++) {
+            boolean print = round == rounds - 1; // 之前的轮次用于JIT预热
+
+            // Java序列化：每个对象一个流，每个流都带类描述
+            long start = System.nanoTime();
+            long bytes = 0;
+            List<byte[]> encoded = new ArrayList<>(count);
+            for (SerializablePerson person : people) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+                    out.writeObject(person);
+                }
+                byte[] data = buffer.toByteArray();
+                bytes += data.length;
+                encoded.add(data);
+            }
+            report(print, "ObjectOutputStream单个编码", count, start, bytes);
+            start = System.nanoTime();
+            for (byte[] data : encoded) {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                    in.readObject();
+                }
+            }
+            report(print, "ObjectInputStream单个解码", count, start, bytes);
+
+            // Java序列化：整个列表一个流，类描述只写一次
+            start = System.nanoTime();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+                out.writeObject(new ArrayList<>(people));
+            }
+            byte[] listData = buffer.toByteArray();
+            report(print, "ObjectOutputStream批量编码", count, start, listData.length);
+            start = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(listData))) {
+                in.readObject();
+            }
+            report(print, "ObjectInputStream批量解码", count, start, listData.length);
+
+            // BinarySerializer：单个对象
+            start = System.nanoTime();
+            bytes = 0;
+            encoded.clear();
+            for (SerializablePerson person : people) {
+                byte[] data = serializer.toBytes(person);
+                bytes += data.length;
+                encoded.add(data);
+            }
+            report(print, "BinarySerializer单个编码", count, start, bytes);
+            start = System.nanoTime();
+            for (byte[] data : encoded) {
+                serializer.fromBytes(data);
+            }
+            report(print, "BinarySerializer单个解码", count, start, bytes);
+
+            // BinarySerializer：批量编码到一个复用的缓冲区
+            BinaryOutput out = new BinaryOutput(count * 16);
+            start = System.nanoTime();
+            serializer.encodeAll(people, out);
+            report(print, "BinarySerializer批量编码", count, start, out.size());
+            start = System.nanoTime();
+            List<SerializablePerson> decoded = serializer.decodeAll(new BinaryInput(out.array(), 0, out.size()));
+            report(print, "BinarySerializer批量解码", count, start, out.size());
+            if (!decoded.get(count - 1).toString().equals(people.get(count - 1).toString())) {
+                throw new IllegalStateException("解码结果不一致: " + decoded.get(count - 1));
+            }
+        }
+    }
+
+    private static void report(boolean print, String name, int count, long start, long bytes) {
+        if (print) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f ops/s, 共%d字节(平均%.1f字节/个)%n",
+                    name, count / seconds, bytes, (double) bytes / count);
+        }
+    }
+}
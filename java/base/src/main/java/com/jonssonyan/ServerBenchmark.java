@@ -0,0 +1,94 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每个连接一个线程的服务器与Selector服务器的对比压测
+ * 客户端使用长度前缀帧：每条连接建立后发送若干个请求并逐个等待回显，然后关闭
+ */
+class ServerBenchmark {
+    static void run(int concurrency, int connections, int requestsPerConnection) throws Exception {
+        FrameCodec codec = new LengthFieldCodec();
+
+        // 同一段阻塞式处理代码：读一帧、回写一帧
+        BlockingServer blockingServer = new BlockingServer(0, concurrency, socket -> {
+            FrameReader in = new FrameReader(Channels.newChannel(socket.getInputStream()), codec);
+            FrameWriter out = new FrameWriter(Channels.newChannel(socket.getOutputStream()), codec);
+            ByteBuffer frame;
+            while ((frame = in.read()) != null) {
+                out.write(frame);
+            }
+        });
+        blockingServer.start();
+        try {
+            measure(blockingServer.isVirtualThreads() ? "BlockingServer(虚拟线程)" : "BlockingServer(平台线程池)",
+                    blockingServer.getPort(), codec, concurrency, connections, requestsPerConnection);
+        } finally {
+            blockingServer.close();
+        }
+
+        NioServer nioServer = new NioServer(0, new FrameHandler(codec) {
+            @Override
+            protected void onFrame(NioConnection connection, ByteBuffer frame) {
+                ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+                copy.put(frame).flip(); // 帧切片只在回调内有效
+                writeFrame(connection, copy);
+            }
+        });
+        nioServer.start();
+        try {
+            measure("NioServer(Selector)", nioServer.getPort(), codec, concurrency, connections, requestsPerConnection);
+        } finally {
+            nioServer.close();
+        }
+    }
+
+    private static void measure(String name, int port, FrameCodec codec, int concurrency, int connections,
+                                int requestsPerConnection) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicInteger remaining = new AtomicInteger(connections);
+        LongAdder errors = new LongAdder();
+        byte[] payload = new byte[128];
+        long start = System.nanoTime();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread client = new Thread(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    try (Socket socket = new Socket()) {
+                        socket.setTcpNoDelay(true);
+                        socket.connect(new InetSocketAddress("localhost", port));
+                        FrameWriter out = new FrameWriter(Channels.newChannel(socket.getOutputStream()), codec);
+                        FrameReader in = new FrameReader(Channels.newChannel(socket.getInputStream()), codec);
+                        for (int r = 0; r < requestsPerConnection; r++) {
+                            long requestStart = System.nanoTime();
+                            out.write(ByteBuffer.wrap(payload));
+                            if (in.read() == null) {
+                                throw new IOException("服务器提前关闭连接");
+                            }
+                            latency.record((System.nanoTime() - requestStart) / 1000);
+                        }
+                    } catch (IOException e) {
+                        errors.increment();
+                    }
+                }
+            }, "bench-client-" + i);
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d连接/%d并发, %.0f conn/s, 请求延迟(us) p50=%d p99=%d max=%d, 错误%d%n",
+                name, connections, concurrency, connections / seconds, latency.getValueAtPercentile(50),
+                latency.getValueAtPercentile(99), latency.getMax(), errors.sum());
+    }
+}
@@ -0,0 +1,430 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NioServer的静态文件服务处理器 - 支持HTTP/1.1长连接、GET/HEAD和单段Range请求
+ * 零拷贝模式下文件内容通过FileChannel.transferTo直接从页缓存发到套接字；
+ * 拷贝模式先把文件读进byte[]再写出，作为对比基准
+ * 处理器随NioServer关闭时关闭自己创建的句柄缓存，外部传入的共享缓存由调用方关闭
+ */
+class StaticFileHandler implements NioHandler, Closeable {
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final boolean zeroCopy;
+    private final FileChannelCache cache;
+    private final boolean ownsCache;
+
+    public StaticFileHandler(Path root, boolean zeroCopy) {
+        this(root, zeroCopy, new FileChannelCache(256), true);
+    }
+
+    /**
+     * @param root     文件根目录，请求路径不能越出该目录
+     * @param zeroCopy true使用transferTo发送，false读入byte[]后写出
+     * @param cache    打开的文件句柄缓存，可以被多个处理器共享
+     */
+    public StaticFileHandler(Path root, boolean zeroCopy, FileChannelCache cache) {
+        this(root, zeroCopy, cache, false);
+    }
+
+    private StaticFileHandler(Path root, boolean zeroCopy, FileChannelCache cache, boolean ownsCache) {
+        this.root = realPath(root.toAbsolutePath().normalize());
+        this.zeroCopy = zeroCopy;
+        this.cache = cache;
+        this.ownsCache = ownsCache;
+    }
+
+    // 根目录本身可能位于符号链接下，与请求文件一样按真实路径比较
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            return path;
+        }
+    }
+
+    @Override
+    public void onRead(NioConnection connection, ByteBuffer in) throws IOException {
+        // 一次读事件中可能有多个流水线请求，出站队列保证响应按请求顺序发出
+        int end;
+        while ((end = headerEnd(in)) >= 0) {
+            byte[] head = new byte[end - in.position()];
+            in.get(head);
+            if (!handle(connection, new String(head, StandardCharsets.ISO_8859_1))) {
+                in.position(in.limit());
+                return;
+            }
+        }
+        if (in.remaining() > MAX_HEADER_SIZE) {
+            sendError(connection, 431, "Request Header Fields Too Large", false);
+            in.position(in.limit());
+        }
+    }
+
+    // 请求头结束位置(空行之后)，不完整时返回-1
+    private static int headerEnd(ByteBuffer in) {
+        for (int i = in.position(); i + 3 < in.limit(); i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 连接是否还能继续处理后续请求
+     */
+    private boolean handle(NioConnection connection, String head) throws IOException {
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            sendError(connection, 400, "Bad Request", false);
+            return false;
+        }
+        String method = requestLine[0];
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+            }
+        }
+        boolean keepAlive = "HTTP/1.1".equals(requestLine[2])
+                ? !"close".equalsIgnoreCase(headers.get("connection"))
+                : "keep-alive".equalsIgnoreCase(headers.get("connection"));
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            // 不读取请求体，无法继续解析同一连接上的后续请求
+            sendError(connection, 405, "Method Not Allowed", false);
+            return false;
+        }
+
+        Path file = resolve(requestLine[1]);
+        if (file == null) {
+            sendError(connection, 403, "Forbidden", keepAlive);
+            return keepAlive;
+        }
+        CachedFile cached;
+        try {
+            cached = cache.open(file);
+        } catch (IOException e) {
+            sendError(connection, 404, "Not Found", keepAlive);
+            return keepAlive;
+        }
+
+        long size = cached.size();
+        long start = 0;
+        long length = size;
+        String status = "200 OK";
+        StringBuilder extra = new StringBuilder();
+        String range = headers.get("range");
+        if (range != null) {
+            long[] parsed = parseRange(range, size);
+            if (parsed == null) {
+                cached.close();
+                extra.append("Content-Range: bytes */").append(size).append("\r\n");
+                sendResponse(connection, "416 Range Not Satisfiable", extra, 0, null, keepAlive);
+                return keepAlive;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                length = parsed[1] - parsed[0] + 1;
+                status = "206 Partial Content";
+                extra.append("Content-Range: bytes ").append(parsed[0]).append('-').append(parsed[1]).append('/').append(size).append("\r\n");
+            }
+        }
+        String contentType = URLConnection.guessContentTypeFromName(file.getFileName().toString());
+        extra.append("Content-Type: ").append(contentType != null ? contentType : "application/octet-stream").append("\r\n");
+        extra.append("Accept-Ranges: bytes\r\n");
+        sendResponse(connection, status, extra, length, null, keepAlive);
+
+        if ("HEAD".equals(method) || length == 0) {
+            cached.close();
+        } else if (zeroCopy) {
+            connection.transferFile(new FileRegion(cached.channel(), start, length, cached));
+        } else {
+            try {
+                copyTo(connection, cached.channel(), start, length);
+            } finally {
+                cached.close();
+            }
+        }
+        if (!keepAlive) {
+            connection.closeAfterFlush();
+        }
+        return keepAlive;
+    }
+
+    // 传统方式：分块读入堆上的byte[]，再包装成ByteBuffer写出
+    private static void copyTo(NioConnection connection, FileChannel channel, long start, long length) throws IOException {
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            byte[] chunk = new byte[(int) Math.min(COPY_CHUNK_SIZE, end - position)];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position + buffer.position());
+                if (n < 0) {
+                    throw new IOException("文件在读取过程中被截断");
+                }
+            }
+            buffer.flip();
+            connection.write(buffer);
+            position += chunk.length;
+        }
+    }
+
+    // URL路径映射到根目录下的文件，越出根目录时返回null；目录映射到其中的index.html
+    private Path resolve(String target) {
+        int query = target.indexOf('?');
+        String rawPath = query >= 0 ? target.substring(0, query) : target;
+        String path;
+        try {
+            path = URLDecoder.decode(rawPath.replace("+", "%2B"), "UTF-8");
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+        Path file = root.resolve(path.replaceFirst("^/+", "")).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        if (Files.isDirectory(file)) {
+            file = file.resolve("index.html");
+        }
+        // 解析符号链接后再检查一次，根目录下指向外部的链接不能用来读取根目录之外的文件
+        try {
+            file = file.toRealPath();
+        } catch (IOException e) {
+            return file; // 文件不存在，打开时返回404
+        }
+        return file.startsWith(root) ? file : null;
+    }
+
+    /**
+     * 解析单段Range头
+     *
+     * @return {start, end}(包含end)；Range无法满足时返回null；格式不支持时返回空数组，按完整文件响应
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0]; // 多段Range按规范可以忽略，返回完整内容
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // bytes=-N 表示最后N个字节
+                long suffix = Long.parseLong(last);
+                if (suffix == 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (end < start && !last.isEmpty()) {
+                    return new long[0];
+                }
+            }
+            if (start >= size) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static void sendError(NioConnection connection, int code, String reason, boolean keepAlive) {
+        byte[] body = (code + " " + reason + "\n").getBytes(StandardCharsets.UTF_8);
+        StringBuilder extra = new StringBuilder("Content-Type: text/plain; charset=utf-8\r\n");
+        sendResponse(connection, code + " " + reason, extra, body.length, body, keepAlive);
+        if (!keepAlive) {
+            connection.closeAfterFlush();
+        }
+    }
+
+    private static void sendResponse(NioConnection connection, String status, StringBuilder extraHeaders,
+                                     long contentLength, byte[] body, boolean keepAlive) {
+        StringBuilder head = new StringBuilder(160);
+        head.append("HTTP/1.1 ").append(status).append("\r\n");
+        head.append("Content-Length: ").append(contentLength).append("\r\n");
+        head.append(extraHeaders);
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        ByteBuffer headBuffer = ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            connection.write(headBuffer, ByteBuffer.wrap(body));
+        } else {
+            connection.write(headBuffer);
+        }
+    }
+
+    public FileChannelCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        if (ownsCache) {
+            cache.close();
+        }
+    }
+}
+
+/**
+ * 打开的文件句柄缓存，按LRU淘汰
+ * 省去每个请求的open/close系统调用；每次取用时比较文件大小和修改时间，文件变化后重新打开
+ * 句柄有引用计数，被淘汰时如果还在发送中，等最后一个使用者释放后才真正关闭
+ */
+class FileChannelCache implements Closeable {
+    private final int maxOpenFiles;
+    private final LinkedHashMap<Path, CachedFile> files;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FileChannelCache(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+        this.files = new LinkedHashMap<>(16, 0.75f, true); // 访问顺序，便于淘汰最久未用的句柄
+    }
+
+    /**
+     * 取得文件句柄，使用完毕必须close()
+     */
+    public CachedFile open(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("不是普通文件: " + path);
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        List<CachedFile> evicted = new ArrayList<>();
+        CachedFile cached;
+        synchronized (this) {
+            cached = files.get(path);
+            if (cached != null && (cached.size() != attributes.size() || cached.lastModified != lastModified)) {
+                files.remove(path); // 文件已变化
+                evicted.add(cached);
+                cached = null;
+            }
+            if (cached != null) {
+                hits.increment();
+                cached.retain();
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            // 打开文件放在锁外，并发打开同一文件时后到者的句柄直接作为普通句柄使用
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            cached = new CachedFile(channel, attributes.size(), lastModified);
+            synchronized (this) {
+                if (!files.containsKey(path)) {
+                    cached.retain(); // 缓存自身持有一个引用
+                    files.put(path, cached);
+                    if (files.size() > maxOpenFiles) {
+                        Map.Entry<Path, CachedFile> eldest = files.entrySet().iterator().next();
+                        files.remove(eldest.getKey());
+                        evicted.add(eldest.getValue());
+                    }
+                }
+            }
+        }
+        for (CachedFile file : evicted) {
+            file.close();
+        }
+        return cached;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized int size() {
+        return files.size();
+    }
+
+    @Override
+    public String toString() {
+        return "FileChannelCache{open=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+
+    @Override
+    public void close() {
+        List<CachedFile> all;
+        synchronized (this) {
+            all = new ArrayList<>(files.values());
+            files.clear();
+        }
+        for (CachedFile file : all) {
+            file.close();
+        }
+    }
+}
+
+/**
+ * 缓存中的文件句柄，close()只是释放一个引用
+ */
+class CachedFile implements Closeable {
+    private final FileChannel channel;
+    private final long size;
+    final long lastModified;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    CachedFile(FileChannel channel, long size, long lastModified) {
+        this.channel = channel;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    void retain() {
+        refCount.incrementAndGet();
+    }
+
+    public FileChannel channel() {
+        return channel;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        if (refCount.decrementAndGet() == 0) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
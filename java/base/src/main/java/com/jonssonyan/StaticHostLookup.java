@@ -0,0 +1,59 @@
+package com.jonssonyan;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地hosts表 - 不访问网络的查询替身，记录查询次数便于验证缓存和合并效果
+ */
+class StaticHostLookup implements HostLookup {
+    private final Map<String, InetAddress[]> hosts = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final long delayMillis;
+
+    public StaticHostLookup() {
+        this(0);
+    }
+
+    /**
+     * @param delayMillis 每次查询的模拟延迟
+     */
+    public StaticHostLookup(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public StaticHostLookup add(String host, String... ips) throws UnknownHostException {
+        InetAddress[] addresses = new InetAddress[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            // 用IP字面量和主机名构造地址，不触发真实的DNS查询
+            addresses[i] = InetAddress.getByAddress(host, InetAddress.getByName(ips[i]).getAddress());
+        }
+        hosts.put(host, addresses);
+        return this;
+    }
+
+    @Override
+    public InetAddress[] lookup(String host) throws UnknownHostException {
+        lookups.incrementAndGet();
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        InetAddress[] addresses = hosts.get(host);
+        if (addresses == null) {
+            throw new UnknownHostException(host);
+        }
+        return Arrays.copyOf(addresses, addresses.length);
+    }
+
+    public int getLookupCount() {
+        return lookups.get();
+    }
+}
@@ -0,0 +1,36 @@
+package com.jonssonyan;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个池的累计任务计数和时间直方图
+ */
+class TaskMetrics {
+    final LongAdder submitted = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LatencyHistogram waitTime = new LatencyHistogram();
+    final LatencyHistogram runTime = new LatencyHistogram();
+
+    // 任务结束后记录运行时间和结果；submit得到的FutureTask会吞掉异常，从它的结果判断是否失败
+    void finished(Runnable task, long startNanos, Throwable error) {
+        runTime.record((System.nanoTime() - startNanos) / 1000);
+        if (error == null && task instanceof Future && ((Future<?>) task).isDone() && !((Future<?>) task).isCancelled()) {
+            try {
+                ((Future<?>) task).get();
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error != null) {
+            failed.increment();
+        } else {
+            completed.increment();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.jonssonyan;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * 记录提交时间的任务包装，开始执行时记录排队时间
+ */
+class TimedTask implements Runnable {
+    private final Runnable delegate;
+    private final TaskMetrics metrics;
+    private final Semaphore slot;
+    private final long submittedAt = System.nanoTime();
+
+    TimedTask(Runnable delegate, TaskMetrics metrics, Semaphore slot) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.slot = slot;
+    }
+
+    Runnable getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        if (slot != null) {
+            slot.release(); // 离开队列
+        }
+        metrics.waitTime.record((start - submittedAt) / 1000);
+        Throwable error = null;
+        try {
+            delegate.run();
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            metrics.finished(delegate, start, error);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.jonssonyan;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TLS压测 - 握手速率(完整握手 vs 会话恢复)和大块数据吞吐量(明文 vs TLS)
+ */
+class TlsBenchmark {
+    static void run(int connections, int fileMegabytes) throws Exception {
+        SSLContext context = TlsContexts.selfSigned();
+        VarintCodec codec = new VarintCodec();
+        NioServer echoServer = new NioServer(0, new PipelineHandler(codec, request -> {
+            ByteBuffer response = ByteBuffer.allocate(request.remaining());
+            response.put(request).flip();
+            return response;
+        })).enableTls(context);
+        echoServer.start();
+        try {
+            InetSocketAddress address = new InetSocketAddress("localhost", echoServer.getPort());
+            handshakes(context, address, connections / 5, false); // 预热
+            handshakes(context, address, connections, false);
+            handshakes(context, address, connections, true);
+        } finally {
+            echoServer.close();
+        }
+
+        Path dir = Files.createTempDirectory("tls-bench");
+        Path bulk = dir.resolve("bulk.bin");
+        try {
+            byte[] content = new byte[fileMegabytes << 20];
+            new Random(1).nextBytes(content);
+            Files.write(bulk, content);
+            throughput(context, dir);
+        } finally {
+            Files.deleteIfExists(bulk);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // 同一个文件分别走明文和TLS下载，比较吞吐量
+    private static void throughput(SSLContext context, Path dir) throws IOException {
+        for (boolean tls : new boolean[]{false, true}) {
+            NioServer fileServer = new NioServer(0, new StaticFileHandler(dir, true));
+            if (tls) {
+                fileServer.enableTls(context);
+            }
+            fileServer.start();
+            try {
+                for (int i = 0; i < 3; i++) {
+                    download(context, fileServer.getPort(), tls); // 预热，让AES-GCM等热点代码完成JIT编译
+                }
+                long start = System.nanoTime();
+                long bytes = 0;
+                for (int i = 0; i < 3; i++) {
+                    bytes += download(context, fileServer.getPort(), tls);
+                }
+                System.out.printf("%s吞吐量: %.0f MB/s%n", tls ? "TLS" : "明文", bytes / ((System.nanoTime() - start) / 1e9) / (1 << 20));
+            } finally {
+                fileServer.close();
+            }
+        }
+    }
+
+    // 每条连接完成握手后发送一个请求再关闭；resume为false时连接前清空客户端会话缓存，强制完整握手
+    private static void handshakes(SSLContext context, InetSocketAddress address, int connections, boolean resume) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            if (!resume) {
+                SSLSessionContext sessions = context.getClientSessionContext();
+                for (Enumeration<byte[]> ids = sessions.getIds(); ids.hasMoreElements(); ) {
+                    SSLSession session = sessions.getSession(ids.nextElement());
+                    if (session != null) {
+                        session.invalidate();
+                    }
+                }
+            }
+            try (PipelineClient client = new PipelineClient(address, new VarintCodec(), context)) {
+                client.send(ByteBuffer.wrap(new byte[]{1})).get(5, TimeUnit.SECONDS);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d次连接, %.0f 握手/s%n", resume ? "会话恢复" : "完整握手", connections, connections / seconds);
+    }
+
+    private static long download(SSLContext context, int port, boolean tls) throws IOException {
+        try (Socket socket = tls ? context.getSocketFactory().createSocket("localhost", port) : new Socket("localhost", port)) {
+            socket.getOutputStream().write("GET /bulk.bin HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[64 * 1024];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                total += n; // 包含响应头，相对文件大小可以忽略
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.jonssonyan;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于SSLEngine的非阻塞TLS通道
+ * 对外的read/write语义与非阻塞SocketChannel一致：读写的都是明文，返回0表示暂时无法推进(等待数据、发送缓冲区满或握手未完成)；
+ * 握手过程由读写调用自动推进，耗时的握手计算(SSLEngine的委托任务)交给独立的线程池执行，
+ * 完成后通过onTaskDone回调通知IO线程继续读写，选择器线程从不阻塞在密码运算上
+ */
+class TlsChannel implements ByteChannel, GatheringByteChannel {
+    private static final ByteBuffer[] NO_DATA = new ByteBuffer[0];
+
+    /**
+     * 默认的握手任务线程池
+     */
+    static final Executor DEFAULT_TASK_EXECUTOR = newTaskExecutor();
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final Executor taskExecutor;
+    private final Runnable onTaskDone;
+    private final CompletableFuture<SSLSession> handshake = new CompletableFuture<>();
+    private ByteBuffer netIn;  // 收到但还没解密的密文，写模式
+    private ByteBuffer netOut; // 加密后还没发出的密文，读模式
+    private ByteBuffer appIn;  // 解密后还没交给调用方的明文，读模式
+    private volatile boolean taskRunning;
+    private boolean inboundDone;
+
+    /**
+     * @param onTaskDone 握手任务完成后在任务线程中调用，应唤醒IO线程重新调用read/write
+     */
+    TlsChannel(SocketChannel channel, SSLEngine engine, Executor taskExecutor, Runnable onTaskDone) {
+        this.channel = channel;
+        this.engine = engine;
+        this.taskExecutor = taskExecutor;
+        this.onTaskDone = onTaskDone;
+        SSLSession session = engine.getSession();
+        this.netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        this.netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        this.netOut.flip();
+        this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+        this.appIn.flip();
+    }
+
+    private static Executor newTaskExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "tls-handshake-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 创建服务端引擎
+     */
+    static SSLEngine serverEngine(SSLContext context) {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    /**
+     * 创建客户端引擎，带上对端主机和端口才能复用缓存的会话，并开启主机名校验
+     */
+    static SSLEngine clientEngine(SSLContext context, String host, int port) {
+        SSLEngine engine = context.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    /**
+     * 客户端调用，之后的write(空数组)会发出ClientHello
+     */
+    public void beginHandshake() throws IOException {
+        engine.beginHandshake();
+    }
+
+    /**
+     * 握手完成时完成，得到协商好的会话
+     */
+    public CompletableFuture<SSLSession> handshakeFuture() {
+        return handshake;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!appIn.hasRemaining()) {
+            int produced = unwrap();
+            if (produced <= 0) {
+                return produced;
+            }
+        }
+        int n = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.duplicate();
+        slice.limit(slice.position() + n);
+        dst.put(slice);
+        appIn.position(appIn.position() + n);
+        return n;
+    }
+
+    // 解密到appIn，返回得到的明文字节数；0表示需要更多数据或正在执行握手任务，-1表示对端已关闭
+    private int unwrap() throws IOException {
+        if (inboundDone) {
+            return -1;
+        }
+        boolean readSocket = netIn.position() == 0;
+        while (true) {
+            if (taskRunning) {
+                return 0;
+            }
+            HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                return 0;
+            }
+            if (status == HandshakeStatus.NEED_WRAP) {
+                if (!wrap(NO_DATA)) {
+                    return 0; // 握手数据发不出去，等待OP_WRITE
+                }
+                continue;
+            }
+            if (readSocket) {
+                int n = channel.read(netIn);
+                if (n < 0) {
+                    inboundDone = true;
+                    return -1;
+                }
+                if (n == 0) {
+                    return 0;
+                }
+            }
+            appIn.clear();
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+                appIn.flip();
+            }
+            checkFinished(result);
+            switch (result.getStatus()) {
+                case OK:
+                    if (result.bytesProduced() > 0) {
+                        return result.bytesProduced();
+                    }
+                    readSocket = netIn.position() == 0;
+                    break;
+                case BUFFER_UNDERFLOW:
+                    // 记录不完整，需要继续读；缓冲区放不下一条完整记录时扩容
+                    if (!netIn.hasRemaining()) {
+                        netIn = grow(netIn, engine.getSession().getPacketBufferSize(), false);
+                    }
+                    readSocket = true;
+                    break;
+                case BUFFER_OVERFLOW:
+                    appIn = grow(appIn, engine.getSession().getApplicationBufferSize(), true);
+                    readSocket = false;
+                    break;
+                case CLOSED:
+                default:
+                    inboundDone = true; // 收到close_notify
+                    return -1;
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * 加密并写出，返回被消费的明文字节数；传入空数组可以单纯推进握手、写出积压的密文
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long consumed = 0;
+        while (flushNet() && !taskRunning) {
+            HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                break;
+            }
+            if (status == HandshakeStatus.NEED_WRAP) {
+                wrap(NO_DATA);
+                continue;
+            }
+            if (status == HandshakeStatus.NEED_UNWRAP || !hasRemaining(srcs, offset, length)) {
+                break; // 等待对端的握手数据，或者没有要写的数据
+            }
+            netOut.clear();
+            SSLEngineResult result;
+            try {
+                result = engine.wrap(srcs, offset, length, netOut);
+            } finally {
+                netOut.flip();
+            }
+            checkFinished(result);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = grow(netOut, engine.getSession().getPacketBufferSize(), true);
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new ClosedChannelException();
+            }
+            consumed += result.bytesConsumed();
+        }
+        return consumed;
+    }
+
+    // 生成一条握手或关闭记录并尝试写出；积压的密文没有写完时返回false
+    private boolean wrap(ByteBuffer[] srcs) throws IOException {
+        if (!flushNet()) {
+            return false;
+        }
+        netOut.clear();
+        SSLEngineResult result;
+        try {
+            result = engine.wrap(srcs, netOut);
+        } finally {
+            netOut.flip();
+        }
+        checkFinished(result);
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            netOut = grow(netOut, engine.getSession().getPacketBufferSize(), true);
+        }
+        return flushNet();
+    }
+
+    private boolean flushNet() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 是否有密文因发送缓冲区满而积压，为true时调用方应关注OP_WRITE
+     */
+    public boolean hasPendingOutput() {
+        return netOut.hasRemaining();
+    }
+
+    private void runDelegatedTasks() {
+        taskRunning = true;
+        taskExecutor.execute(() -> {
+            try {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+            } finally {
+                taskRunning = false;
+                onTaskDone.run();
+            }
+        });
+    }
+
+    private void checkFinished(SSLEngineResult result) {
+        if (result.getHandshakeStatus() == HandshakeStatus.FINISHED && !handshake.isDone()) {
+            handshake.complete(engine.getSession());
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (srcs[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 扩容并保留已有数据，readMode表示buffer当前处于读模式
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity, boolean readMode) {
+        ByteBuffer bigger = buffer.isDirect()
+                ? ByteBuffer.allocateDirect(Math.max(minCapacity, buffer.capacity() * 2))
+                : ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        if (!readMode) {
+            buffer.flip();
+        }
+        bigger.put(buffer);
+        if (readMode) {
+            bigger.flip();
+        }
+        return bigger;
+    }
+
+    public SSLSession getSession() {
+        return engine.getSession();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * 尽力发出close_notify后关闭底层通道，不等待对端回应
+     */
+    @Override
+    public void close() throws IOException {
+        if (!handshake.isDone()) {
+            handshake.completeExceptionally(new SSLException("连接在握手完成前关闭"));
+        }
+        try {
+            if (channel.isOpen() && !taskRunning) {
+                engine.closeOutbound();
+                wrap(NO_DATA);
+            }
+        } catch (IOException ignored) {
+            // 对端可能已经断开
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.jonssonyan;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * TLS上下文工具 - 生成本地自签名证书并创建SSLContext
+ */
+class TlsContexts {
+    static final String PASSWORD = "changeit";
+
+    private static volatile SSLContext selfSigned;
+
+    /**
+     * 使用一个临时生成的自签名证书(CN=localhost)的上下文，服务端和客户端共用：
+     * 服务端用其中的私钥，客户端把同一张证书作为信任根
+     */
+    static SSLContext selfSigned() throws IOException, GeneralSecurityException {
+        if (selfSigned == null) {
+            synchronized (TlsContexts.class) {
+                if (selfSigned == null) {
+                    // 密钥库加载进内存后就不再需要，立即删除，不在临时目录里留下私钥
+                    Path dir = Files.createTempDirectory("tls");
+                    Path keyStore = dir.resolve("localhost.p12");
+                    try {
+                        selfSigned = create(generateSelfSigned(keyStore), PASSWORD.toCharArray());
+                    } finally {
+                        Files.deleteIfExists(keyStore);
+                        Files.deleteIfExists(dir);
+                    }
+                }
+            }
+        }
+        return selfSigned;
+    }
+
+    /**
+     * 调用JDK自带的keytool生成PKCS12密钥库，证书包含localhost和127.0.0.1两个主机名。
+     * Java 8没有签发证书的公开API，只能借助keytool；只装了精简JRE(没有bin/keytool)时直接报错
+     */
+    static Path generateSelfSigned(Path keyStore) throws IOException {
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process;
+        try {
+            process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "localhost",
+                    "-keyalg", "EC", "-keysize", "256", "-validity", "365",
+                    "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                    "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+                    "-storepass", PASSWORD, "-keypass", PASSWORD)
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            throw new IOException("无法启动keytool(" + keytool + ")，生成自签名证书需要完整的JDK/JRE", e);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                output.write(buffer, 0, n);
+            }
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("keytool执行失败: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待keytool被中断", e);
+        }
+        return keyStore;
+    }
+
+    /**
+     * 用同一个密钥库作为密钥和信任库创建上下文，并放大服务端会话缓存以便客户端重连时恢复会话
+     */
+    static SSLContext create(Path keyStorePath, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStorePath)) {
+            keyStore.load(in, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        context.getServerSessionContext().setSessionCacheSize(10_000);
+        context.getServerSessionContext().setSessionTimeout(3600); // 秒
+        context.getClientSessionContext().setSessionTimeout(3600);
+        return context;
+    }
+}
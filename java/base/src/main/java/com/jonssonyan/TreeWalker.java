@@ -0,0 +1,369 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * 并行目录树遍历和批量文件操作
+ * 每个目录是一个fork-join任务，子目录各自fork，目录中的文件按批fork，扁平的大目录也能并行处理；
+ * 并行度由自己的ForkJoinPool限定，避免大量阻塞IO占满公共线程池。
+ * 调用线程在等待期间定时回调进度，WalkProgress.cancel()可以从任何线程取消；第一个IOException会停止整个遍历并抛出
+ */
+class TreeWalker implements Closeable {
+    private static final int FILE_BATCH = 64;
+
+    private final ForkJoinPool pool;
+
+    public TreeWalker() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 同时处理文件的线程数，IO密集时可以大于CPU核数
+     */
+    public TreeWalker(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * 遍历root下的所有文件和目录，不跟随符号链接；root是文件时只访问它自己
+     */
+    public void walk(Path root, ParallelFileVisitor visitor, WalkProgress progress) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        ForkJoinTask<Void> task;
+        if (attrs.isDirectory()) {
+            task = pool.submit(new DirectoryTask(root, visitor, progress));
+        } else {
+            List<Path> files = new ArrayList<>(1);
+            List<BasicFileAttributes> fileAttrs = new ArrayList<>(1);
+            files.add(root);
+            fileAttrs.add(attrs);
+            task = pool.submit(new FileBatchTask(files, fileAttrs, visitor, progress));
+        }
+        progress.start();
+        try {
+            while (true) {
+                try {
+                    task.get(progress.getReportInterval(), TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    progress.report();
+                }
+            }
+        } catch (InterruptedException e) {
+            progress.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("遍历被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof WalkFailure) {
+                throw ((WalkFailure) e.getCause()).getCause();
+            }
+            // 已经记录了失败(包括访问者抛出的非受检异常)时，在下面抛出记录的那个
+            if (progress.getFailure() == null && !(e.getCause() instanceof CancellationException)) {
+                throw new IOException(e.getCause());
+            }
+        } finally {
+            progress.finish();
+        }
+        IOException failure = progress.getFailure();
+        if (failure != null) {
+            throw failure;
+        }
+        if (progress.isCancelled()) {
+            throw new CancellationException("遍历已取消");
+        }
+    }
+
+    /**
+     * 复制目录树，文件内容用FileChannel.transferTo复制(Linux上由内核完成，不经过堆)，保留修改时间
+     */
+    public void copy(Path source, Path target, WalkProgress progress) throws IOException {
+        Path from = source.toAbsolutePath().normalize();
+        Path to = target.toAbsolutePath().normalize();
+        if (to.startsWith(from)) {
+            throw new IllegalArgumentException("目标目录不能在源目录内: " + target);
+        }
+        walk(source, new ParallelFileVisitor() {
+            @Override
+            public void preVisitDirectory(Path dir) throws IOException {
+                Files.createDirectories(resolve(dir));
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path destination = resolve(file);
+                if (!attrs.isRegularFile()) {
+                    Files.copy(file, destination, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.REPLACE_EXISTING);
+                    return;
+                }
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        long n = in.transferTo(position, size - position, out);
+                        if (n <= 0) {
+                            break; // 源文件在复制过程中被截短
+                        }
+                        position += n;
+                    }
+                }
+                Files.setLastModifiedTime(destination, attrs.lastModifiedTime());
+            }
+
+            private Path resolve(Path path) {
+                return target.resolve(source.relativize(path).toString());
+            }
+        }, progress);
+    }
+
+    /**
+     * 删除整个目录树(包括root)，目录在其中的文件和子目录都删除后再删除
+     */
+    public void delete(Path root, WalkProgress progress) throws IOException {
+        walk(root, new ParallelFileVisitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir) throws IOException {
+                Files.delete(dir);
+            }
+        }, progress);
+    }
+
+    /**
+     * 计算目录树的校验值：每个文件的CRC32与相对路径、长度混合后相加，与遍历顺序无关，内容或文件名变化都会改变结果
+     *
+     * @param handler 每个文件的校验结果回调，会在多个线程中同时调用，可以为null
+     */
+    public long checksum(Path root, FileChecksumHandler handler, WalkProgress progress) throws IOException {
+        LongAdder digest = new LongAdder();
+        ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(256 * 1024));
+        walk(root, (file, attrs) -> {
+            String relative = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            CRC32 crc = new CRC32();
+            if (attrs.isRegularFile()) {
+                ByteBuffer buffer = buffers.get();
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    buffer.clear();
+                    while (channel.read(buffer) > 0) {
+                        buffer.flip();
+                        crc.update(buffer);
+                        buffer.clear();
+                    }
+                }
+            } else if (attrs.isSymbolicLink()) {
+                crc.update(Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8));
+            }
+            long h = relative.hashCode() * 0x9E3779B97F4A7C15L ^ crc.getValue() ^ attrs.size() * 0xC2B2AE3D27D4EB4FL;
+            h ^= h >>> 31;
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 29;
+            digest.add(h);
+            if (handler != null) {
+                handler.onFile(relative, attrs.size(), crc.getValue());
+            }
+        }, progress);
+        return digest.sum();
+    }
+
+    /**
+     * 统计目录树占用的字节数(文件的逻辑长度之和)，文件数和目录数记录在progress中
+     */
+    public long diskUsage(Path root, WalkProgress progress) throws IOException {
+        walk(root, (file, attrs) -> {
+        }, progress);
+        return progress.getBytes();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // 处理一个目录：子目录fork新任务，文件攒满一批fork一个批任务，最后一批在当前线程处理
+    private static class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path dir;
+        private final ParallelFileVisitor visitor;
+        private final WalkProgress progress;
+
+        DirectoryTask(Path dir, ParallelFileVisitor visitor, WalkProgress progress) {
+            this.dir = dir;
+            this.visitor = visitor;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (progress.isStopped()) {
+                return;
+            }
+            List<ForkJoinTask<?>> subtasks = new ArrayList<>();
+            List<Path> files = new ArrayList<>();
+            List<BasicFileAttributes> fileAttrs = new ArrayList<>();
+            RuntimeException failure = null;
+            try {
+                visitor.preVisitDirectory(dir);
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path child : stream) {
+                        if (progress.isStopped()) {
+                            break;
+                        }
+                        BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attrs.isDirectory()) {
+                            subtasks.add(new DirectoryTask(child, visitor, progress).fork());
+                        } else {
+                            files.add(child);
+                            fileAttrs.add(attrs);
+                            if (files.size() == FILE_BATCH) {
+                                subtasks.add(new FileBatchTask(files, fileAttrs, visitor, progress).fork());
+                                files = new ArrayList<>();
+                                fileAttrs = new ArrayList<>();
+                            }
+                        }
+                    }
+                }
+                FileBatchTask.visitAll(files, fileAttrs, visitor, progress);
+            } catch (IOException e) {
+                progress.fail(e);
+            } catch (DirectoryIteratorException e) {
+                // 迭代目录项时的IO错误被包装成非受检异常
+                progress.fail(e.getCause());
+            } catch (RuntimeException e) {
+                // 访问者抛出的非受检异常，先让其他任务停下，等已fork的子任务结束后再抛出
+                progress.fail(new IOException("访问失败: " + dir, e));
+                failure = e;
+            }
+            // 后fork的任务更可能还在本线程队列中，倒序join可以直接在本线程执行它们；
+            // 某个子任务失败也要等其余子任务结束再抛出，walk返回后不会还有任务在访问文件
+            for (int i = subtasks.size() - 1; i >= 0; i--) {
+                try {
+                    subtasks.get(i).join();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else if (failure != e) {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (progress.isStopped()) {
+                return;
+            }
+            try {
+                visitor.postVisitDirectory(dir);
+                progress.directories.increment();
+            } catch (IOException e) {
+                progress.fail(e);
+            }
+        }
+    }
+
+    private static class FileBatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Path> files;
+        private final List<BasicFileAttributes> attrs;
+        private final ParallelFileVisitor visitor;
+        private final WalkProgress progress;
+
+        FileBatchTask(List<Path> files, List<BasicFileAttributes> attrs, ParallelFileVisitor visitor, WalkProgress progress) {
+            this.files = files;
+            this.attrs = attrs;
+            this.visitor = visitor;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            visitAll(files, attrs, visitor, progress);
+            if (progress.getFailure() != null) {
+                // 把失败传给上层：父目录任务等兄弟任务都结束后再抛出，作为根任务时由walk解包
+                throw new WalkFailure(progress.getFailure());
+            }
+        }
+
+        static void visitAll(List<Path> files, List<BasicFileAttributes> attrs, ParallelFileVisitor visitor, WalkProgress progress) {
+            for (int i = 0; i < files.size() && !progress.isStopped(); i++) {
+                try {
+                    visitor.visitFile(files.get(i), attrs.get(i));
+                    progress.files.increment();
+                    progress.bytes.add(attrs.get(i).size());
+                } catch (IOException e) {
+                    progress.fail(e);
+                }
+            }
+        }
+    }
+
+    // 在fork-join任务中传递IOException
+    private static class WalkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        WalkFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
+
+/**
+ * 并行遍历的回调，同一棵树中的不同文件会在多个线程中同时访问；
+ * 目录的preVisitDirectory在其内容之前调用，postVisitDirectory在其全部内容处理完之后调用
+ */
+@FunctionalInterface
+interface ParallelFileVisitor {
+    default void preVisitDirectory(Path dir) throws IOException {
+    }
+
+    void visitFile(Path file, BasicFileAttributes attrs) throws IOException;
+
+    default void postVisitDirectory(Path dir) throws IOException {
+    }
+}
+
+/**
+ * 单个文件的校验结果
+ */
+@FunctionalInterface
+interface FileChecksumHandler {
+    void onFile(String relativePath, long size, long crc32);
+}
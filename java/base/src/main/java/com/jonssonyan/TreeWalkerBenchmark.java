@@ -0,0 +1,102 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 在合成的目录树上比较Files.walkFileTree顺序处理与TreeWalker并行处理的文件数/秒
+ */
+class TreeWalkerBenchmark {
+    static void run(Path dir, int fileCount, int fileSize) throws IOException {
+        Path source = dir.resolve("tree_bench_src");
+        Path target = dir.resolve("tree_bench_dst");
+        try (TreeWalker walker = new TreeWalker(Math.max(4, Runtime.getRuntime().availableProcessors() * 2))) {
+            for (Path path : new Path[]{source, target}) {
+                if (Files.exists(path)) {
+                    walker.delete(path, new WalkProgress());
+                }
+            }
+            try {
+                long start = System.nanoTime();
+                createTree(source, fileCount, fileSize);
+                System.out.printf("创建%d个文件: %dms%n", fileCount, (System.nanoTime() - start) / 1_000_000);
+
+                long[] sequential = new long[2];
+                start = System.nanoTime();
+                Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        sequential[0]++;
+                        sequential[1] += attrs.size();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                report("walkFileTree统计", sequential[0], start);
+                WalkProgress progress = new WalkProgress();
+                walker.diskUsage(source, progress);
+                System.out.println("TreeWalker(" + walker.getParallelism() + "线程)统计: " + progress);
+
+                progress = new WalkProgress();
+                long digest = walker.checksum(source, null, progress);
+                System.out.println("校验和" + Long.toHexString(digest) + ": " + progress);
+
+                progress = new WalkProgress(500, p -> System.out.println("  复制中: " + p));
+                walker.copy(source, target, progress);
+                System.out.println("并行复制: " + progress);
+                if (walker.checksum(target, null, new WalkProgress()) != digest) {
+                    throw new IllegalStateException("复制结果与源目录不一致");
+                }
+
+                start = System.nanoTime();
+                long[] deleted = new long[1];
+                Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        Files.delete(file);
+                        deleted[0]++;
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                        Files.delete(d);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                report("walkFileTree删除", deleted[0], start);
+                progress = new WalkProgress();
+                walker.delete(source, progress);
+                System.out.println("并行删除: " + progress);
+            } finally {
+                // 中途失败时也删掉生成的目录树
+                for (Path path : new Path[]{source, target}) {
+                    if (Files.exists(path)) {
+                        walker.delete(path, new WalkProgress());
+                    }
+                }
+            }
+        }
+    }
+
+    // 每个目录100个文件，每100个目录再分一层
+    private static void createTree(Path root, int fileCount, int fileSize) throws IOException {
+        byte[] content = new byte[fileSize];
+        for (int i = 0; i < fileCount; i++) {
+            Path dir = root.resolve("d" + (i / 10000)).resolve("d" + (i / 100 % 100));
+            if (i % 100 == 0) {
+                Files.createDirectories(dir);
+            }
+            content[0] = (byte) i;
+            Files.write(dir.resolve("f" + i + ".dat"), content);
+        }
+    }
+
+    private static void report(String name, long files, long start) {
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("%s: 文件%d, %dms, %.0f文件/秒%n", name, files, millis, files * 1000.0 / millis);
+    }
+}
@@ -0,0 +1,51 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * UDP压测客户端 - 多个线程尽可能快地发包，统计每秒发包数
+ */
+class UdpLoadGenerator {
+    /**
+     * @return 实际发出的数据包总数
+     */
+    static long run(String host, int port, int threads, int packetSize, long durationMillis) throws InterruptedException {
+        InetSocketAddress target = new InetSocketAddress(host, port);
+        LongAdder sent = new LongAdder();
+        long deadline = System.currentTimeMillis() + durationMillis;
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try (DatagramChannel channel = DatagramChannel.open();
+                     PooledBuffer pooled = BufferPool.DEFAULT.acquire(packetSize)) {
+                    channel.connect(target); // connect后send不必每次做地址检查
+                    ByteBuffer packet = pooled.buffer();
+                    long count = 0;
+                    while ((count & 1023) != 0 || System.currentTimeMillis() < deadline) {
+                        packet.clear().limit(packetSize);
+                        packet.putLong(0, count);
+                        channel.write(packet);
+                        count++;
+                    }
+                    sent.add(count);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "udp-load-" + i);
+            senders.add(thread);
+            thread.start();
+        }
+        for (Thread thread : senders) {
+            thread.join();
+        }
+        long total = sent.sum();
+        System.out.printf("UDP压测: %d个线程发出%d个包, %.0f pps%n", threads, total, total * 1000.0 / durationMillis);
+        return total;
+    }
+}
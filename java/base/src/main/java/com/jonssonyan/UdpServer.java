@@ -0,0 +1,263 @@
+package com.jonssonyan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 高吞吐UDP服务器
+ * 多个接收线程同时收包：平台支持SO_REUSEPORT时每个线程绑定一个独立的通道，由内核分流；否则共享同一个通道
+ * 每次可读事件尽可能多地收包组成一批，接收缓冲区来自BufferPool，整批交给处理器
+ */
+class UdpServer implements Closeable {
+    private final int port;
+    private final int receiverCount;
+    private final int batchSize;
+    private final int maxPacketSize;
+    private final int dispatcherCount;
+    private final DatagramHandler handler;
+    private final BlockingQueue<DatagramBatch> queue;
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Selector> selectors = new ArrayList<>();
+    private volatile boolean running;
+    private volatile boolean reusePort; // 是否实际设置了SO_REUSEPORT
+
+    private final LongAdder receivedPackets = new LongAdder();
+    private final LongAdder receivedBatches = new LongAdder();
+    private final LongAdder droppedPackets = new LongAdder();
+    private final AtomicLong backlog = new AtomicLong();
+
+    /**
+     * 在接收线程中直接处理每一批数据包
+     */
+    public UdpServer(int port, int receiverCount, DatagramHandler handler) {
+        this(port, receiverCount, 64, 2048, 0, 0, handler);
+    }
+
+    /**
+     * @param receiverCount   接收线程数
+     * @param batchSize       每批最多的数据包数
+     * @param maxPacketSize   单个数据包的最大字节数，超出部分被截断
+     * @param dispatcherCount 处理线程数，为0时在接收线程中直接处理
+     * @param queueCapacity   待处理批次队列容量，队列满时整批丢弃并计入丢包数
+     */
+    public UdpServer(int port, int receiverCount, int batchSize, int maxPacketSize,
+                     int dispatcherCount, int queueCapacity, DatagramHandler handler) {
+        this.port = port;
+        this.receiverCount = receiverCount;
+        this.batchSize = batchSize;
+        this.maxPacketSize = maxPacketSize;
+        this.dispatcherCount = dispatcherCount;
+        this.handler = handler;
+        this.queue = dispatcherCount > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+    }
+
+    public void start() throws IOException {
+        running = true;
+        SocketOption<Boolean> reusePortOption = reusePortOption();
+        reusePort = reusePortOption != null;
+        DatagramChannel shared = null;
+        for (int i = 0; i < receiverCount; i++) {
+            DatagramChannel channel;
+            if (reusePortOption != null) {
+                channel = openChannel(reusePortOption);
+            } else {
+                // 不支持SO_REUSEPORT时所有接收线程共享一个通道
+                if (shared == null) {
+                    shared = openChannel(null);
+                }
+                channel = shared;
+            }
+            Selector selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            selectors.add(selector);
+            Thread thread = new Thread(() -> receiveLoop(channel, selector), "udp-receiver-" + i);
+            threads.add(thread);
+        }
+        for (int i = 0; i < dispatcherCount; i++) {
+            threads.add(new Thread(this::dispatchLoop, "udp-dispatcher-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    private DatagramChannel openChannel(SocketOption<Boolean> reusePort) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024); // 加大内核接收缓冲，吸收突发流量
+        if (reusePort != null) {
+            channel.setOption(reusePort, true);
+        }
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        channels.add(channel);
+        return channel;
+    }
+
+    // SO_REUSEPORT从Java 9开始才有，通过反射获取以兼容Java 8
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            try (DatagramChannel probe = DatagramChannel.open()) {
+                return probe.supportedOptions().contains(option) ? option : null;
+            }
+        } catch (ReflectiveOperationException | IOException e) {
+            return null;
+        }
+    }
+
+    private void receiveLoop(DatagramChannel channel, Selector selector) {
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                DatagramBatch batch;
+                // 一次可读事件中反复收包，直到内核缓冲区读空
+                while ((batch = receiveBatch(channel)) != null) {
+                    dispatch(batch);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // 服务器关闭
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private DatagramBatch receiveBatch(DatagramChannel channel) throws IOException {
+        DatagramBatch batch = null;
+        while (batch == null || batch.size() < batchSize) {
+            PooledBuffer buffer = BufferPool.DEFAULT.acquire(maxPacketSize);
+            ByteBuffer data = buffer.buffer();
+            data.limit(maxPacketSize);
+            SocketAddress sender = channel.receive(data);
+            if (sender == null) {
+                buffer.release();
+                break;
+            }
+            data.flip();
+            if (batch == null) {
+                batch = new DatagramBatch(channel, batchSize);
+            }
+            batch.add(buffer, sender);
+        }
+        return batch;
+    }
+
+    private void dispatch(DatagramBatch batch) {
+        receivedPackets.add(batch.size());
+        receivedBatches.increment();
+        if (queue == null) {
+            handleAndRelease(batch);
+        } else {
+            backlog.addAndGet(batch.size()); // 先计入积压，避免处理线程先取走导致计数为负
+            if (!queue.offer(batch)) {
+                // 处理速度跟不上，丢弃整批而不是阻塞接收线程
+                backlog.addAndGet(-batch.size());
+                droppedPackets.add(batch.size());
+                batch.release();
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                DatagramBatch batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    backlog.addAndGet(-batch.size());
+                    handleAndRelease(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleAndRelease(DatagramBatch batch) {
+        try {
+            handler.onBatch(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            batch.release();
+        }
+    }
+
+    public long getReceivedPackets() {
+        return receivedPackets.sum();
+    }
+
+    public long getReceivedBatches() {
+        return receivedBatches.sum();
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    /**
+     * start()时是否在接收通道上设置了SO_REUSEPORT(与接收线程数无关)
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    @Override
+    public String toString() {
+        return "UdpServer{received=" + getReceivedPackets() + ", batches=" + getReceivedBatches()
+                + ", dropped=" + getDroppedPackets() + ", backlog=" + getBacklog() + "}";
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        for (Selector selector : selectors) {
+            selector.close();
+        }
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
+
+/**
+ * UDP数据包批处理回调
+ */
+@FunctionalInterface
+interface DatagramHandler {
+    /**
+     * 处理一批数据包，方法返回后批中的缓冲区会归还缓冲池，不能再引用
+     */
+    void onBatch(DatagramBatch batch) throws IOException;
+}
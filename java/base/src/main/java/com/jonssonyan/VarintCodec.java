@@ -0,0 +1,65 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 变长长度头 - 帧体长度按varint编码(每字节7位，最高位表示后面还有字节)，小帧只需1个字节的头
+ */
+class VarintCodec implements FrameCodec {
+    private final int maxFrameLength;
+
+    public VarintCodec() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public VarintCodec(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) throws IOException {
+        int start = in.position();
+        int limit = in.limit();
+        int length = 0;
+        int index = start;
+        for (int shift = 0; ; shift += 7) {
+            if (index >= limit) {
+                return null; // 长度头还没收全
+            }
+            if (shift > 28) {
+                throw new IOException("varint长度头超过5个字节");
+            }
+            byte b = in.get(index++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        if (length < 0 || length > maxFrameLength) {
+            throw new IOException("帧长度非法: " + length);
+        }
+        if (limit - index < length) {
+            return null;
+        }
+        return FrameSlices.slice(in, index, length);
+    }
+
+    @Override
+    public int maxFrameLength() {
+        return maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer payload) {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        int value = payload.remaining();
+        while ((value & ~0x7F) != 0) {
+            header.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        header.put((byte) value);
+        header.flip();
+        return new ByteBuffer[]{header, payload};
+    }
+}
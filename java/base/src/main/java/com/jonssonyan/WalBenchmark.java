@@ -0,0 +1,82 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多个并发写入者每条记录都要求持久化：逐条force()与组提交的对比
+ */
+class WalBenchmark {
+    static void run(Path dir, int writers, int recordsPerWriter, int recordSize) throws Exception {
+        byte[] record = new byte[recordSize];
+        Files.createDirectories(dir);
+
+        // 逐条持久化：每条记录写入后立即force()，写入者之间互斥
+        Path single = dir.resolve("single.log");
+        try (FileChannel channel = FileChannel.open(single, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            measure("逐条force()", writers, recordsPerWriter, () -> {
+                synchronized (channel) {
+                    channel.write(ByteBuffer.wrap(record));
+                    channel.force(false);
+                }
+            });
+        } finally {
+            Files.deleteIfExists(single);
+        }
+
+        Path walDir = dir.resolve("wal");
+        try (WriteAheadLog wal = new WriteAheadLog(walDir)) {
+            measure("WriteAheadLog组提交", writers, recordsPerWriter, () -> wal.appendAndSync(record));
+            System.out.println(wal + ", force耗时(us){" + wal.getSyncLatency() + "}");
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(walDir)) {
+                for (Path path : stream) {
+                    Files.delete(path);
+                }
+            }
+            Files.deleteIfExists(walDir);
+        }
+    }
+
+    private interface DurableWrite {
+        void write() throws IOException;
+    }
+
+    private static void measure(String name, int writers, int recordsPerWriter, DurableWrite write) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < writers; i++) {
+            Thread thread = new Thread(() -> {
+                for (int r = 0; r < recordsPerWriter; r++) {
+                    long writeStart = System.nanoTime();
+                    try {
+                        write.write();
+                    } catch (IOException e) {
+                        errors.increment();
+                    }
+                    latency.record((System.nanoTime() - writeStart) / 1000);
+                }
+            }, "wal-writer-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d个写入者, %.0f 次持久写入/s, 延迟(us) p50=%d p99=%d, 错误%d%n", name, writers,
+                writers * (long) recordsPerWriter / seconds, latency.getValueAtPercentile(50),
+                latency.getValueAtPercentile(99), errors.sum());
+    }
+}
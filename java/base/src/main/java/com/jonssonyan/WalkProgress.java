@@ -0,0 +1,103 @@
+package com.jonssonyan;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 遍历进度：已处理的文件数、目录数和字节数，可以在任意线程读取或取消
+ */
+class WalkProgress {
+    final LongAdder files = new LongAdder();
+    final LongAdder directories = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    private final long reportInterval;
+    private final Consumer<WalkProgress> listener;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private volatile boolean cancelled;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public WalkProgress() {
+        this(1000, null);
+    }
+
+    /**
+     * @param reportInterval 回调间隔(毫秒)
+     * @param listener       在调用walk的线程中定时回调，可以为null
+     */
+    public WalkProgress(long reportInterval, Consumer<WalkProgress> listener) {
+        this.reportInterval = reportInterval;
+        this.listener = listener;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    void report() {
+        if (listener != null) {
+            listener.accept(this);
+        }
+    }
+
+    long getReportInterval() {
+        return reportInterval;
+    }
+
+    void fail(IOException e) {
+        failure.compareAndSet(null, e);
+    }
+
+    IOException getFailure() {
+        return failure.get();
+    }
+
+    boolean isStopped() {
+        return cancelled || failure.get() != null;
+    }
+
+    /**
+     * 请求取消，正在处理的文件完成后各任务不再继续，walk抛出CancellationException
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getDirectories() {
+        return directories.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getElapsedMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    public double getFilesPerSecond() {
+        return getFiles() * 1000.0 / Math.max(1, getElapsedMillis());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("文件%d, 目录%d, %.1fMB, %dms, %.0f文件/秒", getFiles(), getDirectories(),
+                getBytes() / 1048576.0, getElapsedMillis(), getFilesPerSecond());
+    }
+}
@@ -0,0 +1,424 @@
+package com.jonssonyan;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的预写日志
+ * 日志按大小切分为多个段文件，文件名是段内第一条记录的序号；每条记录是
+ * [长度4字节][CRC32 4字节][序号8字节][数据]，CRC覆盖序号和数据。
+ * 并发写入的记录由提交线程合并成一批，一次write加一次force()，批内所有记录同时变为持久，
+ * 写入者越多每批越大，每秒持久写入数随之增长而fsync次数不变。
+ * 打开时校验最后一个段，把崩溃时写了一半的尾部截掉
+ */
+class WriteAheadLog implements Closeable {
+    static final long DEFAULT_SEGMENT_SIZE = 64 << 20;
+    static final int MAX_RECORD_SIZE = 16 << 20;
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 8;
+    private static final String SUFFIX = ".wal";
+    private static final PendingAppend CLOSE = new PendingAppend(null);
+
+    private final Path dir;
+    private final long segmentSize;
+    private final BlockingQueue<PendingAppend> queue;
+    private final Thread committer;
+    private final List<Long> segments = new ArrayList<>(); // 各段第一条记录的序号，只在提交线程和打开时修改
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+    private FileChannel channel;
+    private long channelSize;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+    private final CRC32 crc = new CRC32();
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    public WriteAheadLog(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE, 64 * 1024);
+    }
+
+    /**
+     * @param segmentSize 段文件达到这个大小后新建下一段
+     * @param maxPending  等待提交的记录数上限，超过时append阻塞
+     */
+    public WriteAheadLog(Path dir, long segmentSize, int maxPending) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.queue = new LinkedBlockingQueue<>(maxPending);
+        Files.createDirectories(dir);
+        recover();
+        this.committer = new Thread(this::commitLoop, "wal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    // 校验所有段：中间的段损坏直接报错，最后一段损坏的尾部截断
+    private void recover() throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // 不是段文件
+                }
+            }
+        }
+        Collections.sort(found);
+        long expected = found.isEmpty() ? 1 : found.get(0);
+        for (int i = 0; i < found.size(); i++) {
+            long first = found.get(i);
+            if (first != expected) {
+                throw new IOException("段文件不连续，缺少序号" + expected + "开始的记录: " + segmentPath(first));
+            }
+            boolean last = i == found.size() - 1;
+            long[] result = scan(segmentPath(first), first, null);
+            long validLength = result[0];
+            long next = result[1];
+            long fileLength = Files.size(segmentPath(first));
+            if (validLength < fileLength) {
+                if (!last) {
+                    throw new IOException("段文件中间损坏: " + segmentPath(first) + "@" + validLength);
+                }
+                // 崩溃时没有写完的记录从未被确认过，截掉即可
+                try (FileChannel file = FileChannel.open(segmentPath(first), StandardOpenOption.WRITE)) {
+                    file.truncate(validLength);
+                    file.force(true);
+                }
+            }
+            expected = next;
+        }
+        segments.addAll(found);
+        lastSequence.set(expected - 1);
+        if (segments.isEmpty()) {
+            openSegment(expected);
+        } else {
+            long first = segments.get(segments.size() - 1);
+            channel = FileChannel.open(segmentPath(first), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channelSize = channel.size();
+        }
+    }
+
+    /**
+     * 顺序读取一个段，返回{有效数据长度, 下一条记录的序号}；遇到截断、长度异常、CRC不符或序号不连续时停止
+     */
+    private static long[] scan(Path path, long firstSequence, WalRecordHandler handler) throws IOException {
+        long offset = 0;
+        long sequence = firstSequence;
+        CRC32 crc = new CRC32();
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file), 64 * 1024))) {
+            long size = file.size();
+            byte[] sequenceBytes = new byte[8];
+            while (size - offset >= RECORD_HEADER_SIZE) {
+                int length = in.readInt();
+                int expectedCrc = in.readInt();
+                in.readFully(sequenceBytes);
+                if (length < 0 || length > MAX_RECORD_SIZE || length > size - offset - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                crc.reset();
+                crc.update(sequenceBytes);
+                crc.update(data);
+                if ((int) crc.getValue() != expectedCrc || ByteBuffer.wrap(sequenceBytes).getLong() != sequence) {
+                    break;
+                }
+                if (handler != null) {
+                    handler.onRecord(sequence, data);
+                }
+                offset += RECORD_HEADER_SIZE + length;
+                sequence++;
+            }
+        } catch (EOFException e) {
+            // 文件在读取期间被截短，按已经校验过的部分处理
+        }
+        return new long[]{offset, sequence};
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return dir.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        channel = FileChannel.open(segmentPath(firstSequence), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        channelSize = 0;
+        synchronized (segments) {
+            segments.add(firstSequence);
+        }
+        forceDirectory(dir); // 新文件的目录项也要落盘，否则崩溃后整个段可能消失
+    }
+
+    /**
+     * 把目录项(新建、改名的文件)刷到磁盘
+     */
+    static void forceDirectory(Path dir) {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // 部分平台(如Windows)不能打开目录，依赖文件系统自身的保证
+        }
+    }
+
+    /**
+     * 异步追加一条记录，返回的Future在记录持久化后完成，值是记录的序号
+     */
+    public CompletableFuture<Long> append(byte[] data) {
+        PendingAppend pending = new PendingAppend(data);
+        if (data.length > MAX_RECORD_SIZE) {
+            pending.future.completeExceptionally(new IOException("记录超过" + MAX_RECORD_SIZE + "字节: " + data.length));
+            return pending.future;
+        }
+        IOException error = failure;
+        if (error != null || closed) {
+            pending.future.completeExceptionally(error != null ? error : new IOException("日志已关闭"));
+            return pending.future;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(new IOException("等待写入时被中断", e));
+        }
+        if (closed && queue.remove(pending)) {
+            // 与close()竞争时，提交线程可能已经退出
+            pending.future.completeExceptionally(new IOException("日志已关闭"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * 追加一条记录并等待持久化，返回序号
+     */
+    public long appendAndSync(byte[] data) throws IOException {
+        try {
+            return append(data).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待持久化时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private void commitLoop() {
+        List<PendingAppend> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            // 提交上一批的force()期间到达的记录全部进入这一批
+            queue.drainTo(batch);
+            if (batch.remove(CLOSE)) {
+                stop = true;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingAppend> batch) {
+        IOException error = failure;
+        if (error == null) {
+            try {
+                long first = lastSequence.get() + 1;
+                writeBatch(batch, first);
+                long start = System.nanoTime();
+                channel.force(false);
+                syncLatency.record((System.nanoTime() - start) / 1000);
+                lastSequence.set(first + batch.size() - 1);
+                batches.increment();
+                records.add(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future.complete(first + i);
+                }
+                return;
+            } catch (IOException e) {
+                // 写入失败后文件尾部状态未知，之后的写入全部拒绝，重新打开时由恢复流程截断
+                failure = error = e;
+            }
+        }
+        for (PendingAppend pending : batch) {
+            pending.future.completeExceptionally(error);
+        }
+    }
+
+    private void writeBatch(List<PendingAppend> batch, long firstSequence) throws IOException {
+        long bytes = 0;
+        for (PendingAppend pending : batch) {
+            bytes += RECORD_HEADER_SIZE + pending.data.length;
+        }
+        if (channelSize > 0 && channelSize + bytes > segmentSize) {
+            channel.force(false);
+            channel.close();
+            openSegment(firstSequence);
+        }
+        long sequence = firstSequence;
+        for (PendingAppend pending : batch) {
+            int needed = RECORD_HEADER_SIZE + pending.data.length;
+            if (buffer.remaining() < needed) {
+                flushBuffer();
+                if (buffer.capacity() < needed) {
+                    buffer = ByteBuffer.allocateDirect(needed);
+                }
+            }
+            int start = buffer.position();
+            buffer.putInt(pending.data.length);
+            buffer.putInt(0); // CRC稍后回填
+            buffer.putLong(sequence++);
+            buffer.put(pending.data);
+            ByteBuffer covered = buffer.duplicate();
+            covered.position(start + 8).limit(buffer.position());
+            crc.reset();
+            crc.update(covered);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channelSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 按顺序回放序号不小于fromSequence的所有已持久化记录
+     */
+    public void replay(long fromSequence, WalRecordHandler handler) throws IOException {
+        long durable = lastSequence.get();
+        List<Long> snapshot;
+        synchronized (segments) {
+            snapshot = new ArrayList<>(segments);
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            long first = snapshot.get(i);
+            long nextFirst = i + 1 < snapshot.size() ? snapshot.get(i + 1) : Long.MAX_VALUE;
+            if (nextFirst <= fromSequence) {
+                continue;
+            }
+            scan(segmentPath(first), first, (sequence, data) -> {
+                if (sequence >= fromSequence && sequence <= durable) {
+                    handler.onRecord(sequence, data);
+                }
+            });
+        }
+    }
+
+    /**
+     * 删除所有记录序号都小于sequence的段，用于检查点之后回收空间；当前写入的段不会被删除
+     */
+    public int deleteSegmentsBefore(long sequence) throws IOException {
+        List<Path> deletable = new ArrayList<>();
+        synchronized (segments) {
+            while (segments.size() > 1 && segments.get(1) <= sequence) {
+                deletable.add(segmentPath(segments.remove(0)));
+            }
+        }
+        for (Path path : deletable) {
+            Files.deleteIfExists(path);
+        }
+        return deletable.size();
+    }
+
+    /**
+     * 最后一条已持久化记录的序号，空日志为0
+     */
+    public long getLastSequence() {
+        return lastSequence.get();
+    }
+
+    public int getSegmentCount() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getRecordCount() {
+        return records.sum();
+    }
+
+    /**
+     * 每次force()的耗时，单位微秒
+     */
+    public LatencyHistogram getSyncLatency() {
+        return syncLatency;
+    }
+
+    @Override
+    public String toString() {
+        long batchCount = getBatchCount();
+        return "WriteAheadLog{dir=" + dir + ", lastSequence=" + getLastSequence() + ", segments=" + getSegmentCount()
+                + ", batches=" + batchCount + ", avgBatch=" + (batchCount == 0 ? 0 : getRecordCount() / batchCount) + "}";
+    }
+
+    /**
+     * 等待已提交的记录全部持久化后关闭
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private static class PendingAppend {
+        final byte[] data;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        PendingAppend(byte[] data) {
+            this.data = data;
+        }
+    }
+}
+
+/**
+ * 回放日志时的回调
+ */
+@FunctionalInterface
+interface WalRecordHandler {
+    void onRecord(long sequence, byte[] data) throws IOException;
+}